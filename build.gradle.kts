@@ -1,5 +1,6 @@
 plugins {
     id("java")
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "org.example"
@@ -20,4 +21,11 @@ dependencies {
 
 tasks.test {
     useJUnitPlatform()
-}
\ No newline at end of file
+}
+
+jmh {
+    // The large DAG keeps about 100k commits and their JSON in memory.
+    jvmArgs.set(listOf("-Xmx2g"))
+    (project.findProperty("jmhIncludes") as String?)?.let { includes.set(listOf(it)) }
+    resultFormat.set("JSON")
+}
@@ -0,0 +1,45 @@
+package org.example.GithubFinder;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import org.example.benchmarks.CommitDag;
+import org.example.graph.Commit;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of one page of the commits endpoint, as done by
+ * {@link GithubLastCommonCommitsFinder#fetchCommits}, without the network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CommitListParserBenchmark {
+
+    @Param({"25", "100"})
+    public int perPage;
+
+    @Param({"linear", "octopus"})
+    public String shape;
+
+    private final CommitListParser parser = new CommitListParser(new JsonFactory());
+    private byte[] body;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        CommitDag dag = CommitDag.named(shape);
+        // The octopus merge sits a page below the head of the base branch.
+        body = dag.pageJson(CommitDag.BASE, perPage, shape.equals("octopus") && perPage < 100 ? 3 : 1);
+    }
+
+    @Benchmark
+    public List<Commit> parse() throws IOException {
+        return parser.parse(new ByteArrayInputStream(body));
+    }
+}
@@ -0,0 +1,103 @@
+package org.example.benchmarks;
+
+import org.example.graph.Commit;
+import org.example.graph.Sha;
+import org.example.utils.CacheUtil;
+import org.example.utils.CachedHistory;
+import org.example.utils.CommitPage;
+import org.example.utils.GithubContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trips of cached histories through {@link CacheUtil}. Needs Redis on
+ * localhost:6379 (see docker-compose.yml).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CacheBenchmark {
+
+    private static final String OWNER = "bench";
+    private static final String REPO = "cache";
+    private static final String BRANCH = CommitDag.BASE;
+
+    /**
+     * Pages of 100 commits in the cached history.
+     */
+    @Param({"1", "10", "50"})
+    public int pages;
+
+    private GithubContext context;
+    private CacheUtil cacheUtil;
+    private CacheUtil coldCacheUtil;
+    private CachedHistory history;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        CommitDag dag = CommitDag.divergence(pages * 100, 10);
+        int[] ids = dag.history(BRANCH);
+        List<CommitPage> commitPages = new ArrayList<>();
+        for (int page = 0; page < pages; page++) {
+            List<Commit> commits = new ArrayList<>(100);
+            for (int i = page * 100; i < Math.min(ids.length, (page + 1) * 100); i++) {
+                commits.add(commit(dag, ids[i]));
+            }
+            commitPages.add(new CommitPage(page + 1, commits, "\"etag-" + page + "\"", null));
+        }
+        history = new CachedHistory(commitPages, System.currentTimeMillis());
+
+        context = new GithubContext();
+        cacheUtil = context.getCacheUtil();
+        cacheUtil.put(OWNER, REPO, BRANCH, history);
+    }
+
+    /**
+     * A cache with an empty near cache, so reads go to Redis.
+     */
+    @Setup(Level.Invocation)
+    public void coldCache() {
+        coldCacheUtil = new CacheUtil(context.getRedissonClient());
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeColdCache() {
+        coldCacheUtil.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cacheUtil.invalidate(OWNER, REPO, BRANCH);
+        context.close();
+    }
+
+    @Benchmark
+    public void put() {
+        cacheUtil.put(OWNER, REPO, BRANCH, history);
+    }
+
+    @Benchmark
+    public CachedHistory getFromNearCache() {
+        return cacheUtil.get(OWNER, REPO, BRANCH);
+    }
+
+    @Benchmark
+    public CachedHistory getFromRedis() {
+        return coldCacheUtil.get(OWNER, REPO, BRANCH);
+    }
+
+    private static Commit commit(CommitDag dag, int id) {
+        int[] parentIds = dag.parents(id);
+        Sha[] parents = new Sha[parentIds.length];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = Sha.fromHex(dag.sha(parentIds[i]));
+        }
+        return new Commit(Sha.fromHex(dag.sha(id)), parents);
+    }
+}
@@ -0,0 +1,48 @@
+package org.example.benchmarks;
+
+import org.example.BranchPair;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queries answered from fresh cached histories, without asking the stub. Needs
+ * Redis on localhost:6379 (see docker-compose.yml).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CachedFinderBenchmark {
+
+    @Param({"linear", "divergence", "crissCross", "octopus", "large"})
+    public String shape;
+
+    private FinderFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        fixture = new FinderFixture(shape, 0);
+        fixture.evict();
+        fixture.finder.findLastCommonCommits(fixture.pairs);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public Collection<String> findLastCommonCommits() throws Throwable {
+        return fixture.finder.findLastCommonCommits(CommitDag.BASE, "feature");
+    }
+
+    @Benchmark
+    public Map<BranchPair, Collection<String>> findLastCommonCommitsBatch() throws Throwable {
+        return fixture.finder.findLastCommonCommits(fixture.pairs);
+    }
+}
@@ -0,0 +1,293 @@
+package org.example.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A synthetic commit history with named branches, in the shapes the finder meets
+ * in practice. Commits are numbered in the order they were made, so a commit
+ * always comes after its parents and listing a history by falling number gives
+ * the newest-first order of the {@code /commits} endpoint.
+ * <p>
+ * Every shape has a {@value #BASE} branch, a long-lived {@code feature} branch
+ * and a short {@code hotfix} branch near the tip of {@value #BASE}.
+ */
+public class CommitDag {
+
+    public static final String BASE = "main";
+
+    private final List<int[]> parents = new ArrayList<>();
+    private final List<String> shas = new ArrayList<>();
+    private final Map<String, Integer> branches = new LinkedHashMap<>();
+    private final Map<String, int[]> histories = new ConcurrentHashMap<>();
+    private final Map<Integer, byte[]> json = new ConcurrentHashMap<>();
+    private final MessageDigest digest;
+
+    private CommitDag() {
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param shape one of {@code linear}, {@code divergence}, {@code crissCross}, {@code octopus} or {@code large}
+     */
+    public static CommitDag named(String shape) {
+        switch (shape) {
+            case "linear":
+                return linear(10_000, 1_000);
+            case "divergence":
+                return divergence(1_000, 5_000);
+            case "crissCross":
+                return crissCross(1_000, 20, 10);
+            case "octopus":
+                return octopus(1_000, 8, 50);
+            case "large":
+                return large(100_000);
+            default:
+                throw new IllegalArgumentException("Unknown DAG shape: " + shape);
+        }
+    }
+
+    /**
+     * One line of history, with the feature branch {@code ahead} commits ahead of the base.
+     */
+    public static CommitDag linear(int length, int ahead) {
+        CommitDag dag = new CommitDag();
+        int base = dag.chain(-1, length - ahead);
+        dag.branch(BASE, base);
+        dag.branch("feature", dag.chain(base, ahead));
+        dag.addHotfix();
+        return dag;
+    }
+
+    /**
+     * Two branches that both moved {@code ahead} commits away from a shared history.
+     */
+    public static CommitDag divergence(int shared, int ahead) {
+        CommitDag dag = new CommitDag();
+        int fork = dag.chain(-1, shared);
+        dag.branch(BASE, dag.chain(fork, ahead));
+        dag.branch("feature", dag.chain(fork, ahead));
+        dag.addHotfix();
+        return dag;
+    }
+
+    /**
+     * Two branches that merge each other every {@code step} commits, which leaves
+     * them with two merge bases.
+     */
+    public static CommitDag crissCross(int shared, int rounds, int step) {
+        CommitDag dag = new CommitDag();
+        int fork = dag.chain(-1, shared);
+        int main = dag.chain(fork, step);
+        int feature = dag.chain(fork, step);
+        for (int round = 0; round < rounds; round++) {
+            int mergedMain = dag.commit(main, feature);
+            int mergedFeature = dag.commit(feature, main);
+            main = dag.chain(mergedMain, step);
+            feature = dag.chain(mergedFeature, step);
+        }
+        dag.branch(BASE, main);
+        dag.branch("feature", feature);
+        dag.addHotfix();
+        return dag;
+    }
+
+    /**
+     * A base branch that merged {@code legs} topic branches in one octopus merge,
+     * and a feature branch that forked from one of the legs.
+     */
+    public static CommitDag octopus(int shared, int legs, int legLength) {
+        CommitDag dag = new CommitDag();
+        int fork = dag.chain(-1, shared);
+        int[] mergeParents = new int[legs + 1];
+        mergeParents[0] = dag.chain(fork, legLength);
+        for (int leg = 1; leg <= legs; leg++) {
+            mergeParents[leg] = dag.chain(fork, legLength);
+        }
+        dag.branch(BASE, dag.chain(dag.commit(mergeParents), legLength));
+        dag.branch("feature", dag.chain(mergeParents[legs / 2], legLength));
+        dag.addHotfix();
+        return dag;
+    }
+
+    /**
+     * About {@code size} commits, with short topic branches merged into the base
+     * every 50 commits and a feature branch that forked a tenth of the way in, so
+     * the walk has to page through most of the history.
+     */
+    public static CommitDag large(int size) {
+        CommitDag dag = new CommitDag();
+        int tip = dag.chain(-1, 1);
+        int fork = -1;
+        while (dag.size() < size) {
+            int topic = dag.chain(tip, 5);
+            tip = dag.commit(dag.chain(tip, 45), topic);
+            if (fork < 0 && dag.size() >= size / 10) {
+                fork = tip;
+            }
+        }
+        dag.branch(BASE, tip);
+        dag.branch("feature", dag.chain(fork, 1_000));
+        dag.addHotfix();
+        return dag;
+    }
+
+    public int size() {
+        return parents.size();
+    }
+
+    public String sha(int id) {
+        return shas.get(id);
+    }
+
+    public int[] parents(int id) {
+        return parents.get(id);
+    }
+
+    public Set<String> getBranches() {
+        return Collections.unmodifiableSet(branches.keySet());
+    }
+
+    /**
+     * @return the id of the head of the branch, or -1 if there is no such branch
+     */
+    public int head(String branch) {
+        Integer head = branches.get(branch);
+        return head != null ? head : -1;
+    }
+
+    /**
+     * @return the branches other than {@value #BASE}
+     */
+    public List<String> getTopicBranches() {
+        List<String> topics = new ArrayList<>(branches.keySet());
+        topics.remove(BASE);
+        return topics;
+    }
+
+    /**
+     * @return the ids of every commit reachable from the branch, newest first
+     */
+    public int[] history(String branch) {
+        return histories.computeIfAbsent(branch, name -> {
+            int head = head(name);
+            if (head < 0) {
+                return new int[0];
+            }
+            BitSet reachable = new BitSet(size());
+            Deque<Integer> stack = new ArrayDeque<>();
+            reachable.set(head);
+            stack.push(head);
+            while (!stack.isEmpty()) {
+                for (int parent : parents(stack.pop())) {
+                    if (!reachable.get(parent)) {
+                        reachable.set(parent);
+                        stack.push(parent);
+                    }
+                }
+            }
+            int[] ids = new int[reachable.cardinality()];
+            int i = 0;
+            for (int id = reachable.previousSetBit(size() - 1); id >= 0; id = reachable.previousSetBit(id - 1)) {
+                ids[i++] = id;
+            }
+            return ids;
+        });
+    }
+
+    /**
+     * @return the body GitHub would send for the page, as a JSON array of commits
+     */
+    public byte[] pageJson(String branch, int perPage, int page) {
+        int[] history = history(branch);
+        int from = Math.min(history.length, (page - 1) * perPage);
+        int to = Math.min(history.length, from + perPage);
+        int length = 2;
+        for (int i = from; i < to; i++) {
+            length += commitJson(history[i]).length + 1;
+        }
+        byte[] body = new byte[length];
+        int offset = 0;
+        body[offset++] = '[';
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                body[offset++] = ',';
+            }
+            byte[] commit = commitJson(history[i]);
+            System.arraycopy(commit, 0, body, offset, commit.length);
+            offset += commit.length;
+        }
+        body[offset++] = ']';
+        return Arrays.copyOf(body, offset);
+    }
+
+    /**
+     * @return the commit as the {@code /commits} endpoint lists it, with the fields
+     * the finder skips as well as the ones it reads
+     */
+    public byte[] commitJson(int id) {
+        return json.computeIfAbsent(id, key -> {
+            String sha = sha(id);
+            String url = "https://api.github.com/repos/bench/repo/commits/" + sha;
+            String person = "{\"name\":\"Bench Author\",\"email\":\"bench@example.org\",\"date\":\"2024-01-01T00:00:00Z\"}";
+            StringBuilder out = new StringBuilder(1024)
+                    .append("{\"sha\":\"").append(sha).append("\",\"node_id\":\"C_").append(sha, 0, 20)
+                    .append("\",\"commit\":{\"author\":").append(person).append(",\"committer\":").append(person)
+                    .append(",\"message\":\"Commit number ").append(id).append("\\n\\nWith a body that the parser has to skip.\"")
+                    .append(",\"tree\":{\"sha\":\"").append(sha).append("\",\"url\":\"").append(url).append("\"}")
+                    .append(",\"url\":\"").append(url).append("\",\"comment_count\":0")
+                    .append(",\"verification\":{\"verified\":false,\"reason\":\"unsigned\",\"signature\":null,\"payload\":null}}")
+                    .append(",\"url\":\"").append(url).append("\",\"html_url\":\"").append(url)
+                    .append("\",\"comments_url\":\"").append(url).append("/comments\",\"author\":null,\"committer\":null,\"parents\":[");
+            int[] parentIds = parents(id);
+            for (int i = 0; i < parentIds.length; i++) {
+                String parentUrl = "https://api.github.com/repos/bench/repo/commits/" + sha(parentIds[i]);
+                out.append(i > 0 ? "," : "").append("{\"sha\":\"").append(sha(parentIds[i]))
+                        .append("\",\"url\":\"").append(parentUrl).append("\",\"html_url\":\"").append(parentUrl).append("\"}");
+            }
+            return out.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+        });
+    }
+
+    private int commit(int... parentIds) {
+        int id = parents.size();
+        parents.add(parentIds);
+        byte[] hash = digest.digest(("commit " + id).getBytes(StandardCharsets.UTF_8));
+        StringBuilder hex = new StringBuilder(40);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        shas.add(hex.toString());
+        return id;
+    }
+
+    /**
+     * @return the tip of {@code length} new commits on top of {@code from}, or of a new root if it is -1
+     */
+    private int chain(int from, int length) {
+        int tip = from;
+        for (int i = 0; i < length; i++) {
+            tip = tip < 0 ? commit() : commit(tip);
+        }
+        return tip;
+    }
+
+    private void branch(String name, int head) {
+        branches.put(name, head);
+    }
+
+    private void addHotfix() {
+        int base = head(BASE);
+        for (int i = 0; i < 5 && parents(base).length > 0; i++) {
+            base = parents(base)[0];
+        }
+        branch("hotfix", chain(base, 3));
+    }
+}
@@ -0,0 +1,58 @@
+package org.example.benchmarks;
+
+import org.example.BranchPair;
+import org.example.GithubFinder.GithubLastCommonCommitsFinder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Queries that miss the cache and walk the histories served by the stub. Needs
+ * Redis on localhost:6379 (see docker-compose.yml).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FinderBenchmark {
+
+    @Param({"linear", "divergence", "crissCross", "octopus", "large"})
+    public String shape;
+
+    @Param({"0", "4"})
+    public int prefetchWindow;
+
+    @Param({"REST", "GRAPHQL"})
+    public GithubLastCommonCommitsFinder.Transport transport;
+
+    private FinderFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setup() throws Throwable {
+        fixture = new FinderFixture(shape, prefetchWindow, transport);
+    }
+
+    @Setup(Level.Invocation)
+    public void evict() {
+        fixture.evict();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public Collection<String> findLastCommonCommits() throws Throwable {
+        return fixture.finder.findLastCommonCommits(CommitDag.BASE, "feature");
+    }
+
+    @Benchmark
+    public Map<BranchPair, Collection<String>> findLastCommonCommitsBatch() throws Throwable {
+        return fixture.finder.findLastCommonCommits(fixture.pairs);
+    }
+}
@@ -0,0 +1,60 @@
+package org.example.benchmarks;
+
+import org.example.BranchPair;
+import org.example.GithubFinder.GithubLastCommonCommitsFinder;
+import org.example.utils.GithubContext;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A finder wired to a {@link GithubStub} serving one {@link CommitDag}, with the
+ * real Redis cache behind it. Strategies are disabled, so every uncached query
+ * walks the histories.
+ */
+class FinderFixture implements AutoCloseable {
+
+    static final String OWNER = "bench";
+    static final String REPO = "repo";
+
+    final CommitDag dag;
+    final GithubStub stub;
+    final GithubContext context;
+    final GithubLastCommonCommitsFinder finder;
+    final List<BranchPair> pairs;
+
+    FinderFixture(String shape, int prefetchWindow) throws Throwable {
+        this(shape, prefetchWindow, GithubLastCommonCommitsFinder.Transport.REST);
+    }
+
+    FinderFixture(String shape, int prefetchWindow, GithubLastCommonCommitsFinder.Transport transport) throws Throwable {
+        dag = CommitDag.named(shape);
+        stub = new GithubStub(dag, OWNER, REPO);
+        context = new GithubContext();
+        context.setApiUrl(stub.getApiUrl());
+        finder = new GithubLastCommonCommitsFinder(OWNER, REPO, "", context);
+        finder.setStrategies(Collections.emptyList());
+        finder.setPrefetchWindow(prefetchWindow);
+        finder.setTransport(transport);
+        pairs = BranchPair.against(CommitDag.BASE, dag.getTopicBranches());
+        // Build the histories and their JSON up front, so the first walk does not pay for them.
+        for (String branch : dag.getBranches()) {
+            for (int id : dag.history(branch)) {
+                dag.commitJson(id);
+            }
+        }
+    }
+
+    void evict() {
+        for (String branch : dag.getBranches()) {
+            context.getCacheUtil().invalidate(OWNER, REPO, branch);
+        }
+    }
+
+    @Override
+    public void close() {
+        evict();
+        context.close();
+        stub.close();
+    }
+}
@@ -0,0 +1,217 @@
+package org.example.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A local stand-in for the parts of the GitHub REST API the finder uses: the user
+ * and repository checks and the paginated {@code /commits?sha=&per_page=&page=}
+ * listing, with ETags and 304 answers to conditional requests. {@code /graphql}
+ * answers the aliased history queries of the GraphQL transport: refs of branches,
+ * and objects that are the head of a branch. Every other path, including
+ * {@code /compare}, answers 404, so the finder falls back to walking the histories.
+ * Point a {@link org.example.utils.GithubContext} at {@link #getApiUrl()}.
+ */
+public class GithubStub implements AutoCloseable {
+
+    private static final byte[] EMPTY_OBJECT = "{}".getBytes(StandardCharsets.UTF_8);
+    private static final Pattern ALIAS = Pattern.compile("(\\w+): (ref|object)\\(\\w+: \\$(\\w+)\\)");
+    private static final Pattern HISTORY = Pattern.compile("history\\(first: (\\d+)(?:, after: \\$(\\w+))?\\)");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    static {
+        // Otherwise every POST waits out a delayed ACK on loopback, about 40 ms.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final CommitDag dag;
+    private final String owner;
+    private final String repo;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+
+    public GithubStub(CommitDag dag, String owner, String repo) throws IOException {
+        this.dag = dag;
+        this.owner = owner;
+        this.repo = repo;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.executor = Executors.newFixedThreadPool(8, runnable -> {
+            Thread thread = new Thread(runnable, "github-stub");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getApiUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return the number of requests answered so far
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals("/users/" + owner) || path.equals("/repos/" + owner + "/" + repo)) {
+                send(exchange, 200, EMPTY_OBJECT);
+            } else if (path.equals("/repos/" + owner + "/" + repo + "/commits")) {
+                listCommits(exchange);
+            } else if (path.equals("/graphql") && exchange.getRequestMethod().equals("POST")) {
+                queryHistories(exchange);
+            } else {
+                send(exchange, 404, EMPTY_OBJECT);
+            }
+        }
+    }
+
+    private void listCommits(HttpExchange exchange) throws IOException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String branch = query.getOrDefault("sha", CommitDag.BASE);
+        int perPage = Integer.parseInt(query.getOrDefault("per_page", "30"));
+        int page = Integer.parseInt(query.getOrDefault("page", "1"));
+        int head = dag.head(branch);
+        if (head < 0) {
+            send(exchange, 404, EMPTY_OBJECT);
+            return;
+        }
+
+        String etag = "\"" + dag.sha(head) + "-" + perPage + "-" + page + "\"";
+        exchange.getResponseHeaders().set("ETag", etag);
+        if (etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        send(exchange, 200, dag.pageJson(branch, perPage, page));
+    }
+
+    private void queryHistories(HttpExchange exchange) throws IOException {
+        JsonNode request;
+        try (InputStream body = exchange.getRequestBody()) {
+            request = MAPPER.readTree(body);
+        }
+        String query = request.path("query").asText();
+        JsonNode variables = request.path("variables");
+        if (!owner.equals(variables.path("owner").asText()) || !repo.equals(variables.path("name").asText())) {
+            send(exchange, 200, "{\"data\":{\"repository\":null},\"errors\":[{\"type\":\"NOT_FOUND\",\"message\":\"Not found\"}]}"
+                    .getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+
+        StringBuilder out = new StringBuilder("{\"data\":{\"repository\":{");
+        Matcher alias = ALIAS.matcher(query);
+        boolean found = alias.find();
+        boolean first = true;
+        while (found) {
+            String name = alias.group(1);
+            boolean ref = alias.group(2).equals("ref");
+            String argument = variables.path(alias.group(3)).asText();
+            int start = alias.end();
+            found = alias.find();
+            String selection = query.substring(start, found ? alias.start() : query.length());
+
+            // Only the heads of branches are known as objects.
+            String branch = ref ? argument.substring("refs/heads/".length()) : branchAt(argument);
+            out.append(first ? "" : ",").append('"').append(name).append("\":");
+            first = false;
+            if (branch == null) {
+                out.append("null");
+                continue;
+            }
+            String head = dag.sha(dag.head(branch));
+            Matcher history = HISTORY.matcher(selection);
+            String historyJson = history.find() ? historyJson(branch, Integer.parseInt(history.group(1)),
+                    history.group(2) == null ? null : variables.path(history.group(2)).asText()) : null;
+            if (ref) {
+                out.append("{\"target\":{\"oid\":\"").append(head).append('"');
+                out.append(historyJson == null ? "" : ",\"history\":" + historyJson).append("}}");
+            } else {
+                out.append("{\"history\":").append(historyJson).append('}');
+            }
+        }
+        send(exchange, 200, out.append("}}}").toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String branchAt(String sha) {
+        for (String branch : dag.getBranches()) {
+            if (dag.head(branch) >= 0 && dag.sha(dag.head(branch)).equals(sha)) {
+                return branch;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param after a cursor of the form {@code "<head> <index of the last commit seen>"}, or null
+     */
+    private String historyJson(String branch, int first, String after) {
+        int[] history = dag.history(branch);
+        int from = after == null ? 0 : Math.min(history.length, Integer.parseInt(after.substring(after.indexOf(' ') + 1)) + 1);
+        int to = Math.min(history.length, from + first);
+        StringBuilder out = new StringBuilder(64 + (to - from) * 120)
+                .append("{\"pageInfo\":{\"hasNextPage\":").append(to < history.length).append("},\"nodes\":[");
+        for (int i = from; i < to; i++) {
+            out.append(i > from ? "," : "").append("{\"oid\":\"").append(dag.sha(history[i])).append("\",\"parents\":{\"nodes\":[");
+            int[] parentIds = dag.parents(history[i]);
+            for (int j = 0; j < parentIds.length; j++) {
+                out.append(j > 0 ? "," : "").append("{\"oid\":\"").append(dag.sha(parentIds[j])).append("\"}");
+            }
+            out.append("]}}");
+        }
+        return out.append("]}").toString();
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
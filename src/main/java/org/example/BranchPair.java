@@ -0,0 +1,61 @@
+package org.example;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Two branches whose last common commits are wanted.
+ */
+public class BranchPair {
+
+    private final String branchA;
+    private final String branchB;
+
+    public BranchPair(String branchA, String branchB) {
+        this.branchA = branchA;
+        this.branchB = branchB;
+    }
+
+    /**
+     * @return one pair per branch, each against the same base branch
+     */
+    public static List<BranchPair> against(String base, Collection<String> branches) {
+        List<BranchPair> pairs = new ArrayList<>(branches.size());
+        for (String branch : branches) {
+            pairs.add(new BranchPair(base, branch));
+        }
+        return pairs;
+    }
+
+    public String getBranchA() {
+        return branchA;
+    }
+
+    public String getBranchB() {
+        return branchB;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BranchPair)) {
+            return false;
+        }
+        BranchPair other = (BranchPair) o;
+        return branchA.equals(other.branchA) && branchB.equals(other.branchB);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(branchA, branchB);
+    }
+
+    @Override
+    public String toString() {
+        return branchA + "..." + branchB;
+    }
+}
@@ -0,0 +1,251 @@
+package org.example.GithubFinder;
+
+import org.example.exceptions.GithubConnectionException;
+import org.example.exceptions.GithubRequestTimeoutException;
+import org.example.exceptions.GithubUserDoesNotHaveAccessToRepo;
+import org.example.graph.Commit;
+import org.example.graph.Sha;
+import org.example.graph.ShaIndex;
+import org.example.utils.CachedHistory;
+import org.example.utils.CommitPage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * Walks the pages of one branch in order. With a window of 0 every page is fetched
+ * on the caller's thread when it is asked for; with a window of N up to N pages are
+ * kept in flight on the executor, so the next pages download while the current one
+ * is being processed. While the branch has not reached the other side of the query,
+ * {@link #gallop()} doubles the window, starting from one page even with a window of
+ * 0, up to the gallop limit, so a deep divergence is covered in few round-trips;
+ * {@link #settle()} goes back to N. With a gallop limit of 0, or one no larger than
+ * the window, the window is never exceeded.
+ * <p>
+ * Pages that are in the branch's cached history are requested conditionally. Once
+ * GitHub confirms that the first page did not change, the head did not move either,
+ * so the remaining cached pages are served without asking again. If the head did
+ * move, the new pages reach the old head after a few commits, and the cached history
+ * is spliced behind them instead of being fetched again.
+ */
+class BranchPager {
+
+    interface PageFetcher {
+        /**
+         * @param head the first commit of the branch's first page in this walk, or null if it is not known yet
+         * @return the fetched page, or {@code cached} itself if GitHub answered 304 Not Modified
+         */
+        CommitPage fetch(String branch, int page, CommitPage cached, Sha head) throws GithubUserDoesNotHaveAccessToRepo, GithubConnectionException, GithubRequestTimeoutException;
+    }
+
+    static final int DEFAULT_GALLOP_LIMIT = 16;
+
+    private final String branch;
+    private final CachedHistory cached;
+    private final PageFetcher fetcher;
+    private final Executor executor;
+    private final int window;
+    private final int gallopLimit;
+    private int lookahead;
+    private final Map<Integer, Future<CommitPage>> inFlight = new HashMap<>();
+    private final List<CommitPage> history = new ArrayList<>();
+    private int nextPage = 1;
+    private boolean headUnchanged;
+    private boolean reachedCachedHead;
+    private boolean exhausted;
+
+    BranchPager(String branch, CachedHistory cached, PageFetcher fetcher, Executor executor, int window, int gallopLimit) {
+        this.branch = branch;
+        this.cached = cached;
+        this.fetcher = fetcher;
+        this.executor = executor;
+        this.window = window;
+        this.gallopLimit = gallopLimit;
+        this.lookahead = window;
+    }
+
+    /**
+     * Doubles the number of pages kept in flight, or starts keeping one in flight
+     * if there were none, up to the gallop limit or the window if that is larger.
+     */
+    void gallop() {
+        lookahead = Math.min(Math.max(1, lookahead * 2), Math.max(window, gallopLimit));
+    }
+
+    /**
+     * Goes back to the configured window, once the walk is close to settling and
+     * speculative pages are likely to be wasted.
+     */
+    void settle() {
+        lookahead = window;
+    }
+
+    /**
+     * Makes sure the window of upcoming pages is being fetched.
+     */
+    void prefetch() {
+        prefetch(lookahead);
+    }
+
+    /**
+     * @return the page {@link #request()} puts in flight, or 0 if the next page is in
+     * flight already, served from the cache or past the end
+     */
+    int pageToRequest() {
+        return exhausted || inFlight.containsKey(nextPage) || servedFromCache(nextPage) ? 0 : nextPage;
+    }
+
+    /**
+     * Makes sure the next page is being fetched, even with a window of 0, so the
+     * next pages of several branches can be fetched together.
+     */
+    void request() {
+        prefetch(Math.max(1, lookahead));
+    }
+
+    private void prefetch(int pages) {
+        for (int page = nextPage; !exhausted && page < nextPage + pages; page++) {
+            if (inFlight.containsKey(page) || servedFromCache(page)) {
+                continue;
+            }
+            int requested = page;
+            CommitPage cachedPage = cached.getPage(page);
+            Sha head = head();
+            inFlight.put(page, CompletableFuture.supplyAsync(() -> {
+                try {
+                    return fetcher.fetch(branch, requested, cachedPage, head);
+                } catch (Throwable e) {
+                    throw new PageFetchFailure(e);
+                }
+            }, executor));
+        }
+    }
+
+    /**
+     * @return the next page of the branch, or an empty page once the history is exhausted
+     */
+    CommitPage next() throws GithubUserDoesNotHaveAccessToRepo, GithubConnectionException, GithubRequestTimeoutException {
+        if (exhausted) {
+            return new CommitPage(nextPage, Collections.emptyList(), null, null);
+        }
+
+        int page = nextPage++;
+        CommitPage cachedPage = cached.getPage(page);
+        CommitPage result;
+        if (servedFromCache(page)) {
+            Future<CommitPage> stale = inFlight.remove(page);
+            if (stale != null) {
+                stale.cancel(true);
+            }
+            result = cachedPage;
+        } else {
+            Future<CommitPage> future = inFlight.remove(page);
+            result = future != null ? await(future) : fetcher.fetch(branch, page, cachedPage, head());
+        }
+
+        if (page == 1 && cachedPage != null && result == cachedPage) {
+            headUnchanged = true;
+        }
+        if (result.isEmpty()) {
+            close();
+        } else {
+            history.add(result);
+            reachedCachedHead |= contains(result, cached.getHead());
+            prefetch();
+        }
+        return result;
+    }
+
+    /**
+     * @return the pages seen so far, followed by whatever the cached history still
+     * knows: its remaining pages if the head did not move, or all of its commits as
+     * carried ones if the new pages led back to the old head
+     */
+    CachedHistory history(long fetchedAt) {
+        List<CommitPage> pages = new ArrayList<>(history);
+        if (headUnchanged) {
+            for (int page = pages.size() + 1; cached.getPage(page) != null; page++) {
+                pages.add(cached.getPage(page));
+            }
+            return new CachedHistory(pages, cached.getCarried(), fetchedAt);
+        }
+        if (!reachedCachedHead) {
+            return new CachedHistory(pages, fetchedAt);
+        }
+
+        ShaIndex fetched = new ShaIndex();
+        for (CommitPage page : pages) {
+            for (Commit commit : page.getCommits()) {
+                fetched.add(commit.getSha());
+            }
+        }
+        List<Commit> carried = new ArrayList<>();
+        for (Commit commit : cached.getCommits()) {
+            if (!fetched.contains(commit.getSha())) {
+                carried.add(commit);
+            }
+        }
+        return new CachedHistory(pages, carried, fetchedAt);
+    }
+
+    /**
+     * Stops the pager and cancels the pages that are still in flight.
+     */
+    void close() {
+        exhausted = true;
+        for (Future<CommitPage> future : inFlight.values()) {
+            future.cancel(true);
+        }
+        inFlight.clear();
+    }
+
+    /**
+     * @return the head the first page of this walk started at, or null before it arrived
+     */
+    private Sha head() {
+        return history.isEmpty() ? null : history.get(0).getCommits().get(0).getSha();
+    }
+
+    private static boolean contains(CommitPage page, Sha sha) {
+        if (sha == null) {
+            return false;
+        }
+        for (Commit commit : page.getCommits()) {
+            if (commit.getSha().equals(sha)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean servedFromCache(int page) {
+        return headUnchanged && cached.getPage(page) != null;
+    }
+
+    private CommitPage await(Future<CommitPage> future) throws GithubUserDoesNotHaveAccessToRepo, GithubConnectionException, GithubRequestTimeoutException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new GithubConnectionException("Interrupted while fetching commits for branch " + branch, e);
+        } catch (ExecutionException e) {
+            close();
+            Throwable cause = e.getCause() instanceof PageFetchFailure ? e.getCause().getCause() : e.getCause();
+            throw FetchFailures.rethrow(cause, "Failed to fetch commits for branch " + branch);
+        }
+    }
+
+    private static class PageFetchFailure extends RuntimeException {
+        PageFetchFailure(Throwable cause) {
+            super(cause);
+        }
+    }
+}
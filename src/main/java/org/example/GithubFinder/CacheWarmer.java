@@ -0,0 +1,215 @@
+package org.example.GithubFinder;
+
+import org.example.metrics.MetricsRegistry;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the most frequently queried pairs of branches fresh in the cache, so their
+ * queries never pay for a walk after a cached history expired (refresh-ahead).
+ * <p>
+ * Finders report their queries with {@link GithubLastCommonCommitsFinder#setCacheWarmer}.
+ * Every interval the query counts are folded into a popularity score that halves
+ * each round, and the top pairs whose cached histories have used up
+ * {@value #REFRESH_AHEAD_PERCENT}% of their freshness are walked again in the
+ * background. A refresh revalidates the first page of each branch and, if the
+ * branch did not move, costs one conditional request per branch.
+ * <p>
+ * Refreshes are limited in three ways: at most {@code concurrency} run or wait at
+ * once; their requests have {@link org.example.utils.RateLimitScheduler.Priority#BACKGROUND}
+ * priority, so they never hold up someone's query, until a query for the same pair
+ * joins the refresh and raises it; and no refresh starts while the token has fewer
+ * requests left than {@link #setMinRemaining} allows.
+ */
+public class CacheWarmer implements AutoCloseable {
+
+    public static final long DEFAULT_MIN_REMAINING = 500;
+
+    private static final int REFRESH_AHEAD_PERCENT = 75;
+    private static final double DECAY = 0.5;
+    private static final double COLD_SCORE = 0.05;
+    private static final int MAX_TRACKED = 10_000;
+
+    private final int topN;
+    private final int concurrency;
+    private final ExecutorService refreshes;
+    private final ScheduledExecutorService ticker;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private volatile long minRemaining = DEFAULT_MIN_REMAINING;
+
+    /**
+     * Creates a warmer that refreshes nothing on its own; call {@link #refreshDue}
+     * periodically.
+     *
+     * @param topN        how many of the most popular pairs are kept fresh
+     * @param concurrency how many refreshes run or wait at once
+     */
+    public CacheWarmer(int topN, int concurrency) {
+        this(topN, concurrency, Duration.ZERO);
+    }
+
+    /**
+     * @param topN        how many of the most popular pairs are kept fresh
+     * @param concurrency how many refreshes run or wait at once
+     * @param interval    how often to look for pairs to refresh, or zero to only
+     *                    refresh when {@link #refreshDue} is called
+     */
+    public CacheWarmer(int topN, int concurrency, Duration interval) {
+        if (topN < 1 || concurrency < 1) {
+            throw new IllegalArgumentException("The warmer needs at least one pair and one refresh at a time");
+        }
+        this.topN = topN;
+        this.concurrency = concurrency;
+        this.refreshes = Executors.newFixedThreadPool(concurrency, runnable -> {
+            Thread thread = new Thread(runnable, "cache-warmer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (interval.isZero()) {
+            this.ticker = null;
+        } else {
+            this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "cache-warmer-ticker");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long millis = interval.toMillis();
+            ticker.scheduleWithFixedDelay(this::refreshDue, millis, millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Keeps this many requests of each token for queries: no refresh starts while
+     * the token is known to have fewer left.
+     */
+    public void setMinRemaining(long minRemaining) {
+        this.minRemaining = minRemaining;
+    }
+
+    void record(GithubLastCommonCommitsFinder finder, String branchA, String branchB) {
+        // Merge bases are symmetric, so both orders of the pair count as one.
+        String key = branchA.compareTo(branchB) <= 0
+                ? finder.getRepositoryName() + ":" + branchA + "..." + branchB
+                : finder.getRepositoryName() + ":" + branchB + "..." + branchA;
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            if (entries.size() >= MAX_TRACKED) {
+                // Cold pairs are dropped every round, which makes room again.
+                return;
+            }
+            entry = entries.computeIfAbsent(key, k -> new Entry(finder, branchA, branchB));
+        }
+        entry.finder = finder;
+        entry.queries.increment();
+    }
+
+    /**
+     * Updates the popularity of the pairs and starts refreshing the most popular
+     * ones whose cached histories are about to expire.
+     *
+     * @return how many refreshes were started
+     */
+    public synchronized int refreshDue() {
+        List<Map.Entry<String, Entry>> ranked = new ArrayList<>(entries.size());
+        for (Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Entry> entry = it.next();
+            Entry value = entry.getValue();
+            value.score = value.score * DECAY + value.queries.sumThenReset();
+            if (value.score < COLD_SCORE) {
+                it.remove();
+            } else {
+                ranked.add(entry);
+            }
+        }
+        ranked.sort(Comparator.comparingDouble((Map.Entry<String, Entry> entry) -> entry.getValue().score).reversed());
+
+        int started = 0;
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Entry> entry : ranked.subList(0, Math.min(topN, ranked.size()))) {
+            if (inFlight.size() >= concurrency) {
+                break;
+            }
+            String key = entry.getKey();
+            Entry value = entry.getValue();
+            GithubLastCommonCommitsFinder finder = value.finder;
+            if (inFlight.contains(key) || !isDue(finder, value, now)) {
+                continue;
+            }
+            MetricsRegistry metrics = finder.getContext().getMetrics();
+            long remaining = finder.getRemainingRequests();
+            if (remaining >= 0 && remaining < minRemaining) {
+                metrics.count(MetricsRegistry.CACHE_REFRESHES, 1, "result", "over_budget");
+                continue;
+            }
+            inFlight.add(key);
+            started++;
+            refreshes.execute(() -> {
+                try {
+                    finder.refresh(value.branchA, value.branchB);
+                    metrics.count(MetricsRegistry.CACHE_REFRESHES, 1, "result", "refreshed");
+                } catch (Throwable e) {
+                    metrics.count(MetricsRegistry.CACHE_REFRESHES, 1, "result", "failed");
+                } finally {
+                    inFlight.remove(key);
+                }
+            });
+        }
+        return started;
+    }
+
+    /**
+     * @return true if the older of the pair's cached histories has used up its share of freshness
+     */
+    private static boolean isDue(GithubLastCommonCommitsFinder finder, Entry entry, long now) {
+        try {
+            long cachedAt = Math.min(finder.getCachedAt(entry.branchA), finder.getCachedAt(entry.branchB));
+            return now - cachedAt >= finder.getContext().getCacheFreshMillis() * REFRESH_AHEAD_PERCENT / 100;
+        } catch (RuntimeException e) {
+            // The cache is unreachable, so a refresh could not be saved either.
+            return false;
+        }
+    }
+
+    /**
+     * @return the pairs tracked, most popular first, as {@code owner/repo:branchA...branchB}
+     */
+    public synchronized List<String> getRanking() {
+        List<Map.Entry<String, Entry>> ranked = new ArrayList<>(entries.entrySet());
+        ranked.sort(Comparator.comparingDouble((Map.Entry<String, Entry> entry) -> entry.getValue().score).reversed());
+        List<String> keys = new ArrayList<>(ranked.size());
+        for (Map.Entry<String, Entry> entry : ranked) {
+            keys.add(entry.getKey());
+        }
+        return keys;
+    }
+
+    @Override
+    public void close() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        refreshes.shutdownNow();
+    }
+
+    private static class Entry {
+        private final String branchA;
+        private final String branchB;
+        private final LongAdder queries = new LongAdder();
+        private volatile GithubLastCommonCommitsFinder finder;
+        private double score;
+
+        private Entry(GithubLastCommonCommitsFinder finder, String branchA, String branchB) {
+            this.finder = finder;
+            this.branchA = branchA;
+            this.branchB = branchB;
+        }
+    }
+}
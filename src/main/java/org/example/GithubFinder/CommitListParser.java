@@ -0,0 +1,88 @@
+package org.example.GithubFinder;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.example.graph.Commit;
+import org.example.graph.Sha;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the commit list returned by the REST commits endpoint with a streaming
+ * parser. Only {@code sha} and {@code parents[].sha} are decoded; authors, messages,
+ * stats and URLs are skipped without being materialized.
+ */
+class CommitListParser {
+
+    private final JsonFactory factory;
+
+    CommitListParser(JsonFactory factory) {
+        this.factory = factory;
+    }
+
+    List<Commit> parse(InputStream body) throws IOException {
+        List<Commit> commits = new ArrayList<>();
+        try (JsonParser parser = factory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Expected an array of commits");
+            }
+            List<Sha> parents = new ArrayList<>(2);
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                commits.add(readCommit(parser, parents));
+            }
+        }
+        return commits;
+    }
+
+    static Commit readCommit(JsonParser parser, List<Sha> parents) throws IOException {
+        Sha sha = null;
+        parents.clear();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("sha".equals(field) && value == JsonToken.VALUE_STRING) {
+                sha = readSha(parser);
+            } else if ("parents".equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    parents.add(readParent(parser));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (sha == null) {
+            throw new JsonParseException(parser, "Commit without a sha");
+        }
+        return new Commit(sha, parents.toArray(new Sha[0]));
+    }
+
+    private static Sha readParent(JsonParser parser) throws IOException {
+        Sha sha = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("sha".equals(field) && value == JsonToken.VALUE_STRING) {
+                sha = readSha(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (sha == null) {
+            throw new JsonParseException(parser, "Parent without a sha");
+        }
+        return sha;
+    }
+
+    static Sha readSha(JsonParser parser) throws IOException {
+        try {
+            return Sha.fromHex(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+        } catch (IllegalArgumentException e) {
+            throw new JsonParseException(parser, e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package org.example.GithubFinder;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.example.graph.Commit;
+import org.example.graph.Sha;
+import org.example.metrics.MetricsRegistry;
+import org.example.utils.GithubContext;
+import org.example.utils.GithubUtils;
+import org.example.utils.RateLimitScheduler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Answers with the {@code merge_base_commit} of the compare endpoint, which costs a
+ * single request. GitHub reports one merge base even when a pair has several, so
+ * the answer is only trusted when it is provably the only one: when one branch
+ * contains the other, or when none of the commits only on branchB is a merge. Two
+ * merge bases need a commit on one side that reaches both of them through
+ * different parents, so a side without merges cannot have them.
+ */
+public class CompareMergeBaseStrategy implements MergeBaseStrategy {
+
+    public static final String NAME = "compare";
+
+    private final String owner;
+    private final String repo;
+    private final String token;
+    private final GithubContext context;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    public CompareMergeBaseStrategy(String owner, String repo, String token, GithubContext context) {
+        this.owner = owner;
+        this.repo = repo;
+        this.token = token;
+        this.context = context;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Compares with interactive priority.
+     */
+    @Override
+    public Collection<Sha> findMergeBases(String branchA, String branchB) {
+        return findMergeBases(branchA, branchB, () -> RateLimitScheduler.Priority.INTERACTIVE);
+    }
+
+    /**
+     * @return the merge base, or null if the comparison failed or cannot rule out other merge bases
+     */
+    @Override
+    public Collection<Sha> findMergeBases(String branchA, String branchB, Supplier<RateLimitScheduler.Priority> priority) {
+        String url = String.format("%s/repos/%s/%s/compare/%s...%s", context.getApiUrl(), owner, repo, branchA, branchB);
+        try {
+            HttpResponse<InputStream> response = GithubUtils.send(context, NAME, GithubUtils.createRequest(url, token).build(), priority, true);
+            try (InputStream body = response.body()) {
+                // Missing branches, unrelated histories and errors are all left to the walk.
+                if (response.statusCode() != HttpURLConnection.HTTP_OK) {
+                    return null;
+                }
+                Sha mergeBase = readComparison(body);
+                return mergeBase != null ? List.of(mergeBase) : null;
+            }
+        } catch (IOException e) {
+            context.getMetrics().count(MetricsRegistry.COMPARE_ERRORS, 1);
+            return null;
+        }
+    }
+
+    /**
+     * @return the merge base if it is the only one, null otherwise
+     */
+    private Sha readComparison(InputStream body) throws IOException {
+        String status = null;
+        int totalCommits = -1;
+        Sha mergeBase = null;
+        int commitCount = 0;
+        boolean headHasMerges = false;
+
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            List<Sha> parents = new ArrayList<>(2);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("status".equals(field) && value == JsonToken.VALUE_STRING) {
+                    status = parser.getText();
+                } else if ("total_commits".equals(field) && value == JsonToken.VALUE_NUMBER_INT) {
+                    totalCommits = parser.getIntValue();
+                } else if ("merge_base_commit".equals(field) && value == JsonToken.START_OBJECT) {
+                    mergeBase = CommitListParser.readCommit(parser, parents).getSha();
+                } else if ("commits".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        Commit commit = CommitListParser.readCommit(parser, parents);
+                        headHasMerges |= commit.getParentCount() > 1;
+                        commitCount++;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        if (mergeBase == null || status == null) {
+            return null;
+        }
+        switch (status) {
+            case "identical":
+            case "ahead":
+            case "behind":
+                return mergeBase;
+            case "diverged":
+                // The commit list is capped, so merges further down may be missing from it.
+                return commitCount == totalCommits && !headHasMerges ? mergeBase : null;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.example.GithubFinder;
+
+import org.example.exceptions.GithubConnectionException;
+import org.example.exceptions.GithubRequestTimeoutException;
+import org.example.exceptions.GithubUserDoesNotHaveAccessToRepo;
+
+/**
+ * Turns a failure that crossed a thread boundary back into the exception the
+ * finder API declares.
+ */
+final class FetchFailures {
+
+    private FetchFailures() {
+    }
+
+    static GithubConnectionException rethrow(Throwable cause, String message) throws GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        if (cause instanceof GithubUserDoesNotHaveAccessToRepo) {
+            throw (GithubUserDoesNotHaveAccessToRepo) cause;
+        }
+        if (cause instanceof GithubRequestTimeoutException) {
+            throw (GithubRequestTimeoutException) cause;
+        }
+        if (cause instanceof GithubConnectionException) {
+            throw (GithubConnectionException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        throw new GithubConnectionException(message, cause);
+    }
+}
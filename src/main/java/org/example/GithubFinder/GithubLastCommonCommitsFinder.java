@@ -1,155 +1,528 @@
 package org.example.GithubFinder;
 
 import java.io.IOException;
-import java.util.*;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
-import java.io.InputStreamReader;
-import java.io.BufferedReader;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import org.example.BranchPair;
 import org.example.LastCommonCommitsFinder;
 import org.example.exceptions.*;
+import org.example.graph.Sha;
+import org.example.metrics.MetricsRegistry;
 import org.example.utils.CacheUtil;
+import org.example.utils.CachedHistory;
+import org.example.utils.CommitPage;
+import org.example.utils.CommitStore;
+import org.example.utils.FlightPriorities;
+import org.example.utils.GithubContext;
 import org.example.utils.GithubUtils;
+import org.example.utils.RateLimitExceededException;
+import org.example.utils.RateLimitScheduler;
+import org.redisson.api.RLock;
 
+/**
+ * Finds merge bases through the GitHub API. A finder keeps no per-query state, so
+ * one instance can be called repeatedly and from several threads at once; the
+ * clients it uses come from a shared {@link GithubContext}.
+ */
 public class GithubLastCommonCommitsFinder implements LastCommonCommitsFinder {
 
+    /**
+     * How branch histories are paged: through the REST commits listing, or through
+     * GraphQL queries that only ask for oids and parents. See {@link #setTransport}.
+     */
+    public enum Transport {
+        REST,
+        GRAPHQL
+    }
+
+    private static final long LOCK_WAIT_SECONDS = 30;
+    private static final long LOCK_LEASE_SECONDS = 60;
+    /**
+     * How long a GraphQL query waits for concurrently fetched pages to join it.
+     */
+    private static final long GRAPHQL_LINGER_MILLIS = 5;
+
     private final String owner;
     private final String repo;
     private final String token;
-    private final ObjectMapper objectMapper = new ObjectMapper();
-    private CacheUtil cacheUtil;
+    private final String tokenFingerprint;
+    private final GithubContext context;
+    private final CommitListParser commitListParser = new CommitListParser(new JsonFactory());
+    private final GraphqlHistoryFetcher graphqlFetcher;
+    private volatile CacheUtil cacheUtil;
+    private volatile CommitStore commitStore;
+    private volatile ExecutorService pageExecutor;
+    private volatile int prefetchWindow = 0;
+    private volatile int gallopLimit = BranchPager.DEFAULT_GALLOP_LIMIT;
+    private volatile Transport transport = Transport.REST;
+    private volatile boolean distributedCoalescing = false;
+    private volatile List<MergeBaseStrategy> strategies;
+    private volatile RateLimitScheduler.Priority priority = RateLimitScheduler.Priority.INTERACTIVE;
+    /**
+     * The priority page requests are sent with: the configured one, or for a refresh
+     * that of its query flight.
+     */
+    private final Supplier<RateLimitScheduler.Priority> requestPriority;
+    private volatile CacheWarmer cacheWarmer;
+    private final Map<String, LongAdder> answeredBy = new ConcurrentHashMap<>();
 
     public GithubLastCommonCommitsFinder(String owner, String repo, String token) throws GithubUserDoesNotExistException, GithubUserDoesNotHaveAccessToRepo, GithubUnauthorizedToken, GithubRequestTimeoutException, GithubConnectionException {
-        if (!GithubUtils.checkUserExistsByUsername(owner, token)) {
-            throw new GithubUserDoesNotExistException(owner);
-        }
+        this(owner, repo, token, GithubContext.getDefault());
+    }
+
+    public GithubLastCommonCommitsFinder(String owner, String repo, String token, GithubContext context) throws GithubUserDoesNotExistException, GithubUserDoesNotHaveAccessToRepo, GithubUnauthorizedToken, GithubRequestTimeoutException, GithubConnectionException {
+        this(owner, repo, token, context, new RepositoryValidator(context));
+    }
+
+    /**
+     * @param validator checks that the token can read the repository, possibly from what it remembers of earlier checks
+     */
+    public GithubLastCommonCommitsFinder(String owner, String repo, String token, GithubContext context, RepositoryValidator validator) throws GithubUserDoesNotExistException, GithubUserDoesNotHaveAccessToRepo, GithubUnauthorizedToken, GithubRequestTimeoutException, GithubConnectionException {
+        validator.validate(owner, repo, token);
         this.owner = owner;
-        if (!GithubUtils.checkUserHasRepo(owner, repo, token)) {
-            throw new GithubUserDoesNotHaveAccessToRepo(owner, repo);
-        }
         this.repo = repo;
         this.token = token;
-        this.cacheUtil = new CacheUtil();
+        this.tokenFingerprint = RepositoryValidator.fingerprint(token);
+        this.context = context;
+        this.graphqlFetcher = new GraphqlHistoryFetcher(owner, repo, token, context);
+        this.strategies = List.of(new CompareMergeBaseStrategy(owner, repo, token, context));
+        this.requestPriority = () -> this.priority;
     }
 
+    /**
+     * Copies the settings of a finder whose token was already checked, for requests
+     * of the given, possibly changing, priority.
+     */
+    private GithubLastCommonCommitsFinder(GithubLastCommonCommitsFinder other, Supplier<RateLimitScheduler.Priority> requestPriority) {
+        this.owner = other.owner;
+        this.repo = other.repo;
+        this.token = other.token;
+        this.tokenFingerprint = other.tokenFingerprint;
+        this.context = other.context;
+        this.graphqlFetcher = other.graphqlFetcher;
+        this.cacheUtil = other.cacheUtil;
+        this.commitStore = other.commitStore;
+        this.pageExecutor = other.pageExecutor;
+        this.prefetchWindow = other.prefetchWindow;
+        this.gallopLimit = other.gallopLimit;
+        this.transport = other.transport;
+        this.distributedCoalescing = other.distributedCoalescing;
+        this.strategies = other.strategies;
+        this.priority = RateLimitScheduler.Priority.BACKGROUND;
+        this.requestPriority = requestPriority;
+    }
+
+    /**
+     * Concurrent calls for the same pair of branches, with the same token and
+     * priority, share one computation. With distributed coalescing enabled, a
+     * computation that has to walk the histories also holds a Redis lock, so other
+     * JVMs wait for its walk and then find the result in the cache. Answers from a
+     * strategy are not cached and take no lock.
+     */
     @Override
     public Collection<String> findLastCommonCommits(String branchA, String branchB) throws GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
-        List<String> commitsA = fetchCacheCommits(branchA);
-        List<String> commitsB = fetchCacheCommits(branchB);
+        CacheWarmer warmer = cacheWarmer;
+        if (warmer != null) {
+            warmer.record(this, branchA, branchB);
+        }
+        String pairKey = pairKey(branchA, branchB);
+        // Another token may be refused the repository, and a background query may wait long for budget.
+        String key = pairKey + "@" + tokenFingerprint + "|" + priority;
+        FlightPriorities priorities = context.getQueryPriorities();
+        // Joining raises a refresh of the pair that is already running, see refresh().
+        priorities.join(key, priority);
+        try {
+            return context.getQueryFlights().execute(key, () -> resolve(branchA, branchB));
+        } catch (ExecutionException e) {
+            throw FetchFailures.rethrow(e.getCause(), "Failed to find the common commits of " + branchA + " and " + branchB);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GithubConnectionException("Interrupted while finding the common commits of " + branchA + " and " + branchB, e);
+        } finally {
+            priorities.leave(key);
+        }
+    }
 
-        Set<String> commonCommits = new HashSet<>(commitsA);
-        commonCommits.retainAll(commitsB);
+    /**
+     * Merge bases are symmetric, so both orders of the pair share a key. Whoever
+     * computes the pair, the result lands in the same cache, so the Redis lock is
+     * taken on this key alone.
+     */
+    private String pairKey(String branchA, String branchB) {
+        return branchA.compareTo(branchB) <= 0
+                ? owner + "/" + repo + ":" + branchA + "..." + branchB
+                : owner + "/" + repo + ":" + branchB + "..." + branchA;
+    }
 
-        Collection<String> res = findLastCommon(commonCommits, commitsA, commitsB);
-        if (res.isEmpty()) {
-            int page = 1;
-            Collection<String> lastCommonCommits;
-            List<String> commitsPageA = fetchCommits(branchA, page);
-            List<String> commitsPageB = fetchCommits(branchB, page);
-            commitsA = new ArrayList<>(commitsPageA);
-            commitsB = new ArrayList<>(commitsPageB);
+    /**
+     * Runs the walk while holding the Redis lock of the pair, if distributed
+     * coalescing is enabled.
+     */
+    private void locked(String branchA, String branchB, MergeBaseResolver.Walk walk) throws GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        if (!distributedCoalescing) {
+            walk.run();
+            return;
+        }
+        RLock lock = cacheUtil().getLock(pairKey(branchA, branchB));
+        boolean locked;
+        try {
+            // If the holder takes too long, go ahead without the lock rather than fail.
+            locked = lock.tryLock(LOCK_WAIT_SECONDS, LOCK_LEASE_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GithubConnectionException("Interrupted while waiting for the walk of " + branchA + " and " + branchB, e);
+        }
+        try {
+            walk.run();
+        } finally {
+            if (locked && lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
 
-            commonCommits = new HashSet<>(commitsPageA);
-            commonCommits.retainAll(commitsPageB);
+    private Collection<String> resolve(String branchA, String branchB) throws GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        long start = System.nanoTime();
+        List<Collection<Sha>> result = new ArrayList<>(1);
+        resolver().resolve(List.of(new BranchPair(branchA, branchB)), (pair, bases, strategy) -> {
+            record(strategy, start);
+            result.add(bases);
+        }, walk -> locked(branchA, branchB, walk));
+        return toHex(result.get(0));
+    }
 
-            lastCommonCommits = findLastCommon(commonCommits, commitsPageA, commitsPageB);
+    /**
+     * Resolves all the pairs in one pass: each distinct branch is paged once and its
+     * commits are shared by every pair it appears in, so comparing many branches
+     * against one base costs one walk down the base. Unlike the single-pair method,
+     * the batch is not coalesced with identical concurrent batches, although the
+     * pages it fetches still are.
+     */
+    @Override
+    public void findLastCommonCommits(Collection<BranchPair> pairs, BiConsumer<BranchPair, Collection<String>> onResult) throws GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        CacheWarmer warmer = cacheWarmer;
+        if (warmer != null) {
+            for (BranchPair pair : pairs) {
+                warmer.record(this, pair.getBranchA(), pair.getBranchB());
+            }
+        }
+        long start = System.nanoTime();
+        resolver().resolve(pairs, (pair, bases, strategy) -> {
+            record(strategy, start);
+            onResult.accept(pair, toHex(bases));
+        });
+    }
 
-            while ((!commitsPageA.isEmpty() || !commitsPageB.isEmpty()) && lastCommonCommits.isEmpty()) {
-                page++;
+    private MergeBaseResolver resolver() {
+        return new MergeBaseResolver(strategies, this::fetchCacheCommits, this::saveCacheCommits,
+                this::fetchCoalesced, pageExecutor(), prefetchWindow, gallopLimit, context.getSnapshot(owner, repo), commitStore(), context.getCacheFreshMillis(), context.getMetrics(),
+                transport == Transport.GRAPHQL ? graphqlFetcher::announce : null, requestPriority);
+    }
 
-                if (!commitsPageA.isEmpty()) {
-                    commitsA.addAll(commitsPageA);
-                    commitsPageA = fetchCommits(branchA, page);
-                }
-                if (!commitsPageB.isEmpty()) {
-                    commitsB.addAll(commitsPageB);
-                    commitsPageB = fetchCommits(branchB, page);
-                }
+    private void record(String strategy, long start) {
+        answeredBy.computeIfAbsent(strategy, name -> new LongAdder()).increment();
+        context.getMetrics().time(MetricsRegistry.QUERY_LATENCY, System.nanoTime() - start, "answeredBy", strategy);
+    }
 
-                commonCommits = new HashSet<>(commitsA);
-                commonCommits.retainAll(commitsB);
+    /**
+     * @return how many pairs each strategy has answered, keyed by strategy name; pairs
+     * answered from fresh cached histories count as "cache", from the snapshot or the
+     * commit store as "snapshot" or "store", pairs that needed the history walk as "history"
+     */
+    public Map<String, Long> getAnsweredBy() {
+        Map<String, Long> counts = new TreeMap<>();
+        answeredBy.forEach((strategy, count) -> counts.put(strategy, count.sum()));
+        return counts;
+    }
 
-                lastCommonCommits = findLastCommon(commonCommits, commitsA, commitsB);
-            }
+    public CachedHistory fetchCacheCommits(String branch) {
+        CachedHistory history;
+        try {
+            history = cacheUtil().get(owner, repo, branch);
+        } catch (RuntimeException e) {
+            context.getMetrics().count(MetricsRegistry.CACHE_ERRORS, 1, "operation", "get");
+            throw e;
+        }
+        if (!history.isEmpty() && !history.isFresh(context.getCacheFreshMillis())) {
+            context.getMetrics().count(MetricsRegistry.CACHE_STALE, 1);
+        }
+        return history;
+    }
 
-            System.out.println("No common commits found in cache!");
+    /**
+     * Saves a history; a failure is counted by the resolver, which goes on without it.
+     */
+    private void saveCacheCommits(String branch, CachedHistory history) {
+        cacheUtil().put(owner, repo, branch, history);
+    }
 
-            try {
-                cacheUtil.put(owner, repo, branchA, commitsA);
-                cacheUtil.put(owner, repo, branchB, commitsB);
-            } catch (Exception e) {
-                System.err.println("Error saving commits to cache: " + e.getMessage());
+    /**
+     * Fetches a page through the shared page flights, so concurrent queries that need
+     * the same page of the same branch make one request between them. Only queries
+     * with the same priority share a fetch, so an interactive query never waits
+     * behind a background one's reserve, and only queries whose requests go out with
+     * the same token: the finder's own, or any of the scheduler's pool. A refusal of
+     * another query's token does not fail this one, which then asks on its own.
+     */
+    private CommitPage fetchCoalesced(String branch, int page, CommitPage cached, Sha head) throws GithubUserDoesNotHaveAccessToRepo, GithubConnectionException, GithubRequestTimeoutException {
+        Transport current = transport;
+        boolean pooled = context.getScheduler().hasTokenPool();
+        String key = owner + "/" + repo + ":" + branch + "#" + page + (cached == null ? "" : "@" + cached.getEtag())
+                + "|" + (pooled ? "pool" : tokenFingerprint) + "|" + requestPriority.get();
+        if (current == Transport.GRAPHQL) {
+            // GraphQL pages after the first are addressed from the head, not the branch.
+            key += "|graphql" + (head == null ? "" : "@" + head.toHex());
+        }
+        AtomicBoolean led = new AtomicBoolean();
+        try {
+            CommitPage result = context.getPageFlights().execute(key, () -> {
+                led.set(true);
+                return fetchPage(current, branch, page, cached, head);
+            });
+            // A follower gets the leader's copy of a 304; hand back its own so the pager recognises it.
+            return cached != null && result.equals(cached) ? cached : result;
+        } catch (ExecutionException e) {
+            if (pooled && !led.get() && e.getCause() instanceof GithubUserDoesNotHaveAccessToRepo) {
+                // The leader fell back to its own token and was refused; this finder's token may do better.
+                return fetchPage(current, branch, page, cached, head);
             }
-
-
-            cacheUtil.close();
-            return lastCommonCommits;
+            throw FetchFailures.rethrow(e.getCause(), "Failed to fetch commits for branch " + branch);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GithubConnectionException("Interrupted while fetching commits for branch " + branch, e);
         }
-
-        cacheUtil.close();
-        return res;
     }
 
-    public List<String> fetchCacheCommits(String branch) {
-        return cacheUtil.get(owner, repo, branch);
+    private CommitPage fetchPage(Transport transport, String branch, int page, CommitPage cached, Sha head) throws GithubUserDoesNotHaveAccessToRepo, GithubConnectionException, GithubRequestTimeoutException {
+        return transport == Transport.GRAPHQL
+                ? graphqlFetcher.fetch(branch, page, cached, head, requestPriority)
+                : fetchCommits(branch, page, cached);
     }
 
-    public List<String> fetchCommits(String branch, int page) throws GithubUserDoesNotHaveAccessToRepo, GithubConnectionException, GithubRequestTimeoutException {
-        List<String> commits = new ArrayList<>();
-        String url = String.format("https://api.github.com/repos/%s/%s/commits?sha=%s&page=%d", owner, repo, branch, page);
-        HttpURLConnection connection = null;
+    /**
+     * Fetches one page of a branch's history. Pages follow a {@link PageSchedule}, so
+     * later pages hold more commits than the first ones. If a cached copy of the page
+     * is given, the request is made conditional on its ETag / Last-Modified, and the
+     * cached copy itself is returned when GitHub answers 304 Not Modified.
+     */
+    public CommitPage fetchCommits(String branch, int page, CommitPage cached) throws GithubUserDoesNotHaveAccessToRepo, GithubConnectionException, GithubRequestTimeoutException {
+        String url = String.format("%s/repos/%s/%s/commits?sha=%s&per_page=%d&page=%d",
+                context.getApiUrl(), owner, repo, branch, PageSchedule.perPage(page), PageSchedule.apiPage(page));
 
         try {
-            connection = GithubUtils.createConnection(url, token);
-
-            if (connection.getResponseCode() == HttpURLConnection.HTTP_NOT_FOUND || connection.getResponseCode() == HttpURLConnection.HTTP_UNAUTHORIZED) {
-                throw new GithubUserDoesNotHaveAccessToRepo(owner, repo);
+            HttpRequest.Builder request = GithubUtils.createRequest(url, token);
+            if (cached != null) {
+                GithubUtils.addValidators(request, cached.getEtag(), cached.getLastModified());
             }
 
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream()))) {
-                JsonNode jsonResponse = objectMapper.readTree(reader);
-                if (jsonResponse.isEmpty()) {
-                    return commits;
+            HttpResponse<InputStream> response = GithubUtils.send(context, "commits", request.build(), requestPriority, true);
+            try (InputStream body = response.body()) {
+                int responseCode = response.statusCode();
+                // Rate limits are waited out by the scheduler, so a 403 that gets here is a refusal.
+                if (responseCode == HttpURLConnection.HTTP_NOT_FOUND || responseCode == HttpURLConnection.HTTP_UNAUTHORIZED || responseCode == HttpURLConnection.HTTP_FORBIDDEN) {
+                    throw new GithubUserDoesNotHaveAccessToRepo(owner, repo);
                 }
-                for (JsonNode commit : jsonResponse) {
-                    String sha = commit.get("sha").asText();
-                    commits.add(sha);
+                if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                    context.getMetrics().count(MetricsRegistry.PAGES, 1, "branch", branch, "result", "not_modified");
+                    return cached;
                 }
+                context.getMetrics().count(MetricsRegistry.PAGES, 1, "branch", branch, "result", "fetched");
+
+                String etag = response.headers().firstValue("ETag").orElse(null);
+                String lastModified = response.headers().firstValue("Last-Modified").orElse(null);
+                return new CommitPage(page, commitListParser.parse(body), etag, lastModified);
             }
-        } catch (java.net.SocketTimeoutException e) {
+        } catch (RateLimitExceededException e) {
+            throw new GithubRateLimitExceededException("Rate limit exhausted while fetching commits for branch " + branch, e);
+        } catch (HttpTimeoutException e) {
             throw new GithubRequestTimeoutException("Request timed out while fetching commits for branch " + branch, e);
         } catch (IOException e) {
             throw new GithubConnectionException("Connection failed while fetching commits for branch " + branch, e);
+        }
+    }
+
+    /**
+     * Walks the histories of the pair again with background priority and saves them,
+     * revalidating the cached ones with GitHub even while they are fresh.
+     * <p>
+     * The refresh runs as the query flight of the pair, so an interactive query for
+     * it joins the refresh instead of repeating its requests, and raises it to
+     * interactive priority. A refresh that finds the query already running joins it
+     * instead, and leaves the revalidation to a later refresh.
+     */
+    void refresh(String branchA, String branchB) throws GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        String pairKey = pairKey(branchA, branchB);
+        String key = pairKey + "@" + tokenFingerprint + "|" + RateLimitScheduler.Priority.INTERACTIVE;
+        FlightPriorities priorities = context.getQueryPriorities();
+        GithubLastCommonCommitsFinder background = new GithubLastCommonCommitsFinder(this, priorities.join(key, RateLimitScheduler.Priority.BACKGROUND));
+        try {
+            context.getQueryFlights().execute(key, () -> background.walkAgain(branchA, branchB));
+        } catch (ExecutionException e) {
+            throw FetchFailures.rethrow(e.getCause(), "Failed to refresh the common commits of " + branchA + " and " + branchB);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GithubConnectionException("Interrupted while refreshing the common commits of " + branchA + " and " + branchB, e);
         } finally {
-            if (connection != null) {
-                connection.disconnect();
-            }
+            priorities.leave(key);
         }
+    }
 
-        return commits;
+    private Collection<String> walkAgain(String branchA, String branchB) throws GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        List<Collection<Sha>> result = new ArrayList<>(1);
+        locked(branchA, branchB, () -> resolver().refresh(List.of(new BranchPair(branchA, branchB)), (pair, bases, strategy) -> result.add(bases)));
+        return toHex(result.get(0));
     }
 
+    /**
+     * @return when the cached history of the branch was fetched, 0 if it is not cached
+     */
+    long getCachedAt(String branch) {
+        return cacheUtil().getPrefix(owner, repo, branch, 1).getFetchedAt();
+    }
 
-    private Collection<String> findLastCommon(Set<String> commonCommits, List<String> commitsA, List<String> commitsB) {
-        Set<String> lastCommonCommits = new HashSet<>();
-        for (String commit : commitsA) {
-            if (commonCommits.contains(commit)) {
-                lastCommonCommits.add(commit);
-                break;
-            }
-        }
-        for (String commit : commitsB) {
-            if (commonCommits.contains(commit)) {
-                lastCommonCommits.add(commit);
-                break;
-            }
+    /**
+     * @return the requests this finder's token is known to have left on the resource
+     * its transport draws on, or -1 if unknown
+     */
+    long getRemainingRequests() {
+        return context.getScheduler().getRemaining(token, transport == Transport.GRAPHQL ? "graphql" : "core");
+    }
+
+    GithubContext getContext() {
+        return context;
+    }
+
+    String getRepositoryName() {
+        return owner + "/" + repo;
+    }
+
+    private static Collection<String> toHex(Collection<Sha> shas) {
+        List<String> hex = new ArrayList<>(shas.size());
+        for (Sha sha : shas) {
+            hex.add(sha.toHex());
         }
-        return lastCommonCommits;
+        return hex;
+    }
+
+    private CacheUtil cacheUtil() {
+        CacheUtil override = cacheUtil;
+        return override != null ? override : context.getCacheUtil();
+    }
+
+    private CommitStore commitStore() {
+        CommitStore override = commitStore;
+        return override != null ? override : context.getCommitStore(owner, repo);
+    }
+
+    private ExecutorService pageExecutor() {
+        ExecutorService override = pageExecutor;
+        return override != null ? override : context.getPageExecutor();
     }
 
     public void setCacheUtil(CacheUtil cacheUtil) {
         this.cacheUtil = cacheUtil;
     }
+
+    /**
+     * Shares this finder's commits through the given store instead of the context's.
+     */
+    public void setCommitStore(CommitStore commitStore) {
+        this.commitStore = commitStore;
+    }
+
+    /**
+     * Sets how many pages per branch are kept in flight once the two branches have
+     * met. With 0 (the default) pages are then fetched one after the other on the
+     * calling thread. With a positive window both branches are fetched concurrently
+     * and the next pages are prefetched while the current ones are processed, at the
+     * cost of a few speculative requests once the result settles.
+     * <p>
+     * Until the branches meet, a branch may keep more pages in flight, up to the
+     * {@link #setGallopLimit gallop limit}; so even a window of 0 is not sequential
+     * then, unless the gallop limit is 0 too.
+     */
+    public void setPrefetchWindow(int prefetchWindow) {
+        if (prefetchWindow < 0) {
+            throw new IllegalArgumentException("Prefetch window must not be negative");
+        }
+        this.prefetchWindow = prefetchWindow;
+        graphqlFetcher.setLinger(prefetchWindow > 0 ? GRAPHQL_LINGER_MILLIS : 0);
+    }
+
+    /**
+     * Sets how many pages per branch may be in flight at once while the branch has
+     * not met the other side of the query: the lookahead doubles from the window, or
+     * from one page, up to this limit or the window if that is larger. Defaults to
+     * {@value BranchPager#DEFAULT_GALLOP_LIMIT}; 0 never goes beyond the window.
+     */
+    public void setGallopLimit(int gallopLimit) {
+        if (gallopLimit < 0) {
+            throw new IllegalArgumentException("Gallop limit must not be negative");
+        }
+        this.gallopLimit = gallopLimit;
+    }
+
+    /**
+     * Sets how branch histories are paged. {@link Transport#REST} (the default) lists
+     * commits with their full metadata and revalidates cached pages with conditional
+     * requests. {@link Transport#GRAPHQL} asks only for the oid and parents of each
+     * commit and draws on the separate GraphQL rate limit; the pages needed for
+     * several branches at once share one query. See {@link GraphqlHistoryFetcher}.
+     */
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Enables coalescing the history walks of identical queries across JVMs through a Redis lock, on top
+     * of the coalescing that always happens within the JVM.
+     */
+    public void setDistributedCoalescing(boolean distributedCoalescing) {
+        this.distributedCoalescing = distributedCoalescing;
+    }
+
+    /**
+     * Sets the shortcuts tried, in order, before walking the histories. By default
+     * the compare endpoint is tried first; an empty list always walks.
+     */
+    public void setStrategies(List<MergeBaseStrategy> strategies) {
+        this.strategies = List.copyOf(strategies);
+    }
+
+    /**
+     * Sets the priority of this finder's page requests when rate-limit budget runs
+     * low. Finders that warm caches in the background should use
+     * {@link RateLimitScheduler.Priority#BACKGROUND}, so they never hold up queries
+     * someone is waiting for. Queries only share a flight with queries of the same
+     * priority.
+     */
+    public void setPriority(RateLimitScheduler.Priority priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * Reports this finder's queries to the warmer, which keeps the most frequent
+     * ones fresh in the cache. See {@link CacheWarmer}.
+     */
+    public void setCacheWarmer(CacheWarmer cacheWarmer) {
+        this.cacheWarmer = cacheWarmer;
+    }
+
+    public void setPageExecutor(ExecutorService pageExecutor) {
+        this.pageExecutor = pageExecutor;
+    }
 }
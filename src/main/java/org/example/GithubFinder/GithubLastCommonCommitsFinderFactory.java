@@ -3,14 +3,101 @@ package org.example.GithubFinder;
 import org.example.LastCommonCommitsFinder;
 import org.example.LastCommonCommitsFinderFactory;
 import org.example.exceptions.*;
+import org.example.utils.GithubContext;
 
 import java.io.IOException;
+import java.time.Duration;
 
-public class GithubLastCommonCommitsFinderFactory implements LastCommonCommitsFinderFactory {
+/**
+ * Creates finders that all share one {@link GithubContext}. Closing the factory
+ * closes the context, after which its finders can no longer be used.
+ * <p>
+ * Whether a token can read a repository is remembered for a while (see
+ * {@link #setValidationTtl}), so creating finders for the same repository again
+ * does not repeat the checks against GitHub.
+ */
+public class GithubLastCommonCommitsFinderFactory implements LastCommonCommitsFinderFactory, AutoCloseable {
+
+    private final GithubContext context;
+    private final int prefetchWindow;
+    private volatile RepositoryValidator validator;
+    private boolean distributedCoalescing;
+    private CacheWarmer cacheWarmer;
+
+    public GithubLastCommonCommitsFinderFactory() {
+        this(0);
+    }
+
+    /**
+     * @param prefetchWindow pages per branch kept in flight, 0 to fetch pages sequentially once the branches met
+     */
+    public GithubLastCommonCommitsFinderFactory(int prefetchWindow) {
+        this(new GithubContext(), prefetchWindow);
+    }
+
+    public GithubLastCommonCommitsFinderFactory(GithubContext context, int prefetchWindow) {
+        this.context = context;
+        this.prefetchWindow = prefetchWindow;
+        this.validator = new RepositoryValidator(context, RepositoryValidator.DEFAULT_TTL, RepositoryValidator.DEFAULT_NEGATIVE_TTL);
+    }
 
     @Override
     public LastCommonCommitsFinder create(String owner, String repo, String token) throws IOException, GithubUserDoesNotExistException, GithubUserDoesNotHaveAccessToRepo, GithubUnauthorizedToken, GithubRequestTimeoutException, GithubConnectionException {
-        return new GithubLastCommonCommitsFinder(owner, repo, token);
+        GithubLastCommonCommitsFinder finder = new GithubLastCommonCommitsFinder(owner, repo, token, context, validator);
+        finder.setPrefetchWindow(prefetchWindow);
+        finder.setDistributedCoalescing(distributedCoalescing);
+        finder.setCacheWarmer(cacheWarmer);
+        return finder;
+    }
+
+    /**
+     * Makes the finders created from now on coalesce identical queries across JVMs
+     * through a Redis lock.
+     */
+    public void setDistributedCoalescing(boolean distributedCoalescing) {
+        this.distributedCoalescing = distributedCoalescing;
     }
-}
 
+    /**
+     * Sets how long the factory remembers that a token can read a repository, and
+     * how long it remembers that it cannot. Forgets what it remembered so far.
+     * {@link Duration#ZERO} checks on every {@link #create}.
+     */
+    public void setValidationTtl(Duration ttl, Duration negativeTtl) {
+        this.validator = new RepositoryValidator(context, ttl, negativeTtl);
+    }
+
+    /**
+     * Forgets whether tokens can read the repository, e.g. after its permissions changed.
+     */
+    public void invalidateValidation(String owner, String repo) {
+        validator.invalidate(owner, repo);
+    }
+
+    /**
+     * Keeps the most frequent queries of the finders created from now on fresh in
+     * the cache, refreshing them in the background. See {@link CacheWarmer}.
+     *
+     * @param topN        how many of the most popular pairs are kept fresh
+     * @param concurrency how many refreshes run or wait at once
+     * @return the warmer, to configure further; it is closed with the factory
+     */
+    public synchronized CacheWarmer enableCacheWarming(int topN, int concurrency) {
+        if (cacheWarmer != null) {
+            cacheWarmer.close();
+        }
+        // Pairs are checked several times per freshness window, so none expires between checks.
+        cacheWarmer = new CacheWarmer(topN, concurrency, Duration.ofMillis(Math.max(1000, context.getCacheFreshMillis() / 10)));
+        return cacheWarmer;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (cacheWarmer != null) {
+                cacheWarmer.close();
+            }
+        }
+        context.close();
+    }
+}
@@ -0,0 +1,748 @@
+package org.example.GithubFinder;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.example.exceptions.GithubConnectionException;
+import org.example.exceptions.GithubRateLimitExceededException;
+import org.example.exceptions.GithubRequestTimeoutException;
+import org.example.exceptions.GithubUserDoesNotHaveAccessToRepo;
+import org.example.graph.Commit;
+import org.example.graph.Sha;
+import org.example.metrics.MetricsRegistry;
+import org.example.utils.CommitPage;
+import org.example.utils.GithubContext;
+import org.example.utils.GithubUtils;
+import org.example.utils.RateLimitExceededException;
+import org.example.utils.RateLimitScheduler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Fetches pages of branch histories through the GraphQL API, asking only for the
+ * oid and parents of each commit. Pages follow the same {@link PageSchedule} as the
+ * REST transport, so cached pages stay interchangeable between the two.
+ * <p>
+ * Page fetches that wait at the same time are sent together, as aliases of one
+ * query of up to {@value #MAX_ALIASES} pages. One query per finder is in flight at a
+ * time, which GitHub asks of GraphQL clients anyway. The resolver announces the
+ * pages of all the branches a walk needs before fetching them concurrently, and the
+ * thread that sends next waits for the announced pages to queue up, for at most
+ * {@value #ANNOUNCED_TIMEOUT_MILLIS} ms, so they share a query even without a prefetch
+ * window. With one, it also lingers briefly for pages no one announced.
+ * <p>
+ * The first page of a branch is read from its ref. Later pages continue from the
+ * head that first page started at, after the {@code endCursor} GitHub returned for
+ * the page before; pages of a branch queued together are sent one round after the
+ * other, each round following the cursors of the last. Only a page whose previous
+ * page's cursor is not known and not being fetched, such as one a prefetch asks for
+ * after a restart, builds its cursor the way GitHub builds history cursors
+ * ({@code "<oid> <index of the last commit seen>"}), addressing pages by offset like
+ * the REST pages. That format is not documented: every cursor GitHub returns is
+ * checked against it, and once one differs or a built cursor is rejected, such a
+ * page fetches the pages before it instead. A later page whose head is not known
+ * yet costs an extra round to look the head up first. GraphQL has no conditional
+ * requests: a fetched page equal to the cached one is returned as the cached one,
+ * as if GitHub had answered 304 Not Modified, and the page after the end of a
+ * history is answered without asking.
+ */
+class GraphqlHistoryFetcher {
+
+    static final int MAX_ALIASES = 16;
+    /**
+     * How long the thread that sends next waits at most for announced pages that never came.
+     */
+    static final long ANNOUNCED_TIMEOUT_MILLIS = 50;
+
+    private static final String BRANCH_PREFIX = "refs/heads/";
+    private static final int MAX_PARENTS = 100;
+    private static final int MAX_KNOWN_ENDS = 1024;
+    private static final int MAX_KNOWN_CURSORS = 4096;
+    private static final String PAGE_FRAGMENT = "fragment page on CommitHistoryConnection { pageInfo { hasNextPage endCursor } "
+            + "nodes { oid parents(first: " + MAX_PARENTS + ") { nodes { oid } } } }";
+
+    private final String owner;
+    private final String repo;
+    private final String token;
+    private final GithubContext context;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final Object lock = new Object();
+    private final List<Request> queue = new ArrayList<>();
+    private boolean sending;
+    /**
+     * Pages announced by {@link #announce} that have not queued up yet, keyed by {@link #pageKey}.
+     */
+    private final Set<String> announced = new HashSet<>();
+    private volatile long lingerMillis;
+    /**
+     * Whether cursors built from an offset are accepted, until GitHub shows otherwise.
+     */
+    private volatile boolean offsetCursors = true;
+    /**
+     * How many commits the history of each head holds, for heads whose last page was seen.
+     */
+    private final Map<Sha, Integer> lengths = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Sha, Integer> eldest) {
+            return size() > MAX_KNOWN_ENDS;
+        }
+    });
+    /**
+     * The {@code endCursor} GitHub returned for each page, keyed by {@link #cursorKey}.
+     */
+    private final Map<String, String> cursors = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_KNOWN_CURSORS;
+        }
+    });
+
+    GraphqlHistoryFetcher(String owner, String repo, String token, GithubContext context) {
+        this.owner = owner;
+        this.repo = repo;
+        this.token = token;
+        this.context = context;
+    }
+
+    /**
+     * Makes the thread that sends next wait this long for more pages to join its
+     * query. Only worth it when pages are fetched concurrently.
+     */
+    void setLinger(long lingerMillis) {
+        this.lingerMillis = lingerMillis;
+    }
+
+    /**
+     * Announces that the page is about to be fetched along with others, so the next
+     * query waits for it.
+     */
+    void announce(String branch, int page) {
+        synchronized (lock) {
+            announced.add(pageKey(branch, page));
+        }
+    }
+
+    /**
+     * @param head     the head the branch's first page started at in this walk, or null if not known yet
+     * @param priority the priority of the caller, which may be raised while the page waits for budget
+     * @return the fetched page, or {@code cached} itself if the page did not change
+     */
+    CommitPage fetch(String branch, int page, CommitPage cached, Sha head, Supplier<RateLimitScheduler.Priority> priority) throws GithubUserDoesNotHaveAccessToRepo, GithubConnectionException, GithubRequestTimeoutException {
+        if (page > 1 && head != null && isPastEnd(head, page)) {
+            synchronized (lock) {
+                if (announced.remove(pageKey(branch, page))) {
+                    lock.notifyAll();
+                }
+            }
+            return new CommitPage(page, Collections.emptyList(), null, null);
+        }
+
+        Request request = new Request(branch, page, cached, head, priority);
+        boolean sender;
+        synchronized (lock) {
+            queue.add(request);
+            if (announced.remove(pageKey(branch, page))) {
+                lock.notifyAll();
+            }
+            try {
+                while (!request.done && sending) {
+                    lock.wait();
+                }
+            } catch (InterruptedException e) {
+                queue.remove(request);
+                Thread.currentThread().interrupt();
+                throw new GithubConnectionException("Interrupted while fetching commits for branch " + branch, e);
+            }
+            sender = !request.done;
+            sending |= sender;
+        }
+
+        if (sender) {
+            try {
+                sendNext(request);
+            } finally {
+                synchronized (lock) {
+                    sending = false;
+                    lock.notifyAll();
+                }
+            }
+        }
+        if (request.failure != null) {
+            throw FetchFailures.rethrow(request.failure, "Failed to fetch commits for branch " + branch);
+        }
+        return request.result;
+    }
+
+    /**
+     * Sends the given request together with whatever else is queued, up to the limit.
+     */
+    private void sendNext(Request own) {
+        List<Request> batch = new ArrayList<>();
+        synchronized (lock) {
+            long start = System.currentTimeMillis();
+            try {
+                while (queue.size() < MAX_ALIASES) {
+                    long waited = System.currentTimeMillis() - start;
+                    long wait = !announced.isEmpty() ? ANNOUNCED_TIMEOUT_MILLIS - waited : lingerMillis - waited;
+                    if (wait <= 0) {
+                        break;
+                    }
+                    lock.wait(wait);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // Announced pages that did not come in time go into a later query.
+            announced.clear();
+            queue.remove(own);
+            batch.add(own);
+            for (Iterator<Request> it = queue.iterator(); it.hasNext() && batch.size() < MAX_ALIASES; ) {
+                batch.add(it.next());
+                it.remove();
+            }
+        }
+        try {
+            send(batch);
+        } catch (Throwable e) {
+            for (Request request : batch) {
+                if (request.result == null && request.failure == null) {
+                    request.failure = e;
+                }
+            }
+        } finally {
+            synchronized (lock) {
+                for (Request request : batch) {
+                    request.done = true;
+                }
+            }
+        }
+    }
+
+    private void send(List<Request> batch) throws GithubUserDoesNotHaveAccessToRepo, GithubConnectionException, GithubRequestTimeoutException {
+        // Later pages of a branch whose first page is not in this query need its head first.
+        Map<String, Sha> heads = new HashMap<>();
+        Set<String> firstPages = new HashSet<>();
+        for (Request request : batch) {
+            if (request.page == 1) {
+                firstPages.add(request.branch);
+            }
+        }
+        // The query is as urgent as the most urgent page in it.
+        Supplier<RateLimitScheduler.Priority> priority = () -> {
+            for (Request request : batch) {
+                if (request.priority.get() == RateLimitScheduler.Priority.INTERACTIVE) {
+                    return RateLimitScheduler.Priority.INTERACTIVE;
+                }
+            }
+            return RateLimitScheduler.Priority.BACKGROUND;
+        };
+        List<Request> now = new ArrayList<>();
+        List<Request> later = new ArrayList<>();
+        Set<String> lookups = new LinkedHashSet<>();
+        for (Request request : batch) {
+            if (request.page == 1 || request.head != null) {
+                now.add(request);
+            } else {
+                later.add(request);
+                if (!firstPages.contains(request.branch)) {
+                    lookups.add(request.branch);
+                }
+            }
+        }
+
+        query(withCursors(now), lookups, heads, priority);
+        for (Request request : now) {
+            if (request.page == 1 && request.result != null && !request.result.isEmpty()) {
+                heads.put(request.branch, request.result.getCommits().get(0).getSha());
+            }
+        }
+        List<Request> pending = new ArrayList<>(now);
+        for (Request request : later) {
+            Sha head = heads.get(request.branch);
+            if (head == null) {
+                // Its first page failed, or the branch does not exist, which REST answers with 404 for.
+                Request first = findFirstPage(now, request.branch);
+                request.failure = first != null && first.failure != null ? first.failure : new GithubUserDoesNotHaveAccessToRepo(owner, repo);
+            } else {
+                request.head = head;
+                pending.add(request);
+            }
+        }
+
+        // Each round follows the cursors the last one returned.
+        pending.sort(Comparator.comparingInt(request -> request.page));
+        while (true) {
+            pending.removeIf(request -> request.result != null || request.failure != null);
+            if (pending.isEmpty()) {
+                return;
+            }
+            List<Request> round = withCursors(pending);
+            if (round.isEmpty()) {
+                // No cursor to start from, once cursors are no longer built.
+                fetchChained(pending.get(0), priority);
+            } else {
+                query(round, Collections.emptySet(), heads, priority);
+            }
+        }
+    }
+
+    /**
+     * Gives the later pages their cursors: the one GitHub returned for the page
+     * before, or else one built from the page's offset, unless the page before is
+     * among the given ones. Pages after the end of their history are answered.
+     *
+     * @return the pages that can be fetched now, leaving out those without a cursor
+     */
+    private List<Request> withCursors(List<Request> requests) {
+        Set<String> fetching = new HashSet<>();
+        for (Request request : requests) {
+            if (request.head != null) {
+                fetching.add(cursorKey(request.head, request.page));
+            }
+        }
+        List<Request> ready = new ArrayList<>(requests.size());
+        for (Request request : requests) {
+            if (request.head != null && request.page > 1) {
+                if (isPastEnd(request.head, request.page)) {
+                    request.result = new CommitPage(request.page, Collections.emptyList(), null, null);
+                    continue;
+                }
+                String previous = cursorKey(request.head, request.page - 1);
+                request.cursor = cursors.get(previous);
+                if (request.cursor == null && offsetCursors && !fetching.contains(previous)) {
+                    request.cursor = offsetCursor(request.head, PageSchedule.offset(request.page));
+                }
+                if (request.cursor == null) {
+                    continue;
+                }
+            }
+            ready.add(request);
+        }
+        return ready;
+    }
+
+    /**
+     * Fetches a later page by following the cursors GitHub returned, from the last
+     * page of its head whose cursor is known, fetching the pages in between.
+     */
+    private void fetchChained(Request request, Supplier<RateLimitScheduler.Priority> priority) throws GithubUserDoesNotHaveAccessToRepo, GithubConnectionException, GithubRequestTimeoutException {
+        int known = request.page - 1;
+        while (known > 0 && cursors.get(cursorKey(request.head, known)) == null) {
+            known--;
+        }
+        for (int page = known + 1; page <= request.page; page++) {
+            if (isPastEnd(request.head, page)) {
+                request.result = new CommitPage(request.page, Collections.emptyList(), null, null);
+                return;
+            }
+            Request step = page == request.page ? request : new Request(request.branch, page, null, request.head, request.priority);
+            step.cursor = page == 1 ? null : cursors.get(cursorKey(request.head, page - 1));
+            query(List.of(step), Collections.emptySet(), new HashMap<>(), priority);
+            if (step.failure != null) {
+                request.failure = step.failure;
+                return;
+            }
+        }
+    }
+
+    private void query(List<Request> pages, Set<String> lookups, Map<String, Sha> heads, Supplier<RateLimitScheduler.Priority> priority) throws GithubUserDoesNotHaveAccessToRepo, GithubConnectionException, GithubRequestTimeoutException {
+        query(pages, lookups, heads, priority, true);
+    }
+
+    /**
+     * Sends one query for the given pages and head lookups, and hands each page its
+     * result or failure. The heads looked up are put into {@code heads}.
+     *
+     * @param pooled whether the query may be sent with a token of the pool
+     */
+    private void query(List<Request> pages, Set<String> lookups, Map<String, Sha> heads, Supplier<RateLimitScheduler.Priority> priority, boolean pooled) throws GithubUserDoesNotHaveAccessToRepo, GithubConnectionException, GithubRequestTimeoutException {
+        if (pages.isEmpty() && lookups.isEmpty()) {
+            return;
+        }
+
+        List<String> lookupAliases = new ArrayList<>(lookups);
+        GraphqlResponse response;
+        try {
+            HttpRequest request = GithubUtils.createRequest(endpoint(), token)
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(writeQuery(pages, lookupAliases)))
+                    .build();
+            HttpResponse<InputStream> httpResponse = GithubUtils.send(context, "graphql", request, priority, pooled);
+            try (InputStream body = httpResponse.body()) {
+                int responseCode = httpResponse.statusCode();
+                if (responseCode == HttpURLConnection.HTTP_NOT_FOUND || responseCode == HttpURLConnection.HTTP_UNAUTHORIZED || responseCode == HttpURLConnection.HTTP_FORBIDDEN) {
+                    throw new GithubUserDoesNotHaveAccessToRepo(owner, repo);
+                }
+                if (responseCode != HttpURLConnection.HTTP_OK) {
+                    throw new GithubConnectionException("GraphQL request failed with status " + responseCode, null);
+                }
+                response = readResponse(body);
+            }
+        } catch (RateLimitExceededException e) {
+            throw new GithubRateLimitExceededException("Rate limit exhausted while fetching commits of " + owner + "/" + repo, e);
+        } catch (HttpTimeoutException e) {
+            throw new GithubRequestTimeoutException("Request timed out while fetching commits of " + owner + "/" + repo, e);
+        } catch (IOException e) {
+            throw new GithubConnectionException("Connection failed while fetching commits of " + owner + "/" + repo, e);
+        }
+
+        if (!response.repositoryFound) {
+            if (response.cursorRejected && offsetCursors) {
+                retryWithReturnedCursors(pages, lookups, heads, priority);
+                return;
+            }
+            if (response.errorTypes.contains("RATE_LIMITED")) {
+                throw new GithubRateLimitExceededException("Rate limit exhausted while fetching commits of " + owner + "/" + repo,
+                        new IOException(response.errorMessage));
+            }
+            if (response.errorTypes.isEmpty() || response.errorTypes.contains("NOT_FOUND") || response.errorTypes.contains("FORBIDDEN")) {
+                if (pooled && context.getScheduler().hasTokenPool()) {
+                    // GraphQL answers a token that cannot see the repository with 200; a pool token may be one.
+                    context.getMetrics().count(MetricsRegistry.POOL_REFUSALS, 1, "endpoint", "graphql");
+                    query(pages, lookups, heads, priority, false);
+                    return;
+                }
+                throw new GithubUserDoesNotHaveAccessToRepo(owner, repo);
+            }
+            throw new GithubConnectionException("GraphQL request failed: " + response.errorMessage, null);
+        }
+
+        for (int i = 0; i < lookupAliases.size(); i++) {
+            Alias alias = response.aliases.get("h" + i);
+            if (alias != null && alias.oid != null) {
+                heads.put(lookupAliases.get(i), alias.oid);
+            }
+        }
+        List<Request> rejected = new ArrayList<>();
+        for (int i = 0; i < pages.size(); i++) {
+            Request request = pages.get(i);
+            Alias alias = response.aliases.get("p" + i);
+            if (alias == null && request.cursor != null && response.cursorRejected && offsetCursors) {
+                rejected.add(request);
+                continue;
+            }
+            if (alias == null) {
+                // A ref that does not exist is what REST answers with 404 for.
+                request.failure = request.head == null
+                        ? new GithubUserDoesNotHaveAccessToRepo(owner, repo)
+                        : new GithubConnectionException("Commit " + request.head.toHex() + " of branch " + request.branch + " not found", null);
+                continue;
+            }
+            request.result = toPage(request, alias);
+        }
+        if (!rejected.isEmpty()) {
+            retryWithReturnedCursors(rejected, Collections.emptySet(), heads, priority);
+        }
+    }
+
+    /**
+     * Stops building cursors once GitHub rejected one, and sends the pages again with
+     * the cursors it returned. Pages without one are left for {@link #fetchChained}.
+     */
+    private void retryWithReturnedCursors(List<Request> pages, Set<String> lookups, Map<String, Sha> heads, Supplier<RateLimitScheduler.Priority> priority) throws GithubUserDoesNotHaveAccessToRepo, GithubConnectionException, GithubRequestTimeoutException {
+        offsetCursors = false;
+        query(withCursors(pages), lookups, heads, priority);
+    }
+
+    private CommitPage toPage(Request request, Alias alias) {
+        List<Commit> commits = alias.commits;
+        Sha head = request.head != null ? request.head : commits.isEmpty() ? null : commits.get(0).getSha();
+        if (head != null && !alias.hasNextPage) {
+            lengths.put(head, PageSchedule.offset(request.page) + commits.size());
+        }
+        if (head != null && alias.endCursor != null && !commits.isEmpty()) {
+            cursors.put(cursorKey(head, request.page), alias.endCursor);
+            if (!alias.endCursor.equals(offsetCursor(head, PageSchedule.offset(request.page) + commits.size()))) {
+                offsetCursors = false;
+            }
+        }
+        if (request.cached != null && request.cached.getCommits().equals(commits)) {
+            context.getMetrics().count(MetricsRegistry.PAGES, 1, "branch", request.branch, "result", "not_modified");
+            return request.cached;
+        }
+        context.getMetrics().count(MetricsRegistry.PAGES, 1, "branch", request.branch, "result", "fetched");
+        return new CommitPage(request.page, commits, null, null);
+    }
+
+    private boolean isPastEnd(Sha head, int page) {
+        Integer length = lengths.get(head);
+        return length != null && PageSchedule.offset(page) >= length;
+    }
+
+    private static String cursorKey(Sha head, int page) {
+        return head.toHex() + "#" + page;
+    }
+
+    private static String pageKey(String branch, int page) {
+        return branch + "#" + page;
+    }
+
+    /**
+     * @return the cursor GitHub would return after the first {@code seen} commits of the head's history
+     */
+    private static String offsetCursor(Sha head, int seen) {
+        return head.toHex() + " " + (seen - 1);
+    }
+
+    private static Request findFirstPage(List<Request> requests, String branch) {
+        for (Request request : requests) {
+            if (request.page == 1 && request.branch.equals(branch)) {
+                return request;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * GitHub Enterprise serves GraphQL at {@code /api/graphql} next to the REST {@code /api/v3}.
+     */
+    private String endpoint() {
+        String apiUrl = context.getApiUrl();
+        return apiUrl.endsWith("/api/v3")
+                ? apiUrl.substring(0, apiUrl.length() - "/v3".length()) + "/graphql"
+                : apiUrl + "/graphql";
+    }
+
+    /**
+     * Writes the query, with page {@code i} as alias {@code p<i>} and the head of
+     * lookup {@code i} as alias {@code h<i>}; names and oids are passed as variables.
+     */
+    private byte[] writeQuery(List<Request> pages, List<String> lookups) throws IOException {
+        StringBuilder declarations = new StringBuilder("$owner: String!, $name: String!");
+        StringBuilder selections = new StringBuilder();
+        for (int i = 0; i < pages.size(); i++) {
+            Request request = pages.get(i);
+            String history = "history(first: " + PageSchedule.perPage(request.page)
+                    + (request.cursor != null ? ", after: $c" + i : "") + ") { ...page }";
+            if (request.head == null) {
+                declarations.append(", $r").append(i).append(": String!");
+                selections.append(" p").append(i).append(": ref(qualifiedName: $r").append(i)
+                        .append(") { target { ... on Commit { ").append(history).append(" } } }");
+            } else {
+                declarations.append(", $o").append(i).append(": GitObjectID!");
+                if (request.cursor != null) {
+                    declarations.append(", $c").append(i).append(": String!");
+                }
+                selections.append(" p").append(i).append(": object(oid: $o").append(i)
+                        .append(") { ... on Commit { ").append(history).append(" } }");
+            }
+        }
+        for (int i = 0; i < lookups.size(); i++) {
+            declarations.append(", $l").append(i).append(": String!");
+            selections.append(" h").append(i).append(": ref(qualifiedName: $l").append(i).append(") { target { oid } }");
+        }
+        String query = "query(" + declarations + ") { repository(owner: $owner, name: $name) {" + selections + " } } "
+                + (pages.isEmpty() ? "" : PAGE_FRAGMENT);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = jsonFactory.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeStringField("query", query);
+            generator.writeObjectFieldStart("variables");
+            generator.writeStringField("owner", owner);
+            generator.writeStringField("name", repo);
+            for (int i = 0; i < pages.size(); i++) {
+                Request request = pages.get(i);
+                if (request.head == null) {
+                    generator.writeStringField("r" + i, BRANCH_PREFIX + request.branch);
+                } else {
+                    generator.writeStringField("o" + i, request.head.toHex());
+                    if (request.cursor != null) {
+                        generator.writeStringField("c" + i, request.cursor);
+                    }
+                }
+            }
+            for (int i = 0; i < lookups.size(); i++) {
+                generator.writeStringField("l" + i, BRANCH_PREFIX + lookups.get(i));
+            }
+            generator.writeEndObject();
+            generator.writeEndObject();
+        }
+        return out.toByteArray();
+    }
+
+    private GraphqlResponse readResponse(InputStream body) throws IOException {
+        GraphqlResponse response = new GraphqlResponse();
+        try (JsonParser parser = jsonFactory.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a GraphQL response object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("data".equals(field) && value == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String dataField = parser.currentName();
+                        if (parser.nextToken() == JsonToken.START_OBJECT && "repository".equals(dataField)) {
+                            response.repositoryFound = true;
+                            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                                String alias = parser.currentName();
+                                response.aliases.put(alias, parser.nextToken() == JsonToken.START_OBJECT ? readAlias(parser) : null);
+                                parser.skipChildren();
+                            }
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else if ("errors".equals(field) && value == JsonToken.START_ARRAY) {
+                    readErrors(parser, response);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return response;
+    }
+
+    /**
+     * Reads a ref, its target or a commit, whichever the alias selected, collecting
+     * the oid and the history found in it.
+     */
+    private static Alias readAlias(JsonParser parser) throws IOException {
+        Alias alias = new Alias();
+        readInto(parser, alias);
+        return alias;
+    }
+
+    private static void readInto(JsonParser parser, Alias alias) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("target".equals(field) && value == JsonToken.START_OBJECT) {
+                readInto(parser, alias);
+            } else if ("oid".equals(field) && value == JsonToken.VALUE_STRING) {
+                alias.oid = CommitListParser.readSha(parser);
+            } else if ("history".equals(field) && value == JsonToken.START_OBJECT) {
+                readHistory(parser, alias);
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static void readHistory(JsonParser parser, Alias alias) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("pageInfo".equals(field) && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String pageInfoField = parser.currentName();
+                    JsonToken pageInfoValue = parser.nextToken();
+                    if ("hasNextPage".equals(pageInfoField) && pageInfoValue.isBoolean()) {
+                        alias.hasNextPage = parser.getBooleanValue();
+                    } else if ("endCursor".equals(pageInfoField) && pageInfoValue == JsonToken.VALUE_STRING) {
+                        alias.endCursor = parser.getText();
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else if ("nodes".equals(field) && value == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    alias.commits.add(readCommit(parser));
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static Commit readCommit(JsonParser parser) throws IOException {
+        Sha sha = null;
+        List<Sha> parents = new ArrayList<>(2);
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if ("oid".equals(field) && value == JsonToken.VALUE_STRING) {
+                sha = CommitListParser.readSha(parser);
+            } else if ("parents".equals(field) && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String parentsField = parser.currentName();
+                    if (parser.nextToken() == JsonToken.START_ARRAY && "nodes".equals(parentsField)) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            Alias parent = readAlias(parser);
+                            if (parent.oid == null) {
+                                throw new JsonParseException(parser, "Parent without an oid");
+                            }
+                            parents.add(parent.oid);
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (sha == null) {
+            throw new JsonParseException(parser, "Commit without an oid");
+        }
+        return new Commit(sha, parents.toArray(new Sha[0]));
+    }
+
+    private static void readErrors(JsonParser parser, GraphqlResponse response) throws IOException {
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("type".equals(field) && value == JsonToken.VALUE_STRING) {
+                    response.errorTypes.add(parser.getText());
+                } else if ("message".equals(field) && value == JsonToken.VALUE_STRING) {
+                    String message = parser.getText();
+                    // GitHub does not type the error of a cursor it cannot read.
+                    response.cursorRejected |= message.toLowerCase(Locale.ROOT).contains("cursor");
+                    if (response.errorMessage == null) {
+                        response.errorMessage = message;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private static class Request {
+        private final String branch;
+        private final int page;
+        private final CommitPage cached;
+        private final Supplier<RateLimitScheduler.Priority> priority;
+        private Sha head;
+        // Written by the thread that sends the request, read after it is done under the lock.
+        private String cursor;
+        private CommitPage result;
+        private Throwable failure;
+        private boolean done;
+
+        private Request(String branch, int page, CommitPage cached, Sha head, Supplier<RateLimitScheduler.Priority> priority) {
+            this.branch = branch;
+            this.page = page;
+            this.cached = cached;
+            this.head = head;
+            this.priority = priority;
+        }
+    }
+
+    private static class Alias {
+        private Sha oid;
+        private boolean hasNextPage;
+        private String endCursor;
+        private final List<Commit> commits = new ArrayList<>();
+    }
+
+    private static class GraphqlResponse {
+        private boolean repositoryFound;
+        private final Map<String, Alias> aliases = new HashMap<>();
+        private final Set<String> errorTypes = new HashSet<>();
+        private String errorMessage;
+        private boolean cursorRejected;
+    }
+}
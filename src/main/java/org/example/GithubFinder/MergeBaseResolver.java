@@ -0,0 +1,548 @@
+package org.example.GithubFinder;
+
+import org.example.BranchPair;
+import org.example.exceptions.GithubConnectionException;
+import org.example.exceptions.GithubRequestTimeoutException;
+import org.example.exceptions.GithubUserDoesNotHaveAccessToRepo;
+import org.example.graph.Commit;
+import org.example.graph.CommitGraph;
+import org.example.graph.CommitRecord;
+import org.example.graph.GenerationWalk;
+import org.example.graph.MergeBaseWalk;
+import org.example.graph.Sha;
+import org.example.metrics.MetricsRegistry;
+import org.example.utils.CachedHistory;
+import org.example.utils.CommitPage;
+import org.example.utils.CommitSnapshot;
+import org.example.utils.CommitStore;
+import org.example.utils.RateLimitScheduler;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Resolves the merge bases of any number of branch pairs in one pass. A pair is
+ * answered from fresh cached histories if possible, then by the first strategy
+ * that can answer it, and otherwise by walking the histories. Every distinct
+ * branch is paged at most once, into one commit graph that all walked pairs share,
+ * and a pair is reported as soon as its own walk settles.
+ * <p>
+ * With a {@link CommitSnapshot}, fetched commits are also kept on disk. A pair whose
+ * heads were fetched recently and whose histories are complete in the snapshot is
+ * answered from it with a generation-number walk, and walks that reach commits the
+ * snapshot already knows continue through them without fetching those pages again.
+ * <p>
+ * A {@link CommitStore} is used the same way, with heads and commits shared in
+ * Redis by every branch and every JVM, so a walk stops paging as soon as it reaches
+ * commits learned through any branch. With a store, the cached history of a branch
+ * is cut down to its first page: the head and the validators to check it with.
+ * <p>
+ * With a fetcher that sends concurrent page fetches together, such as the GraphQL
+ * transport, every round of the walk puts the next page of each branch it needs in
+ * flight before waiting for any of them, whatever the prefetch window, and tells
+ * the fetcher which pages to wait for.
+ */
+class MergeBaseResolver {
+
+    static final String SNAPSHOT = "snapshot";
+    static final String STORE = "store";
+    static final String CACHE = "cache";
+    static final String HISTORY = "history";
+
+    /**
+     * How many commits one read from the store returns at most.
+     */
+    private static final int STORE_BATCH = 2000;
+
+    interface Listener {
+        void resolved(BranchPair pair, Collection<Sha> mergeBases, String answeredBy);
+    }
+
+    interface Walk {
+        void run() throws GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException;
+    }
+
+    /**
+     * Runs the walk of the pairs nothing else could answer, for instance while
+     * holding a lock on them.
+     */
+    interface WalkGuard {
+        void guard(Walk walk) throws GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException;
+    }
+
+    private final List<MergeBaseStrategy> strategies;
+    private final Function<String, CachedHistory> loadHistory;
+    private final BiConsumer<String, CachedHistory> saveHistory;
+    private final BranchPager.PageFetcher fetcher;
+    private final Executor executor;
+    private final int window;
+    private final int gallopLimit;
+    private final CommitSnapshot snapshot;
+    private final CommitStore store;
+    private final long freshMillis;
+    private final MetricsRegistry metrics;
+    private final BiConsumer<String, Integer> announceFetch;
+    private final Supplier<RateLimitScheduler.Priority> priority;
+
+    /**
+     * @param announceFetch for a fetcher that sends concurrent page fetches together,
+     *                      told of each branch and page about to be fetched along with
+     *                      others; null for any other fetcher
+     * @param priority      the priority the strategies send their requests with
+     */
+    MergeBaseResolver(List<MergeBaseStrategy> strategies, Function<String, CachedHistory> loadHistory, BiConsumer<String, CachedHistory> saveHistory, BranchPager.PageFetcher fetcher, Executor executor, int window, int gallopLimit, CommitSnapshot snapshot, CommitStore store, long freshMillis, MetricsRegistry metrics, BiConsumer<String, Integer> announceFetch, Supplier<RateLimitScheduler.Priority> priority) {
+        this.strategies = strategies;
+        this.loadHistory = loadHistory;
+        this.saveHistory = saveHistory;
+        this.fetcher = fetcher;
+        this.executor = executor;
+        this.window = window;
+        this.gallopLimit = gallopLimit;
+        this.snapshot = snapshot;
+        this.store = store;
+        this.freshMillis = freshMillis;
+        this.metrics = metrics;
+        this.announceFetch = announceFetch;
+        this.priority = priority;
+    }
+
+    void resolve(Collection<BranchPair> pairs, Listener listener) throws GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        resolve(pairs, listener, null);
+    }
+
+    /**
+     * @param guard runs the walk, if one is needed; the pairs are looked up in the
+     *              cache again inside it, since whoever the guard made this walk wait
+     *              for may have walked them meanwhile. Null to walk right away.
+     */
+    void resolve(Collection<BranchPair> pairs, Listener listener, WalkGuard guard) throws GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        Map<String, CachedHistory> cached = new HashMap<>();
+        List<BranchPair> unresolved = new ArrayList<>();
+        for (BranchPair pair : pairs) {
+            if (!resolveWithoutWalking(pair, cached, listener, true)) {
+                unresolved.add(pair);
+            }
+        }
+        if (unresolved.isEmpty()) {
+            return;
+        }
+
+        if (guard == null) {
+            walk(unresolved, cached, listener);
+            return;
+        }
+        guard.guard(() -> {
+            Map<String, CachedHistory> reloaded = new HashMap<>();
+            List<BranchPair> remaining = new ArrayList<>();
+            for (BranchPair pair : unresolved) {
+                if (!resolveWithoutWalking(pair, reloaded, listener, false)) {
+                    remaining.add(pair);
+                }
+            }
+            if (!remaining.isEmpty()) {
+                walk(remaining, reloaded, listener);
+            }
+        });
+    }
+
+    /**
+     * @param withStrategies whether to try the strategies too, besides the snapshot, the store and the cache
+     * @return whether the pair was reported
+     */
+    private boolean resolveWithoutWalking(BranchPair pair, Map<String, CachedHistory> cached, Listener listener, boolean withStrategies) throws GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        Collection<Sha> fromSnapshot = resolveFromSnapshot(pair);
+        if (fromSnapshot != null) {
+            listener.resolved(pair, fromSnapshot, SNAPSHOT);
+            return true;
+        }
+        Collection<Sha> fromStore = resolveFromStore(pair);
+        if (fromStore != null) {
+            listener.resolved(pair, fromStore, STORE);
+            return true;
+        }
+        CachedHistory cachedA = cached.computeIfAbsent(pair.getBranchA(), loadHistory);
+        CachedHistory cachedB = cached.computeIfAbsent(pair.getBranchB(), loadHistory);
+        Collection<Sha> res = resolveFromFreshCache(cachedA, cachedB);
+        if (res != null) {
+            listener.resolved(pair, res, CACHE);
+            return true;
+        }
+        return withStrategies && resolveWithStrategies(pair, listener);
+    }
+
+    /**
+     * Resolves the pairs with the history walk alone, even while their cached
+     * histories are fresh. The first page of each branch is revalidated with GitHub
+     * and the histories are saved again, fresh from now on.
+     */
+    void refresh(Collection<BranchPair> pairs, Listener listener) throws GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        Map<String, CachedHistory> cached = new HashMap<>();
+        for (BranchPair pair : pairs) {
+            cached.computeIfAbsent(pair.getBranchA(), loadHistory);
+            cached.computeIfAbsent(pair.getBranchB(), loadHistory);
+        }
+        walk(pairs, cached, listener);
+    }
+
+    private void walk(Collection<BranchPair> unresolved, Map<String, CachedHistory> cached, Listener listener) throws GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        // Parent links never change and painting only follows them down from the
+        // current heads, so cached commits can be fed up front: once the new pages
+        // reach known territory the walks settle without fetching it again.
+        CommitGraph graph = new CommitGraph();
+        Map<String, Branch> branches = new LinkedHashMap<>();
+        for (BranchPair pair : unresolved) {
+            for (String name : Arrays.asList(pair.getBranchA(), pair.getBranchB())) {
+                if (!branches.containsKey(name)) {
+                    graph.addAll(cached.get(name).getCommits());
+                    branches.put(name, new Branch(name, new BranchPager(name, cached.get(name), fetcher, executor, window, gallopLimit)));
+                }
+            }
+        }
+        List<PairWalk> walks = new ArrayList<>();
+        for (BranchPair pair : unresolved) {
+            PairWalk walk = new PairWalk(pair, new MergeBaseWalk(graph), branches.get(pair.getBranchA()), branches.get(pair.getBranchB()));
+            walk.a.sides.add(new Side(walk, MergeBaseWalk.SIDE_A));
+            walk.b.sides.add(new Side(walk, MergeBaseWalk.SIDE_B));
+            walks.add(walk);
+        }
+
+        try {
+            // Start every branch before blocking on any of them.
+            if (announceFetch != null) {
+                requestTogether(branches.values());
+            } else {
+                for (Branch branch : branches.values()) {
+                    branch.pager.prefetch();
+                }
+            }
+            for (Branch branch : branches.values()) {
+                feedPage(graph, walks, branch, branch.pager.next());
+            }
+            hydrate(graph, walkList(walks));
+
+            while (!walks.isEmpty()) {
+                Set<Branch> needed = new LinkedHashSet<>();
+                Set<Branch> galloping = new HashSet<>();
+                for (Iterator<PairWalk> it = walks.iterator(); it.hasNext(); ) {
+                    PairWalk walk = it.next();
+                    if (!walk.a.exists() || !walk.b.exists()) {
+                        listener.resolved(walk.pair, Collections.emptyList(), HISTORY);
+                        it.remove();
+                        continue;
+                    }
+                    // Only a side that still has unexplored single-sided commits is paged further.
+                    boolean needA = walk.a.more && walk.walk.needsMore(MergeBaseWalk.SIDE_A);
+                    boolean needB = walk.b.more && walk.walk.needsMore(MergeBaseWalk.SIDE_B);
+                    if (!needA && !needB) {
+                        listener.resolved(walk.pair, walk.walk.getMergeBases(), HISTORY);
+                        it.remove();
+                        continue;
+                    }
+                    if (needA) {
+                        needed.add(walk.a);
+                    }
+                    if (needB) {
+                        needed.add(walk.b);
+                    }
+                    // A side that still has to go deeper while the other is done, or
+                    // two sides that have not met yet, are far from the merge base.
+                    boolean apart = !walk.walk.hasCommonAncestor();
+                    if (needA && (apart || !needB)) {
+                        galloping.add(walk.a);
+                    }
+                    if (needB && (apart || !needA)) {
+                        galloping.add(walk.b);
+                    }
+                }
+                for (Branch branch : needed) {
+                    if (galloping.contains(branch)) {
+                        branch.pager.gallop();
+                    } else {
+                        branch.pager.settle();
+                    }
+                }
+                if (announceFetch != null && needed.size() > 1) {
+                    requestTogether(needed);
+                }
+                for (Branch branch : needed) {
+                    feedPage(graph, walks, branch, branch.pager.next());
+                }
+                hydrate(graph, walkList(walks));
+            }
+
+            long fetchedAt = System.currentTimeMillis();
+            try {
+                for (Map.Entry<String, Branch> branch : branches.entrySet()) {
+                    CachedHistory history = branch.getValue().pager.history(fetchedAt);
+                    if (store != null && history.getPages().size() > 1) {
+                        // The store has the rest.
+                        history = new CachedHistory(history.getPages().subList(0, 1), fetchedAt);
+                    }
+                    saveHistory.accept(branch.getKey(), history);
+                }
+            } catch (Exception e) {
+                metrics.count(MetricsRegistry.CACHE_ERRORS, 1, "operation", "put");
+            }
+        } finally {
+            for (Branch branch : branches.values()) {
+                branch.pager.close();
+            }
+        }
+    }
+
+    /**
+     * Puts the next page of each branch in flight, announcing them to the fetcher
+     * first so it waits for all of them before it sends any.
+     */
+    private void requestTogether(Collection<Branch> branches) {
+        for (Branch branch : branches) {
+            int page = branch.pager.pageToRequest();
+            if (page > 0) {
+                announceFetch.accept(branch.name, page);
+            }
+        }
+        for (Branch branch : branches) {
+            branch.pager.request();
+        }
+    }
+
+    private boolean resolveWithStrategies(BranchPair pair, Listener listener) throws GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        for (MergeBaseStrategy strategy : strategies) {
+            Collection<Sha> res = strategy.findMergeBases(pair.getBranchA(), pair.getBranchB(), priority);
+            if (res != null) {
+                listener.resolved(pair, res, strategy.getName());
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the merge bases if both heads are fresh and the snapshot holds enough
+     * of their histories to settle the walk, null otherwise
+     */
+    private Collection<Sha> resolveFromSnapshot(BranchPair pair) {
+        if (snapshot == null) {
+            return null;
+        }
+        Sha headA = snapshot.getHead(pair.getBranchA(), freshMillis);
+        Sha headB = snapshot.getHead(pair.getBranchB(), freshMillis);
+        if (headA == null || headB == null) {
+            return null;
+        }
+        if (snapshot.getGeneration(headA) > 0 && snapshot.getGeneration(headB) > 0) {
+            try {
+                return new GenerationWalk(snapshot).mergeBases(headA, headB);
+            } catch (IOException e) {
+                metrics.count(MetricsRegistry.CACHE_ERRORS, 1, "operation", "snapshot_read");
+                return null;
+            }
+        }
+        // Without generation numbers the walk has to paint down to where the sides meet.
+        CommitGraph graph = new CommitGraph();
+        MergeBaseWalk walk = new MergeBaseWalk(graph);
+        walk.setHead(MergeBaseWalk.SIDE_A, headA);
+        walk.setHead(MergeBaseWalk.SIDE_B, headB);
+        hydrate(graph, List.of(walk));
+        return walk.isSettled() ? walk.getMergeBases() : null;
+    }
+
+    /**
+     * @return the merge bases if both heads are fresh in the store and it holds
+     * enough of their histories to settle the walk, null otherwise
+     */
+    private Collection<Sha> resolveFromStore(BranchPair pair) {
+        if (store == null) {
+            return null;
+        }
+        try {
+            Sha headA = store.getHead(pair.getBranchA(), freshMillis);
+            Sha headB = headA == null ? null : store.getHead(pair.getBranchB(), freshMillis);
+            if (headB == null) {
+                return null;
+            }
+            CommitGraph graph = new CommitGraph();
+            MergeBaseWalk walk = new MergeBaseWalk(graph);
+            walk.setHead(MergeBaseWalk.SIDE_A, headA);
+            walk.setHead(MergeBaseWalk.SIDE_B, headB);
+            hydrate(graph, List.of(walk));
+            return walk.isSettled() ? walk.getMergeBases() : null;
+        } catch (RuntimeException e) {
+            metrics.count(MetricsRegistry.CACHE_ERRORS, 1, "operation", "store_read");
+            return null;
+        }
+    }
+
+    /**
+     * @return the merge bases if the fresh cached histories settle them, null otherwise
+     */
+    private Collection<Sha> resolveFromFreshCache(CachedHistory cachedA, CachedHistory cachedB) {
+        if (cachedA.isEmpty() || cachedB.isEmpty() || !cachedA.isFresh(freshMillis) || !cachedB.isFresh(freshMillis)) {
+            return null;
+        }
+        MergeBaseWalk cachedWalk = new MergeBaseWalk(new CommitGraph());
+        cachedWalk.setHead(MergeBaseWalk.SIDE_A, cachedA.getHead());
+        cachedWalk.setHead(MergeBaseWalk.SIDE_B, cachedB.getHead());
+        cachedWalk.addCommits(cachedA.getCommits());
+        cachedWalk.addCommits(cachedB.getCommits());
+
+        Collection<Sha> res = cachedWalk.getMergeBases();
+        return cachedWalk.isSettled() && !res.isEmpty() ? res : null;
+    }
+
+    private void feedPage(CommitGraph graph, List<PairWalk> walks, Branch branch, CommitPage page) {
+        if (page.isEmpty()) {
+            branch.more = false;
+            return;
+        }
+        int[] expanded = graph.addAll(page.getCommits());
+        if (page.getPage() == 1) {
+            branch.head = page.getCommits().get(0).getSha();
+        }
+        if (snapshot != null) {
+            try {
+                snapshot.append(page.getCommits());
+                if (page.getPage() == 1) {
+                    snapshot.setHead(branch.name, branch.head, System.currentTimeMillis());
+                }
+            } catch (IOException e) {
+                metrics.count(MetricsRegistry.CACHE_ERRORS, 1, "operation", "snapshot_write");
+            }
+        }
+        if (store != null) {
+            try {
+                store.putAll(page.getCommits());
+                if (page.getPage() == 1) {
+                    store.setHead(branch.name, branch.head, System.currentTimeMillis());
+                }
+            } catch (RuntimeException e) {
+                metrics.count(MetricsRegistry.CACHE_ERRORS, 1, "operation", "store_write");
+            }
+        }
+        if (page.getPage() == 1) {
+            for (Side side : branch.sides) {
+                side.walk.walk.setHead(side.side, branch.head);
+            }
+        }
+        for (PairWalk walk : walks) {
+            walk.walk.expanded(expanded);
+        }
+    }
+
+    /**
+     * Expands the commits the walks are waiting for from the snapshot and the
+     * store, for as long as they know their parents. Parent links never change, so
+     * this is as safe as feeding cached commits.
+     */
+    private void hydrate(CommitGraph graph, List<MergeBaseWalk> walks) {
+        if (snapshot == null && store == null) {
+            return;
+        }
+        boolean useStore = store != null;
+        while (true) {
+            Set<Integer> pending = new LinkedHashSet<>();
+            for (MergeBaseWalk walk : walks) {
+                for (int id : walk.getPending()) {
+                    pending.add(id);
+                }
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+            int[] expanded = new int[pending.size()];
+            int count = 0;
+            if (snapshot != null) {
+                for (int id : pending) {
+                    CommitRecord record = snapshot.readCommit(graph.shaOf(id));
+                    if (record != null && graph.add(record.getCommit()) >= 0) {
+                        expanded[count++] = id;
+                    }
+                }
+            }
+            if (count == 0 && useStore) {
+                // The snapshot is local and cheap, so the store is only asked once it is stuck.
+                List<Sha> shas = new ArrayList<>(pending.size());
+                for (int id : pending) {
+                    shas.add(graph.shaOf(id));
+                }
+                List<Commit> loaded;
+                try {
+                    loaded = store.load(shas, STORE_BATCH);
+                } catch (RuntimeException e) {
+                    metrics.count(MetricsRegistry.CACHE_ERRORS, 1, "operation", "store_read");
+                    loaded = Collections.emptyList();
+                    useStore = false;
+                }
+                expanded = graph.addAll(loaded);
+                count = expanded.length;
+                if (snapshot != null && count > 0) {
+                    try {
+                        snapshot.append(loaded);
+                    } catch (IOException e) {
+                        metrics.count(MetricsRegistry.CACHE_ERRORS, 1, "operation", "snapshot_write");
+                    }
+                }
+            }
+            if (count == 0) {
+                return;
+            }
+            int[] ids = Arrays.copyOf(expanded, count);
+            for (MergeBaseWalk walk : walks) {
+                walk.expanded(ids);
+            }
+        }
+    }
+
+    private static List<MergeBaseWalk> walkList(List<PairWalk> walks) {
+        List<MergeBaseWalk> result = new ArrayList<>(walks.size());
+        for (PairWalk walk : walks) {
+            result.add(walk.walk);
+        }
+        return result;
+    }
+
+    private static class Branch {
+        private final String name;
+        private final BranchPager pager;
+        private final List<Side> sides = new ArrayList<>();
+        private Sha head;
+        private boolean more = true;
+
+        private Branch(String name, BranchPager pager) {
+            this.name = name;
+            this.pager = pager;
+        }
+
+        private boolean exists() {
+            return head != null;
+        }
+    }
+
+    private static class Side {
+        private final PairWalk walk;
+        private final int side;
+
+        private Side(PairWalk walk, int side) {
+            this.walk = walk;
+            this.side = side;
+        }
+    }
+
+    private static class PairWalk {
+        private final BranchPair pair;
+        private final MergeBaseWalk walk;
+        private final Branch a;
+        private final Branch b;
+
+        private PairWalk(BranchPair pair, MergeBaseWalk walk, Branch a, Branch b) {
+            this.pair = pair;
+            this.walk = walk;
+            this.a = a;
+            this.b = b;
+        }
+    }
+}
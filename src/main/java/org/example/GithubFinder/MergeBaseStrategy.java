@@ -0,0 +1,37 @@
+package org.example.GithubFinder;
+
+import org.example.exceptions.GithubConnectionException;
+import org.example.exceptions.GithubRequestTimeoutException;
+import org.example.exceptions.GithubUserDoesNotHaveAccessToRepo;
+import org.example.graph.Sha;
+import org.example.utils.RateLimitScheduler;
+
+import java.util.Collection;
+import java.util.function.Supplier;
+
+/**
+ * A shortcut the finder tries before walking the histories of a pair of branches.
+ * A strategy only answers when it is sure of the complete set of merge bases;
+ * otherwise the finder moves on to the next strategy and, finally, to the walk.
+ */
+public interface MergeBaseStrategy {
+
+    /**
+     * @return the name under which the finder records the answers of this strategy
+     */
+    String getName();
+
+    /**
+     * @return the merge bases of the two branches, or null if this strategy cannot answer for them
+     */
+    Collection<Sha> findMergeBases(String branchA, String branchB) throws GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException;
+
+    /**
+     * Like {@link #findMergeBases(String, String)}, for a finder whose requests are
+     * sent with the given, possibly changing, priority. Strategies that make requests
+     * should send them with it.
+     */
+    default Collection<Sha> findMergeBases(String branchA, String branchB, Supplier<RateLimitScheduler.Priority> priority) throws GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        return findMergeBases(branchA, branchB);
+    }
+}
@@ -0,0 +1,58 @@
+package org.example.GithubFinder;
+
+/**
+ * Maps the pager's page numbers onto requests of growing size: 25, 25, 50 and then
+ * 100 commits, the most the API serves per page. A shallow divergence is settled
+ * by one small page, and a deep one reaches full pages after three requests. The
+ * sizes are chosen so that every page starts at a multiple of its own size, which
+ * is what {@code page}/{@code per_page} can address, and the schedule never
+ * depends on the query, so cached pages and their validators stay comparable.
+ * The GraphQL transport pages by {@link #offset} with the same sizes, so its pages
+ * line up with the REST ones in the cache.
+ */
+final class PageSchedule {
+
+    static final int MAX_PER_PAGE = 100;
+
+    private PageSchedule() {
+    }
+
+    /**
+     * @return the {@code per_page} to request for the given page of the schedule
+     */
+    static int perPage(int page) {
+        switch (page) {
+            case 1:
+            case 2:
+                return MAX_PER_PAGE / 4;
+            case 3:
+                return MAX_PER_PAGE / 2;
+            default:
+                return MAX_PER_PAGE;
+        }
+    }
+
+    /**
+     * @return the API {@code page} that holds the given page of the schedule at its {@link #perPage} size
+     */
+    static int apiPage(int page) {
+        switch (page) {
+            case 1:
+            case 2:
+                return page;
+            case 3:
+                // Commits 50-99 are the second page of 50.
+                return 2;
+            default:
+                // Commits 100 onwards are the second and later pages of 100.
+                return page - 2;
+        }
+    }
+
+    /**
+     * @return how many commits of the branch come before the given page of the schedule
+     */
+    static int offset(int page) {
+        return (apiPage(page) - 1) * perPage(page);
+    }
+}
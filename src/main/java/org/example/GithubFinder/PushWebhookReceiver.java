@@ -0,0 +1,293 @@
+package org.example.GithubFinder;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.example.graph.Sha;
+import org.example.metrics.MetricsRegistry;
+import org.example.utils.CacheUtil;
+import org.example.utils.CommitSnapshot;
+import org.example.utils.CommitStore;
+import org.example.utils.GithubContext;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+
+/**
+ * Receives GitHub {@code push} webhooks and keeps what is cached about the pushed
+ * branches current, so the cache no longer has to expire to notice that a branch
+ * moved, and can be trusted for much longer with
+ * {@link GithubContext#setCacheFreshness}.
+ * <p>
+ * For a push to a branch, the head recorded in the snapshot and the commit store
+ * moves to the pushed commit, so a branch created at, or fast-forwarded to, a
+ * commit they already know is answered without a request. A push that does not
+ * start from the recorded head, e.g. one delivered out of order, clears the head
+ * instead. The cached history is
+ * marked stale, and the next query revalidates it and only fetches the new pages:
+ * push payloads list the pushed commits without their parents, which is not
+ * enough to extend a history in place. A deleted branch loses its cached history
+ * and its heads.
+ * <p>
+ * With a secret, a delivery must be signed with it in {@code X-Hub-Signature-256}
+ * or it is rejected. Other events and pushes to tags are acknowledged and ignored.
+ * <p>
+ * The receiver runs its own HTTP server with {@link #start}, or is embedded in
+ * another one by passing deliveries to {@link #handle}.
+ */
+public class PushWebhookReceiver implements AutoCloseable {
+
+    public static final String EVENT_HEADER = "X-GitHub-Event";
+    public static final String SIGNATURE_HEADER = "X-Hub-Signature-256";
+
+    private static final String BRANCH_PREFIX = "refs/heads/";
+    private static final String NULL_SHA = "0000000000000000000000000000000000000000";
+    private static final int MAX_PAYLOAD_BYTES = 25 * 1024 * 1024;
+
+    private final GithubContext context;
+    private final byte[] secret;
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private volatile CacheUtil cacheUtil;
+    private HttpServer server;
+
+    /**
+     * @param secret the webhook secret, or null to accept unsigned deliveries
+     */
+    public PushWebhookReceiver(GithubContext context, String secret) {
+        this.context = context;
+        this.secret = secret == null || secret.isEmpty() ? null : secret.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Starts an HTTP server taking deliveries on any path of the given port.
+     *
+     * @param port the port, or 0 for any free one
+     * @return the port the server listens on
+     */
+    public synchronized int start(int port) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("The receiver is already started");
+        }
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/", this::serve);
+        server.start();
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (server != null) {
+            server.stop(0);
+            server = null;
+        }
+    }
+
+    /**
+     * Applies one delivery.
+     *
+     * @param event     the {@value #EVENT_HEADER} header
+     * @param payload   the request body
+     * @param signature the {@value #SIGNATURE_HEADER} header, or null
+     * @return the HTTP status to answer with
+     */
+    public int handle(String event, byte[] payload, String signature) {
+        String kind = event == null ? "unknown" : event;
+        if (!isSigned(payload, signature)) {
+            context.getMetrics().count(MetricsRegistry.WEBHOOK_DELIVERIES, 1, "event", kind, "result", "rejected");
+            return 401;
+        }
+        if (!"push".equals(event)) {
+            context.getMetrics().count(MetricsRegistry.WEBHOOK_DELIVERIES, 1, "event", kind, "result", "ignored");
+            return 204;
+        }
+
+        Push push;
+        try {
+            push = readPush(payload);
+        } catch (IOException | IllegalArgumentException e) {
+            push = null;
+        }
+        if (push == null) {
+            context.getMetrics().count(MetricsRegistry.WEBHOOK_DELIVERIES, 1, "event", kind, "result", "rejected");
+            return 400;
+        }
+        if (!push.ref.startsWith(BRANCH_PREFIX)) {
+            context.getMetrics().count(MetricsRegistry.WEBHOOK_DELIVERIES, 1, "event", kind, "result", "ignored");
+            return 204;
+        }
+
+        try {
+            apply(push);
+        } catch (IOException | RuntimeException e) {
+            // GitHub does not retry, so a failed delivery is left for the cache TTL to catch up with.
+            context.getMetrics().count(MetricsRegistry.WEBHOOK_DELIVERIES, 1, "event", kind, "result", "failed");
+            return 500;
+        }
+        context.getMetrics().count(MetricsRegistry.WEBHOOK_DELIVERIES, 1, "event", kind, "result", "applied");
+        return 204;
+    }
+
+    private void apply(Push push) throws IOException {
+        String branch = push.ref.substring(BRANCH_PREFIX.length());
+        CommitSnapshot snapshot = context.getSnapshot(push.owner, push.repo);
+        CommitStore store = context.getCommitStore(push.owner, push.repo);
+        if (push.deleted) {
+            if (snapshot != null) {
+                snapshot.removeHead(branch);
+            }
+            if (store != null) {
+                store.removeHead(branch);
+            }
+            cacheUtil().invalidate(push.owner, push.repo, branch);
+            return;
+        }
+
+        // Deliveries may arrive out of order, so a head only moves on from where this push started.
+        long now = System.currentTimeMillis();
+        if (snapshot != null) {
+            Sha current = snapshot.getHead(branch, Long.MAX_VALUE);
+            if (current == null || current.equals(push.before)) {
+                snapshot.setHead(branch, push.after, now);
+            } else {
+                snapshot.removeHead(branch);
+            }
+        }
+        if (store != null) {
+            Sha current = store.getHead(branch, Long.MAX_VALUE);
+            if (current == null || current.equals(push.before)) {
+                store.setHead(branch, push.after, now);
+            } else {
+                store.removeHead(branch);
+            }
+        }
+        cacheUtil().markStale(push.owner, push.repo, branch);
+    }
+
+    private boolean isSigned(byte[] payload, String signature) {
+        if (secret == null) {
+            return true;
+        }
+        if (signature == null || !signature.startsWith("sha256=")) {
+            return false;
+        }
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+            byte[] expected = mac.doFinal(payload);
+            byte[] given = HexFormat.of().parseHex(signature.substring("sha256=".length()));
+            return MessageDigest.isEqual(expected, given);
+        } catch (IllegalArgumentException e) {
+            return false;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the push, or null if the payload lacks the fields a push has
+     */
+    private Push readPush(byte[] payload) throws IOException {
+        String ref = null;
+        String before = null;
+        String after = null;
+        boolean deleted = false;
+        String fullName = null;
+
+        try (JsonParser parser = jsonFactory.createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("ref".equals(field) && value == JsonToken.VALUE_STRING) {
+                    ref = parser.getText();
+                } else if ("before".equals(field) && value == JsonToken.VALUE_STRING) {
+                    before = parser.getText();
+                } else if ("after".equals(field) && value == JsonToken.VALUE_STRING) {
+                    after = parser.getText();
+                } else if ("deleted".equals(field) && value.isBoolean()) {
+                    deleted = parser.getBooleanValue();
+                } else if ("repository".equals(field) && value == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String repositoryField = parser.currentName();
+                        if (parser.nextToken() == JsonToken.VALUE_STRING && "full_name".equals(repositoryField)) {
+                            fullName = parser.getText();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+
+        int separator = fullName == null ? -1 : fullName.indexOf('/');
+        if (ref == null || before == null || after == null || separator < 0) {
+            return null;
+        }
+        deleted |= NULL_SHA.equals(after);
+        return new Push(fullName.substring(0, separator), fullName.substring(separator + 1), ref, deleted,
+                NULL_SHA.equals(before) ? null : Sha.fromHex(before), deleted ? null : Sha.fromHex(after));
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] payload;
+            try (InputStream body = exchange.getRequestBody()) {
+                payload = body.readNBytes(MAX_PAYLOAD_BYTES + 1);
+            }
+            if (payload.length > MAX_PAYLOAD_BYTES) {
+                exchange.sendResponseHeaders(413, -1);
+                return;
+            }
+            int status = handle(exchange.getRequestHeaders().getFirst(EVENT_HEADER), payload,
+                    exchange.getRequestHeaders().getFirst(SIGNATURE_HEADER));
+            exchange.sendResponseHeaders(status, -1);
+        }
+    }
+
+    private CacheUtil cacheUtil() {
+        CacheUtil override = cacheUtil;
+        return override != null ? override : context.getCacheUtil();
+    }
+
+    /**
+     * Applies pushes to the given cache instead of the context's.
+     */
+    public void setCacheUtil(CacheUtil cacheUtil) {
+        this.cacheUtil = cacheUtil;
+    }
+
+    private static class Push {
+        private final String owner;
+        private final String repo;
+        private final String ref;
+        private final boolean deleted;
+        private final Sha before;
+        private final Sha after;
+
+        private Push(String owner, String repo, String ref, boolean deleted, Sha before, Sha after) {
+            this.owner = owner;
+            this.repo = repo;
+            this.ref = ref;
+            this.deleted = deleted;
+            this.before = before;
+            this.after = after;
+        }
+    }
+}
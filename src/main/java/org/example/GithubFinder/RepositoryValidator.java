@@ -0,0 +1,156 @@
+package org.example.GithubFinder;
+
+import org.example.exceptions.*;
+import org.example.utils.GithubContext;
+import org.example.utils.GithubUtils;
+import org.example.utils.SingleFlight;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Checks that a token can read a repository before a finder is created for it,
+ * and remembers the answer per owner, repository and token, so creating finders
+ * for a repository checked a moment ago costs no requests. Refusals are
+ * remembered for a shorter time than successes; connection failures, timeouts
+ * and rate limits are not remembered at all.
+ * <p>
+ * The repository is checked first: if the token can read it, its owner exists
+ * and one request is enough. Only a refusal is followed by the user check, which
+ * tells a missing owner from a missing or private repository. Concurrent checks
+ * of the same repository and token share their requests.
+ */
+public class RepositoryValidator {
+
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(10);
+    public static final Duration DEFAULT_NEGATIVE_TTL = Duration.ofMinutes(1);
+
+    private static final int MAX_ENTRIES = 10_000;
+
+    private enum Outcome {
+        VALID,
+        UNAUTHORIZED,
+        NO_USER,
+        NO_ACCESS
+    }
+
+    private final GithubContext context;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final Map<String, Entry> results = new ConcurrentHashMap<>();
+    private final SingleFlight<String, Outcome> flights = new SingleFlight<>();
+
+    /**
+     * Creates a validator that checks every time.
+     */
+    public RepositoryValidator(GithubContext context) {
+        this(context, Duration.ZERO, Duration.ZERO);
+    }
+
+    /**
+     * @param ttl         how long a successful check is remembered
+     * @param negativeTtl how long a missing user, missing repository or rejected token is remembered
+     */
+    public RepositoryValidator(GithubContext context, Duration ttl, Duration negativeTtl) {
+        this.context = context;
+        this.ttlMillis = ttl.toMillis();
+        this.negativeTtlMillis = negativeTtl.toMillis();
+    }
+
+    public void validate(String owner, String repo, String token) throws GithubUserDoesNotExistException, GithubUserDoesNotHaveAccessToRepo, GithubUnauthorizedToken, GithubRequestTimeoutException, GithubConnectionException {
+        String key = owner + "/" + repo + "@" + fingerprint(token);
+        Entry entry = results.get(key);
+        Outcome outcome;
+        if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+            outcome = entry.outcome;
+        } else {
+            try {
+                outcome = flights.execute(key, () -> check(key, owner, repo, token));
+            } catch (ExecutionException e) {
+                throw FetchFailures.rethrow(e.getCause(), "Failed to check repository " + owner + "/" + repo);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GithubConnectionException("Interrupted while checking repository " + owner + "/" + repo, e);
+            }
+        }
+
+        switch (outcome) {
+            case UNAUTHORIZED:
+                throw new GithubUnauthorizedToken();
+            case NO_USER:
+                throw new GithubUserDoesNotExistException(owner);
+            case NO_ACCESS:
+                throw new GithubUserDoesNotHaveAccessToRepo(owner, repo);
+            default:
+        }
+    }
+
+    /**
+     * Forgets what is known about the repository, e.g. after it was renamed or its
+     * permissions changed.
+     */
+    public void invalidate(String owner, String repo) {
+        String prefix = owner + "/" + repo + "@";
+        results.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    private Outcome check(String key, String owner, String repo, String token) throws GithubRequestTimeoutException, GithubConnectionException {
+        Outcome outcome;
+        try {
+            if (GithubUtils.checkUserHasRepo(context, owner, repo, token)) {
+                outcome = Outcome.VALID;
+            } else if (GithubUtils.checkUserExistsByUsername(context, owner, token)) {
+                outcome = Outcome.NO_ACCESS;
+            } else {
+                outcome = Outcome.NO_USER;
+            }
+        } catch (GithubUnauthorizedToken e) {
+            outcome = Outcome.UNAUTHORIZED;
+        }
+
+        long ttl = outcome == Outcome.VALID ? ttlMillis : negativeTtlMillis;
+        if (ttl > 0) {
+            if (results.size() >= MAX_ENTRIES) {
+                long now = System.currentTimeMillis();
+                results.values().removeIf(entry -> entry.expiresAt <= now);
+                if (results.size() >= MAX_ENTRIES) {
+                    results.clear();
+                }
+            }
+            results.put(key, new Entry(outcome, System.currentTimeMillis() + ttl));
+        }
+        return outcome;
+    }
+
+    /**
+     * Keys the cache by a hash of the token, so tokens are not kept in memory
+     * longer than the requests that use them.
+     */
+    static String fingerprint(String token) {
+        if (token == null || token.isEmpty()) {
+            return "";
+        }
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(hash, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Entry {
+        private final Outcome outcome;
+        private final long expiresAt;
+
+        private Entry(Outcome outcome, long expiresAt) {
+            this.outcome = outcome;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
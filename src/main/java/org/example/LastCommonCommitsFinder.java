@@ -6,6 +6,9 @@ import org.example.exceptions.GithubUserDoesNotHaveAccessToRepo;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
 
 public interface LastCommonCommitsFinder {
 
@@ -20,5 +23,31 @@ public interface LastCommonCommitsFinder {
      */
     Collection<String> findLastCommonCommits(String branchA, String branchB) throws IOException, GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException;
 
-}
+    /**
+     * Finds the last common commits of many pairs of branches, handing each result
+     * to the listener as soon as its pair is resolved. Implementations may share
+     * the history of a branch between all the pairs it appears in.
+     *
+     * @param pairs     the pairs to resolve (e.g., {@link BranchPair#against} a base branch)
+     * @param onResult  called once per pair with the SHAs of its last common commits
+     * @throws IOException  if any error occurs during the process
+     */
+    default void findLastCommonCommits(Collection<BranchPair> pairs, BiConsumer<BranchPair, Collection<String>> onResult) throws IOException, GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        for (BranchPair pair : pairs) {
+            onResult.accept(pair, findLastCommonCommits(pair.getBranchA(), pair.getBranchB()));
+        }
+    }
 
+    /**
+     * Finds the last common commits of many pairs of branches.
+     *
+     * @return the SHAs of the last common commits of each pair, in the order the pairs were resolved
+     * @throws IOException  if any error occurs during the process
+     */
+    default Map<BranchPair, Collection<String>> findLastCommonCommits(Collection<BranchPair> pairs) throws IOException, GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        Map<BranchPair, Collection<String>> results = new LinkedHashMap<>();
+        findLastCommonCommits(pairs, results::put);
+        return results;
+    }
+
+}
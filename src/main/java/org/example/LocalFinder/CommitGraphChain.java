@@ -0,0 +1,95 @@
+package org.example.LocalFinder;
+
+import org.example.graph.Sha;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The commit-graph of a repository: either the single {@code objects/info/commit-graph}
+ * file, or the layers listed in {@code objects/info/commit-graphs/commit-graph-chain},
+ * base layer first. Positions are global: a layer's commits come after all the
+ * commits of the layers below it.
+ */
+class CommitGraphChain {
+
+    private final CommitGraphFile[] layers;
+    private final int[] offsets;
+
+    private CommitGraphChain(List<CommitGraphFile> layers) {
+        this.layers = layers.toArray(new CommitGraphFile[0]);
+        this.offsets = new int[this.layers.length];
+        int offset = 0;
+        for (int i = 0; i < this.layers.length; i++) {
+            offsets[i] = offset;
+            offset += this.layers[i].size();
+        }
+    }
+
+    /**
+     * @return the commit-graph of the repository, or null if it has none
+     */
+    static CommitGraphChain open(Path objects) throws IOException {
+        Path chain = objects.resolve("info").resolve("commit-graphs").resolve("commit-graph-chain");
+        if (Files.isRegularFile(chain)) {
+            List<CommitGraphFile> layers = new ArrayList<>();
+            for (String line : Files.readAllLines(chain, StandardCharsets.US_ASCII)) {
+                if (!line.isBlank()) {
+                    layers.add(CommitGraphFile.open(chain.resolveSibling("graph-" + line.trim() + ".graph")));
+                }
+            }
+            return new CommitGraphChain(layers);
+        }
+        Path single = objects.resolve("info").resolve("commit-graph");
+        if (Files.isRegularFile(single)) {
+            return new CommitGraphChain(List.of(CommitGraphFile.open(single)));
+        }
+        return null;
+    }
+
+    /**
+     * @return the global position of the commit, or -1 if the graph does not contain it
+     */
+    int find(Sha sha) {
+        // Newer layers hold the recent commits, which are the ones queries start from.
+        for (int i = layers.length - 1; i >= 0; i--) {
+            int position = layers[i].find(sha);
+            if (position >= 0) {
+                return offsets[i] + position;
+            }
+        }
+        return -1;
+    }
+
+    Sha sha(int position) {
+        int layer = layerOf(position);
+        return layers[layer].sha(position - offsets[layer]);
+    }
+
+    int[] parents(int position) {
+        int layer = layerOf(position);
+        return layers[layer].parents(position - offsets[layer]);
+    }
+
+    int generation(int position) {
+        int layer = layerOf(position);
+        return layers[layer].generation(position - offsets[layer]);
+    }
+
+    long commitTime(int position) {
+        int layer = layerOf(position);
+        return layers[layer].commitTime(position - offsets[layer]);
+    }
+
+    private int layerOf(int position) {
+        int layer = layers.length - 1;
+        while (offsets[layer] > position) {
+            layer--;
+        }
+        return layer;
+    }
+}
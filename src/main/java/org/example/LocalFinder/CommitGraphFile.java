@@ -0,0 +1,171 @@
+package org.example.LocalFinder;
+
+import org.example.graph.Sha;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * One memory-mapped git commit-graph file (the {@code CGPH} format written by
+ * {@code git commit-graph write}). Commits are addressed by their position in the
+ * file's sorted SHA table; parent positions are global across a split chain, so a
+ * file must be read through the {@link CommitGraphChain} it belongs to.
+ */
+class CommitGraphFile {
+
+    private static final int SIGNATURE = 0x43475048; // "CGPH"
+    private static final int CHUNK_OID_FANOUT = 0x4f494446; // "OIDF"
+    private static final int CHUNK_OID_LOOKUP = 0x4f49444c; // "OIDL"
+    private static final int CHUNK_COMMIT_DATA = 0x43444154; // "CDAT"
+    private static final int CHUNK_EXTRA_EDGES = 0x45444745; // "EDGE"
+    private static final int HASH_VERSION_SHA1 = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int CHUNK_ENTRY_SIZE = 12;
+    private static final int DATA_SIZE = Sha.BYTES + 16;
+
+    static final int NO_PARENT = 0x70000000;
+    static final int EXTRA_EDGES = 0x80000000;
+    static final int LAST_EDGE = 0x80000000;
+
+    private final ByteBuffer data;
+    private final int count;
+    private final int fanout;
+    private final int oids;
+    private final int commits;
+    private final int edges;
+
+    private CommitGraphFile(ByteBuffer data, int fanout, int oids, int commits, int edges) {
+        this.data = data;
+        this.fanout = fanout;
+        this.oids = oids;
+        this.commits = commits;
+        this.edges = edges;
+        this.count = data.getInt(fanout + 255 * 4);
+    }
+
+    static CommitGraphFile open(Path path) throws IOException {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed.
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (data.limit() < HEADER_SIZE || data.getInt(0) != SIGNATURE) {
+            throw new IOException("Not a commit-graph file: " + path);
+        }
+        if (data.get(4) != 1 || data.get(5) != HASH_VERSION_SHA1) {
+            throw new IOException("Unsupported commit-graph version " + data.get(4) + "/" + data.get(5) + ": " + path);
+        }
+
+        int chunkCount = data.get(6) & 0xFF;
+        int fanout = -1;
+        int oids = -1;
+        int commits = -1;
+        int edges = -1;
+        for (int i = 0; i < chunkCount; i++) {
+            int entry = HEADER_SIZE + i * CHUNK_ENTRY_SIZE;
+            int id = data.getInt(entry);
+            int offset = Math.toIntExact(data.getLong(entry + 4));
+            if (id == CHUNK_OID_FANOUT) {
+                fanout = offset;
+            } else if (id == CHUNK_OID_LOOKUP) {
+                oids = offset;
+            } else if (id == CHUNK_COMMIT_DATA) {
+                commits = offset;
+            } else if (id == CHUNK_EXTRA_EDGES) {
+                edges = offset;
+            }
+        }
+        if (fanout < 0 || oids < 0 || commits < 0) {
+            throw new IOException("Commit-graph file is missing a required chunk: " + path);
+        }
+        return new CommitGraphFile(data, fanout, oids, commits, edges);
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * @return the local position of the commit, or -1 if the file does not contain it
+     */
+    int find(Sha sha) {
+        int first = (int) (sha.getHigh() >>> 56);
+        int low = first == 0 ? 0 : data.getInt(fanout + (first - 1) * 4);
+        int high = data.getInt(fanout + first * 4) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compare(mid, sha);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    Sha sha(int position) {
+        int offset = oids + position * Sha.BYTES;
+        return new Sha(data.getLong(offset), data.getLong(offset + 8), data.getInt(offset + 16));
+    }
+
+    /**
+     * @return the global positions of the commit's parents
+     */
+    int[] parents(int position) {
+        int offset = commits + position * DATA_SIZE + Sha.BYTES;
+        int first = data.getInt(offset);
+        int second = data.getInt(offset + 4);
+        if (first == NO_PARENT) {
+            return new int[0];
+        }
+        if (second == NO_PARENT) {
+            return new int[]{first};
+        }
+        if ((second & EXTRA_EDGES) == 0) {
+            return new int[]{first, second};
+        }
+
+        // Octopus merges keep their second and further parents in the EDGE chunk.
+        int edge = edges + (second & ~EXTRA_EDGES) * 4;
+        int count = 2;
+        while ((data.getInt(edge + (count - 2) * 4) & LAST_EDGE) == 0) {
+            count++;
+        }
+        int[] parents = new int[count];
+        parents[0] = first;
+        for (int i = 1; i < count; i++) {
+            parents[i] = data.getInt(edge + (i - 1) * 4) & ~LAST_EDGE;
+        }
+        return parents;
+    }
+
+    /**
+     * @return the topological level of the commit, or 0 if the file was written without one
+     */
+    int generation(int position) {
+        return data.getInt(commits + position * DATA_SIZE + Sha.BYTES + 8) >>> 2;
+    }
+
+    long commitTime(int position) {
+        int offset = commits + position * DATA_SIZE + Sha.BYTES + 8;
+        return ((data.getInt(offset) & 0x3L) << 32) | (data.getInt(offset + 4) & 0xFFFFFFFFL);
+    }
+
+    private int compare(int position, Sha sha) {
+        int offset = oids + position * Sha.BYTES;
+        int cmp = Long.compareUnsigned(data.getLong(offset), sha.getHigh());
+        if (cmp == 0) {
+            cmp = Long.compareUnsigned(data.getLong(offset + 8), sha.getMiddle());
+        }
+        if (cmp == 0) {
+            cmp = Integer.compareUnsigned(data.getInt(offset + 16), sha.getLow());
+        }
+        return cmp;
+    }
+}
@@ -0,0 +1,68 @@
+package org.example.LocalFinder;
+
+import java.io.IOException;
+
+/**
+ * Applies git's binary delta format: the source and target sizes, followed by
+ * instructions that either copy a range of the base or insert literal bytes.
+ */
+final class Delta {
+
+    private Delta() {
+    }
+
+    static byte[] apply(byte[] base, byte[] delta) throws IOException {
+        int[] position = {0};
+        long baseSize = readSize(delta, position);
+        if (baseSize != base.length) {
+            throw new IOException("Delta does not apply to a base of " + base.length + " bytes");
+        }
+        byte[] result = new byte[Math.toIntExact(readSize(delta, position))];
+        int p = position[0];
+        int out = 0;
+        while (p < delta.length) {
+            int op = delta[p++] & 0xFF;
+            if ((op & 0x80) != 0) {
+                int offset = 0;
+                int size = 0;
+                for (int i = 0; i < 4; i++) {
+                    if ((op & (1 << i)) != 0) {
+                        offset |= (delta[p++] & 0xFF) << (8 * i);
+                    }
+                }
+                for (int i = 0; i < 3; i++) {
+                    if ((op & (0x10 << i)) != 0) {
+                        size |= (delta[p++] & 0xFF) << (8 * i);
+                    }
+                }
+                if (size == 0) {
+                    size = 0x10000;
+                }
+                System.arraycopy(base, offset, result, out, size);
+                out += size;
+            } else if (op != 0) {
+                System.arraycopy(delta, p, result, out, op);
+                p += op;
+                out += op;
+            } else {
+                throw new IOException("Invalid delta instruction");
+            }
+        }
+        if (out != result.length) {
+            throw new IOException("Delta produced " + out + " of " + result.length + " bytes");
+        }
+        return result;
+    }
+
+    private static long readSize(byte[] delta, int[] position) {
+        long size = 0;
+        int shift = 0;
+        int c;
+        do {
+            c = delta[position[0]++] & 0xFF;
+            size |= (long) (c & 0x7F) << shift;
+            shift += 7;
+        } while ((c & 0x80) != 0);
+        return size;
+    }
+}
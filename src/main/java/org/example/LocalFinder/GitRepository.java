@@ -0,0 +1,123 @@
+package org.example.LocalFinder;
+
+import org.example.graph.Sha;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bare clone or mirror on disk, read directly from its files. Branches are
+ * resolved from loose refs and {@code packed-refs}; commits come from an
+ * {@link ObjectDatabase} snapshot that is reopened when a fetch or repack has
+ * replaced the packs or the commit-graph underneath it.
+ */
+class GitRepository implements AutoCloseable {
+
+    private static final int MAX_SYMBOLIC_DEPTH = 5;
+
+    private final Path gitDir;
+    private ObjectDatabase objects;
+    private final List<ObjectDatabase> retired = new ArrayList<>();
+    private Map<String, Sha> packedRefs = Map.of();
+    private long packedRefsStamp = -1;
+
+    private GitRepository(Path gitDir) {
+        this.gitDir = gitDir;
+    }
+
+    /**
+     * @return the repository at the given directory (bare, or a work tree with a
+     * {@code .git} directory), or null if there is none
+     */
+    static GitRepository open(Path dir) {
+        if (Files.isDirectory(dir.resolve("objects")) && Files.isDirectory(dir.resolve("refs"))) {
+            return new GitRepository(dir);
+        }
+        Path dotGit = dir.resolve(".git");
+        if (Files.isDirectory(dotGit.resolve("objects"))) {
+            return new GitRepository(dotGit);
+        }
+        return null;
+    }
+
+    /**
+     * @return the commit the branch points at, or null if there is no such branch
+     */
+    synchronized Sha resolveBranch(String branch) throws IOException {
+        if (branch.length() == Sha.HEX_LENGTH && branch.chars().allMatch(c -> Character.digit(c, 16) >= 0)) {
+            return Sha.fromHex(branch);
+        }
+        return resolveRef(branch.startsWith("refs/") ? branch : "refs/heads/" + branch, 0);
+    }
+
+    /**
+     * @return the current snapshot of the object database
+     */
+    synchronized ObjectDatabase objects() throws IOException {
+        if (objects == null || objects.isStale()) {
+            if (objects != null) {
+                // Walks may still be reading the old snapshot, so it is closed with the repository.
+                retired.add(objects);
+            }
+            objects = ObjectDatabase.open(gitDir.resolve("objects"));
+        }
+        return objects;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (ObjectDatabase database : retired) {
+            database.close();
+        }
+        retired.clear();
+        if (objects != null) {
+            objects.close();
+            objects = null;
+        }
+    }
+
+    private Sha resolveRef(String ref, int depth) throws IOException {
+        if (depth > MAX_SYMBOLIC_DEPTH || !isSafeRefName(ref)) {
+            return null;
+        }
+        try {
+            String content = Files.readString(gitDir.resolve(ref), StandardCharsets.US_ASCII).trim();
+            if (content.startsWith("ref: ")) {
+                return resolveRef(content.substring("ref: ".length()).trim(), depth + 1);
+            }
+            return Sha.fromHex(content);
+        } catch (NoSuchFileException e) {
+            return readPackedRefs().get(ref);
+        }
+    }
+
+    private Map<String, Sha> readPackedRefs() throws IOException {
+        Path path = gitDir.resolve("packed-refs");
+        long stamp = Files.exists(path) ? Files.getLastModifiedTime(path).toMillis() : 0;
+        if (stamp != packedRefsStamp) {
+            Map<String, Sha> refs = new HashMap<>();
+            if (stamp != 0) {
+                // "<sha> <ref>" lines; "#" starts the header and "^" the peeled target of the tag above.
+                for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                    if (line.length() > Sha.HEX_LENGTH + 1 && line.charAt(0) != '#' && line.charAt(0) != '^') {
+                        refs.put(line.substring(Sha.HEX_LENGTH + 1), Sha.fromHex(line.substring(0, Sha.HEX_LENGTH)));
+                    }
+                }
+            }
+            packedRefs = refs;
+            packedRefsStamp = stamp;
+        }
+        return packedRefs;
+    }
+
+    private static boolean isSafeRefName(String ref) {
+        return ref.startsWith("refs/") && !ref.contains("..") && !ref.contains("\\") && !ref.contains("//") && ref.indexOf('\0') < 0;
+    }
+}
@@ -0,0 +1,50 @@
+package org.example.LocalFinder;
+
+import org.example.LastCommonCommitsFinder;
+import org.example.graph.GenerationWalk;
+import org.example.graph.Sha;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds merge bases in a local mirror of the repository, without any request to
+ * GitHub and without spawning {@code git}. Like the GitHub finder it keeps no
+ * per-query state and can be used from several threads at once.
+ */
+public class LocalLastCommonCommitsFinder implements LastCommonCommitsFinder {
+
+    private final GitRepository repository;
+
+    LocalLastCommonCommitsFinder(GitRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * @return the SHAs of the last common commits, empty if either branch does not
+     * exist in the mirror or the histories are unrelated
+     */
+    @Override
+    public Collection<String> findLastCommonCommits(String branchA, String branchB) throws IOException {
+        Sha headA = repository.resolveBranch(branchA);
+        Sha headB = repository.resolveBranch(branchB);
+        if (headA == null || headB == null) {
+            return Collections.emptyList();
+        }
+
+        ObjectDatabase objects = repository.objects();
+        if (objects.readCommit(headA) == null || objects.readCommit(headB) == null) {
+            return Collections.emptyList();
+        }
+        Collection<Sha> bases = new GenerationWalk(objects).mergeBases(headA, headB);
+
+        List<String> hex = new ArrayList<>(bases.size());
+        for (Sha sha : bases) {
+            hex.add(sha.toHex());
+        }
+        return hex;
+    }
+}
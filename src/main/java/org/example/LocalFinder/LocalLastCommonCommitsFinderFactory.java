@@ -0,0 +1,54 @@
+package org.example.LocalFinder;
+
+import org.example.LastCommonCommitsFinder;
+import org.example.LastCommonCommitsFinderFactory;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates finders that answer from local mirrors kept under one directory, as
+ * {@code <root>/<owner>/<repo>.git} or {@code <root>/<owner>/<repo>}. Each mirror
+ * is opened once and shared by all the finders created for it; closing the
+ * factory releases them.
+ */
+public class LocalLastCommonCommitsFinderFactory implements LastCommonCommitsFinderFactory, AutoCloseable {
+
+    private final Path root;
+    private final Map<Path, GitRepository> repositories = new ConcurrentHashMap<>();
+
+    public LocalLastCommonCommitsFinderFactory(Path root) {
+        this.root = root;
+    }
+
+    /**
+     * The token is ignored: a mirror that is on disk is readable.
+     *
+     * @throws NoSuchFileException if there is no mirror of the repository under the root
+     */
+    @Override
+    public LastCommonCommitsFinder create(String owner, String repo, String token) throws IOException {
+        Path ownerDir = root.resolve(owner).normalize();
+        for (Path dir : new Path[]{ownerDir.resolve(repo + ".git").normalize(), ownerDir.resolve(repo).normalize()}) {
+            if (!dir.startsWith(root.normalize())) {
+                break;
+            }
+            GitRepository repository = repositories.computeIfAbsent(dir, GitRepository::open);
+            if (repository != null) {
+                return new LocalLastCommonCommitsFinder(repository);
+            }
+        }
+        throw new NoSuchFileException(ownerDir.resolve(repo).toString(), null, "No local mirror of " + owner + "/" + repo);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (GitRepository repository : repositories.values()) {
+            repository.close();
+        }
+        repositories.clear();
+    }
+}
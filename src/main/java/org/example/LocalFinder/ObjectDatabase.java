@@ -0,0 +1,214 @@
+package org.example.LocalFinder;
+
+import org.example.graph.Commit;
+import org.example.graph.CommitRecord;
+import org.example.graph.CommitSource;
+import org.example.graph.Sha;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads commits from a repository's {@code objects} directory: from the
+ * commit-graph when it has them, which costs a few lookups in mapped memory, and
+ * otherwise from the packs or loose objects written since the graph was.
+ * <p>
+ * The graph and the pack list are a snapshot; {@link #isStale()} tells when the
+ * repository has been repacked or its graph rewritten.
+ */
+class ObjectDatabase implements CommitSource, AutoCloseable {
+
+    private final Path objects;
+    private final CommitGraphChain graph;
+    private final List<PackFile> packs;
+    private final long graphStamp;
+    private final long packStamp;
+
+    private ObjectDatabase(Path objects, CommitGraphChain graph, List<PackFile> packs, long graphStamp, long packStamp) {
+        this.objects = objects;
+        this.graph = graph;
+        this.packs = packs;
+        this.graphStamp = graphStamp;
+        this.packStamp = packStamp;
+    }
+
+    static ObjectDatabase open(Path objects) throws IOException {
+        long graphStamp = graphStamp(objects);
+        long packStamp = lastModified(objects.resolve("pack"));
+        CommitGraphChain graph = CommitGraphChain.open(objects);
+
+        List<PackFile> packs = new ArrayList<>();
+        Path packDir = objects.resolve("pack");
+        if (Files.isDirectory(packDir)) {
+            try (DirectoryStream<Path> indexes = Files.newDirectoryStream(packDir, "*.idx")) {
+                for (Path idx : indexes) {
+                    try {
+                        packs.add(PackFile.open(idx));
+                    } catch (NoSuchFileException e) {
+                        // The pack was removed by a concurrent repack; its objects are in another one.
+                    }
+                }
+            }
+        }
+        return new ObjectDatabase(objects, graph, packs, graphStamp, packStamp);
+    }
+
+    /**
+     * @return true if the commit-graph or the packs changed since this snapshot was opened
+     */
+    boolean isStale() throws IOException {
+        return graphStamp(objects) != graphStamp || lastModified(objects.resolve("pack")) != packStamp;
+    }
+
+    /**
+     * @return the commit, or null if the repository does not have it
+     */
+    @Override
+    public CommitRecord readCommit(Sha sha) throws IOException {
+        if (graph != null) {
+            int position = graph.find(sha);
+            if (position >= 0) {
+                int[] parentPositions = graph.parents(position);
+                Sha[] parents = new Sha[parentPositions.length];
+                for (int i = 0; i < parents.length; i++) {
+                    parents[i] = graph.sha(parentPositions[i]);
+                }
+                int generation = graph.generation(position);
+                return new CommitRecord(new Commit(sha, parents), generation == 0 ? CommitRecord.GENERATION_INFINITY : generation, graph.commitTime(position));
+            }
+        }
+
+        PackFile.RawObject object = readObject(sha);
+        if (object == null || object.type != PackFile.OBJ_COMMIT) {
+            return null;
+        }
+        return parseCommit(sha, object.data);
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (PackFile pack : packs) {
+            pack.close();
+        }
+    }
+
+    private PackFile.RawObject readObject(Sha sha) throws IOException {
+        for (PackFile pack : packs) {
+            long offset = pack.find(sha);
+            if (offset >= 0) {
+                return pack.read(offset, this::readObject);
+            }
+        }
+        return readLooseObject(sha);
+    }
+
+    private PackFile.RawObject readLooseObject(Sha sha) throws IOException {
+        String hex = sha.toHex();
+        Path path = objects.resolve(hex.substring(0, 2)).resolve(hex.substring(2));
+        byte[] compressed;
+        try {
+            compressed = Files.readAllBytes(path);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] buffer = new byte[Math.max(64, compressed.length * 4)];
+            int length = 0;
+            while (!inflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                int inflated = inflater.inflate(buffer, length, buffer.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Truncated loose object " + hex);
+                }
+                length += inflated;
+            }
+
+            // "<type> <size>\0<data>"
+            int space = indexOf(buffer, (byte) ' ', 0, length);
+            int nul = indexOf(buffer, (byte) 0, 0, length);
+            if (space < 0 || nul < space) {
+                throw new IOException("Corrupt loose object " + hex);
+            }
+            String type = new String(buffer, 0, space, StandardCharsets.US_ASCII);
+            byte[] data = Arrays.copyOfRange(buffer, nul + 1, length);
+            return new PackFile.RawObject("commit".equals(type) ? PackFile.OBJ_COMMIT : 0, data);
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt loose object " + hex, e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Reads the parents and the committer time out of a commit object's headers.
+     */
+    static CommitRecord parseCommit(Sha sha, byte[] data) throws IOException {
+        List<Sha> parents = new ArrayList<>(2);
+        long commitTime = 0;
+        int line = 0;
+        while (line < data.length && data[line] != '\n') {
+            int end = indexOf(data, (byte) '\n', line, data.length);
+            if (end < 0) {
+                end = data.length;
+            }
+            if (startsWith(data, line, "parent ")) {
+                parents.add(Sha.fromHex(new String(data, line + 7, end - line - 7, StandardCharsets.US_ASCII)));
+            } else if (startsWith(data, line, "committer ")) {
+                // "committer <name> <<email>> <seconds> <timezone>"
+                String committer = new String(data, line, end - line, StandardCharsets.UTF_8);
+                String[] parts = committer.substring(committer.lastIndexOf('>') + 1).trim().split(" ");
+                try {
+                    commitTime = Long.parseLong(parts[0]);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Corrupt committer line in commit " + sha.toHex(), e);
+                }
+            }
+            line = end + 1;
+        }
+        return new CommitRecord(new Commit(sha, parents), CommitRecord.GENERATION_INFINITY, commitTime);
+    }
+
+    private static long graphStamp(Path objects) throws IOException {
+        Path info = objects.resolve("info");
+        return 31 * lastModified(info.resolve("commit-graph")) + lastModified(info.resolve("commit-graphs").resolve("commit-graph-chain"));
+    }
+
+    private static long lastModified(Path path) throws IOException {
+        return Files.exists(path) ? Files.getLastModifiedTime(path).toMillis() : 0;
+    }
+
+    private static boolean startsWith(byte[] data, int offset, String prefix) {
+        if (offset + prefix.length() > data.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (data[offset + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] data, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
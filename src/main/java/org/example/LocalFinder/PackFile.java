@@ -0,0 +1,187 @@
+package org.example.LocalFinder;
+
+import org.example.graph.Sha;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * A packfile with its version 2 index. The index is memory-mapped and searched
+ * like the commit-graph; objects are read from the pack with positional reads,
+ * since packs of large repositories do not fit a single mapping. Only the commits
+ * missing from the commit-graph are ever read from here.
+ */
+class PackFile implements AutoCloseable {
+
+    static final int OBJ_COMMIT = 1;
+    private static final int OBJ_OFS_DELTA = 6;
+    private static final int OBJ_REF_DELTA = 7;
+
+    private static final int INDEX_SIGNATURE = 0xff744f63; // "\377tOc"
+    private static final int FANOUT = 8;
+    private static final int MAX_HEADER = 32;
+    private static final int READ_CHUNK = 8192;
+
+    interface BaseResolver {
+        /**
+         * @return the object a REF_DELTA applies to, or null if it cannot be found
+         */
+        RawObject read(Sha sha) throws IOException;
+    }
+
+    static class RawObject {
+        final int type;
+        final byte[] data;
+
+        RawObject(int type, byte[] data) {
+            this.type = type;
+            this.data = data;
+        }
+    }
+
+    private final ByteBuffer index;
+    private final FileChannel pack;
+    private final int count;
+    private final int shas;
+    private final int offsets;
+    private final int largeOffsets;
+
+    private PackFile(ByteBuffer index, FileChannel pack) {
+        this.index = index;
+        this.pack = pack;
+        this.count = index.getInt(FANOUT + 255 * 4);
+        this.shas = FANOUT + 256 * 4;
+        this.offsets = shas + count * (Sha.BYTES + 4);
+        this.largeOffsets = offsets + count * 4;
+    }
+
+    static PackFile open(Path idx) throws IOException {
+        ByteBuffer index;
+        try (FileChannel channel = FileChannel.open(idx, StandardOpenOption.READ)) {
+            index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (index.limit() < FANOUT || index.getInt(0) != INDEX_SIGNATURE || index.getInt(4) != 2) {
+            throw new IOException("Unsupported pack index: " + idx);
+        }
+        String name = idx.getFileName().toString();
+        Path packPath = idx.resolveSibling(name.substring(0, name.length() - ".idx".length()) + ".pack");
+        return new PackFile(index, FileChannel.open(packPath, StandardOpenOption.READ));
+    }
+
+    /**
+     * @return the offset of the object in the pack, or -1 if the pack does not contain it
+     */
+    long find(Sha sha) {
+        int first = (int) (sha.getHigh() >>> 56);
+        int low = first == 0 ? 0 : index.getInt(FANOUT + (first - 1) * 4);
+        int high = index.getInt(FANOUT + first * 4) - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int offset = shas + mid * Sha.BYTES;
+            int cmp = Long.compareUnsigned(index.getLong(offset), sha.getHigh());
+            if (cmp == 0) {
+                cmp = Long.compareUnsigned(index.getLong(offset + 8), sha.getMiddle());
+            }
+            if (cmp == 0) {
+                cmp = Integer.compareUnsigned(index.getInt(offset + 16), sha.getLow());
+            }
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return packOffset(mid);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the object at the given offset, applying deltas until a whole object is left.
+     */
+    RawObject read(long offset, BaseResolver resolver) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(MAX_HEADER);
+        pack.read(header, offset);
+        header.flip();
+
+        int c = header.get() & 0xFF;
+        int type = (c >> 4) & 7;
+        long size = c & 15;
+        for (int shift = 4; (c & 0x80) != 0; shift += 7) {
+            c = header.get() & 0xFF;
+            size |= (long) (c & 0x7F) << shift;
+        }
+
+        if (type == OBJ_OFS_DELTA) {
+            c = header.get() & 0xFF;
+            long distance = c & 0x7F;
+            while ((c & 0x80) != 0) {
+                c = header.get() & 0xFF;
+                distance = ((distance + 1) << 7) | (c & 0x7F);
+            }
+            RawObject base = read(offset - distance, resolver);
+            return new RawObject(base.type, Delta.apply(base.data, inflate(offset + header.position(), size)));
+        }
+        if (type == OBJ_REF_DELTA) {
+            byte[] baseSha = new byte[Sha.BYTES];
+            header.get(baseSha);
+            RawObject base = resolver.read(Sha.fromBytes(baseSha, 0));
+            if (base == null) {
+                throw new IOException("Missing delta base " + Sha.fromBytes(baseSha, 0).toHex());
+            }
+            return new RawObject(base.type, Delta.apply(base.data, inflate(offset + header.position(), size)));
+        }
+        return new RawObject(type, inflate(offset + header.position(), size));
+    }
+
+    @Override
+    public void close() throws IOException {
+        pack.close();
+    }
+
+    private long packOffset(int position) {
+        int offset = index.getInt(offsets + position * 4);
+        if ((offset & 0x80000000) == 0) {
+            return offset;
+        }
+        return index.getLong(largeOffsets + (offset & 0x7FFFFFFF) * 8);
+    }
+
+    private byte[] inflate(long position, long size) throws IOException {
+        byte[] out = new byte[Math.toIntExact(size)];
+        Inflater inflater = new Inflater();
+        try {
+            ByteBuffer in = ByteBuffer.allocate(READ_CHUNK);
+            int produced = 0;
+            while (!inflater.finished()) {
+                if (inflater.needsInput()) {
+                    in.clear();
+                    int read = pack.read(in, position);
+                    if (read <= 0) {
+                        throw new IOException("Truncated pack object");
+                    }
+                    position += read;
+                    inflater.setInput(in.array(), 0, read);
+                }
+                if (inflater.needsDictionary()) {
+                    throw new IOException("Corrupt pack object");
+                }
+                produced += inflater.inflate(out, produced, out.length - produced);
+                if (produced == out.length) {
+                    // The size is known from the header, so the zlib trailer need not be read.
+                    break;
+                }
+            }
+            return out;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt pack object", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -12,8 +12,7 @@ public class Main {
             System.out.println("You have to specify OWNER REPO ACCESS_TOKEN BRANCH_1 BRANCH_2 in this order as args");
             return;
         }
-        try {
-            LastCommonCommitsFinderFactory factory = new GithubLastCommonCommitsFinderFactory();
+        try (GithubLastCommonCommitsFinderFactory factory = new GithubLastCommonCommitsFinderFactory()) {
             String owner = args[0];
             String repo = args[1];
             String token = args[2];
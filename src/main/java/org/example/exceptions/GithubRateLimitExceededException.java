@@ -0,0 +1,11 @@
+package org.example.exceptions;
+
+/**
+ * Thrown when every token that could make a request is out of budget for longer
+ * than the scheduler is allowed to wait.
+ */
+public class GithubRateLimitExceededException extends GithubConnectionException {
+    public GithubRateLimitExceededException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,62 @@
+package org.example.graph;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A commit as seen by the finders: its SHA and the SHAs of its parents.
+ */
+public class Commit implements Serializable {
+
+    private final Sha sha;
+    private final Sha[] parents;
+
+    public Commit(Sha sha, Sha... parents) {
+        this.sha = sha;
+        this.parents = parents;
+    }
+
+    public Commit(Sha sha, List<Sha> parents) {
+        this(sha, parents.toArray(new Sha[0]));
+    }
+
+    public Sha getSha() {
+        return sha;
+    }
+
+    public int getParentCount() {
+        return parents.length;
+    }
+
+    public Sha getParent(int i) {
+        return parents[i];
+    }
+
+    public List<Sha> getParents() {
+        return List.of(parents);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Commit)) {
+            return false;
+        }
+        Commit other = (Commit) o;
+        return sha.equals(other.sha) && Arrays.equals(parents, other.parents);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sha, Arrays.hashCode(parents));
+    }
+
+    @Override
+    public String toString() {
+        return sha + " " + Arrays.toString(parents);
+    }
+}
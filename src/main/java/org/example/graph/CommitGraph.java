@@ -0,0 +1,114 @@
+package org.example.graph;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * In-memory commit DAG built from the commits the finder has fetched so far.
+ * Commits are addressed by the dense ids of a {@link ShaIndex} and parent edges
+ * live in one flat int[], so the graph allocates no objects per commit.
+ * A commit is "expanded" once its parents are known; commits that were only
+ * seen as somebody's parent are referenced but not expanded yet.
+ */
+public class CommitGraph {
+
+    private static final int NOT_EXPANDED = -1;
+
+    private final ShaIndex index = new ShaIndex();
+    private int[] edgeStart = new int[0];
+    private int[] edgeCount = new int[0];
+    private int[] edges = new int[64];
+    private int edgeSize;
+
+    /**
+     * @return the id of the SHA, referencing it in the graph if needed
+     */
+    public int idOf(Sha sha) {
+        int id = index.add(sha);
+        ensureCapacity(id + 1);
+        return id;
+    }
+
+    /**
+     * @return the id of the SHA, or -1 if the graph has never seen it
+     */
+    public int find(Sha sha) {
+        return index.indexOf(sha);
+    }
+
+    public Sha shaOf(int id) {
+        return index.get(id);
+    }
+
+    /**
+     * Records a commit and its parents.
+     *
+     * @return the id of the commit if it was not expanded before, -1 otherwise
+     */
+    public int add(Commit commit) {
+        int id = idOf(commit.getSha());
+        if (edgeStart[id] != NOT_EXPANDED) {
+            return -1;
+        }
+        int count = commit.getParentCount();
+        if (edgeSize + count > edges.length) {
+            edges = Arrays.copyOf(edges, Math.max(edges.length * 2, edgeSize + count));
+        }
+        int start = edgeSize;
+        for (int i = 0; i < count; i++) {
+            // Referencing a parent may grow the per-id arrays, so read them after.
+            edges[start + i] = idOf(commit.getParent(i));
+        }
+        edgeSize += count;
+        edgeStart[id] = start;
+        edgeCount[id] = count;
+        return id;
+    }
+
+    /**
+     * Records a batch of commits.
+     *
+     * @return the ids of the commits that were not expanded before
+     */
+    public int[] addAll(Collection<Commit> commits) {
+        int[] expanded = new int[commits.size()];
+        int count = 0;
+        for (Commit commit : commits) {
+            int id = add(commit);
+            if (id >= 0) {
+                expanded[count++] = id;
+            }
+        }
+        return Arrays.copyOf(expanded, count);
+    }
+
+    public boolean isExpanded(int id) {
+        return edgeStart[id] != NOT_EXPANDED;
+    }
+
+    public int parentCount(int id) {
+        return edgeCount[id];
+    }
+
+    public int parent(int id, int i) {
+        return edges[edgeStart[id] + i];
+    }
+
+    /**
+     * @return the number of commits the graph references, expanded or not
+     */
+    public int size() {
+        return index.size();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= edgeStart.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, Math.max(16, edgeStart.length * 2));
+        int oldCapacity = edgeStart.length;
+        edgeStart = Arrays.copyOf(edgeStart, newCapacity);
+        edgeCount = Arrays.copyOf(edgeCount, newCapacity);
+        Arrays.fill(edgeStart, oldCapacity, newCapacity, NOT_EXPANDED);
+    }
+}
@@ -0,0 +1,37 @@
+package org.example.graph;
+
+/**
+ * A commit together with what a {@link GenerationWalk} needs to visit commits
+ * newest first: its generation number and its committer time.
+ */
+public class CommitRecord {
+
+    /**
+     * The generation of commits whose generation is not known. Such commits sort
+     * before every commit with a known one, which is right for commits that are
+     * missing from a commit-graph: they can only be newer than all that are in it.
+     */
+    public static final int GENERATION_INFINITY = Integer.MAX_VALUE;
+
+    private final Commit commit;
+    private final int generation;
+    private final long commitTime;
+
+    public CommitRecord(Commit commit, int generation, long commitTime) {
+        this.commit = commit;
+        this.generation = generation;
+        this.commitTime = commitTime;
+    }
+
+    public Commit getCommit() {
+        return commit;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    public long getCommitTime() {
+        return commitTime;
+    }
+}
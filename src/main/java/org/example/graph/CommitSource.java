@@ -0,0 +1,14 @@
+package org.example.graph;
+
+import java.io.IOException;
+
+/**
+ * Where a {@link GenerationWalk} reads commits from.
+ */
+public interface CommitSource {
+
+    /**
+     * @return the commit, or null if the source does not have it
+     */
+    CommitRecord readCommit(Sha sha) throws IOException;
+}
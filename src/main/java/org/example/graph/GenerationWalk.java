@@ -0,0 +1,198 @@
+package org.example.graph;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Computes merge bases the way {@code git merge-base --all} does, over commits read
+ * on demand from a {@link CommitSource}. Both heads are painted down in
+ * generation order, newest first; a commit painted by both sides is a candidate,
+ * and its ancestors are marked stale. The walk stops as soon as every queued
+ * commit is stale, so only the commits above the merge bases are ever read.
+ * Candidates that are ancestors of other candidates are then dropped.
+ */
+public class GenerationWalk {
+
+    private static final int SIDE_A = 1;
+    private static final int SIDE_B = 2;
+    private static final int COMMON = SIDE_A | SIDE_B;
+    private static final int STALE = 4;
+    private static final int RESULT = 8;
+
+    private final CommitSource objects;
+    private final CommitGraph graph = new CommitGraph();
+    private int[] generation = new int[64];
+    private long[] commitTime = new long[64];
+    private byte[] flags = new byte[64];
+    private final BitSet queued = new BitSet();
+    private int[] queue = new int[64];
+    private int queueSize;
+    private int nonStaleQueued;
+
+    public GenerationWalk(CommitSource objects) {
+        this.objects = objects;
+    }
+
+    /**
+     * @return the merge bases of the two commits, empty if their histories are unrelated
+     */
+    public Collection<Sha> mergeBases(Sha headA, Sha headB) throws IOException {
+        if (headA.equals(headB)) {
+            return List.of(headA);
+        }
+        paint(load(headA), SIDE_A);
+        paint(load(headB), SIDE_B);
+
+        List<Integer> results = new ArrayList<>();
+        while (nonStaleQueued > 0) {
+            int id = poll();
+            int sides = flags[id] & (COMMON | STALE);
+            if ((sides & COMMON) == COMMON) {
+                if ((flags[id] & RESULT) == 0) {
+                    flags[id] |= RESULT;
+                    results.add(id);
+                }
+                sides |= STALE;
+            }
+            for (int i = 0; i < graph.parentCount(id); i++) {
+                int parent = load(graph.shaOf(graph.parent(id, i)));
+                if ((flags[parent] & sides) != sides) {
+                    paint(parent, sides);
+                }
+            }
+        }
+
+        List<Integer> candidates = new ArrayList<>();
+        for (int id : results) {
+            if ((flags[id] & STALE) == 0) {
+                candidates.add(id);
+            }
+        }
+        return removeRedundant(candidates);
+    }
+
+    /**
+     * Drops candidates that are reachable from another candidate. A commit can only
+     * reach commits of a lower generation, which bounds each search.
+     */
+    private Collection<Sha> removeRedundant(List<Integer> candidates) throws IOException {
+        List<Sha> result = new ArrayList<>(candidates.size());
+        for (int candidate : candidates) {
+            BitSet visited = new BitSet();
+            int[] stack = new int[16];
+            int size = 0;
+            for (int other : candidates) {
+                if (other != candidate) {
+                    stack[size++] = other;
+                }
+            }
+            boolean redundant = false;
+            while (size > 0 && !redundant) {
+                int id = stack[--size];
+                if (id == candidate) {
+                    redundant = true;
+                } else if (!visited.get(id) && generation[id] >= generation[candidate]) {
+                    visited.set(id);
+                    for (int i = 0; i < graph.parentCount(id); i++) {
+                        if (size == stack.length) {
+                            stack = Arrays.copyOf(stack, size * 2);
+                        }
+                        stack[size++] = load(graph.shaOf(graph.parent(id, i)));
+                    }
+                }
+            }
+            if (!redundant) {
+                result.add(graph.shaOf(candidate));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the id of the commit, read from the repository on first use
+     */
+    private int load(Sha sha) throws IOException {
+        int id = graph.idOf(sha);
+        ensureCapacity(id + 1);
+        if (!graph.isExpanded(id)) {
+            CommitRecord commit = objects.readCommit(sha);
+            if (commit == null) {
+                // A shallow mirror has no history past its boundary commits.
+                commit = new CommitRecord(new Commit(sha), 0, 0);
+            }
+            graph.add(commit.getCommit());
+            ensureCapacity(graph.size());
+            generation[id] = commit.getGeneration();
+            commitTime[id] = commit.getCommitTime();
+        }
+        return id;
+    }
+
+    private void paint(int id, int bits) {
+        int old = flags[id];
+        flags[id] |= bits;
+        if (queued.get(id)) {
+            if ((old & STALE) == 0 && (bits & STALE) != 0) {
+                nonStaleQueued--;
+            }
+            return;
+        }
+        queued.set(id);
+        if ((flags[id] & STALE) == 0) {
+            nonStaleQueued++;
+        }
+        if (queueSize == queue.length) {
+            queue = Arrays.copyOf(queue, queueSize * 2);
+        }
+        int i = queueSize++;
+        while (i > 0 && newer(id, queue[(i - 1) / 2])) {
+            queue[i] = queue[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        queue[i] = id;
+    }
+
+    private int poll() {
+        int top = queue[0];
+        int last = queue[--queueSize];
+        int i = 0;
+        while (2 * i + 1 < queueSize) {
+            int child = 2 * i + 1;
+            if (child + 1 < queueSize && newer(queue[child + 1], queue[child])) {
+                child++;
+            }
+            if (!newer(queue[child], last)) {
+                break;
+            }
+            queue[i] = queue[child];
+            i = child;
+        }
+        queue[i] = last;
+
+        queued.clear(top);
+        if ((flags[top] & STALE) == 0) {
+            nonStaleQueued--;
+        }
+        return top;
+    }
+
+    private boolean newer(int a, int b) {
+        if (generation[a] != generation[b]) {
+            return generation[a] > generation[b];
+        }
+        return commitTime[a] > commitTime[b];
+    }
+
+    private void ensureCapacity(int size) {
+        if (size > flags.length) {
+            int capacity = Math.max(size, flags.length * 2);
+            generation = Arrays.copyOf(generation, capacity);
+            commitTime = Arrays.copyOf(commitTime, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+        }
+    }
+}
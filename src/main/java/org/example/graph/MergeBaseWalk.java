@@ -0,0 +1,172 @@
+package org.example.graph;
+
+import java.util.*;
+
+/**
+ * Incremental merge-base computation between two heads over a {@link CommitGraph}
+ * that is still being discovered.
+ * <p>
+ * Every commit reachable from head A is painted with {@link #SIDE_A}, every commit
+ * reachable from head B with {@link #SIDE_B}. Commits painted with both sides are
+ * common ancestors, and the merge bases are the common ancestors that have no
+ * common child. Painting only moves forward when a commit gets a new flag or
+ * learns its parents, so feeding a page of commits costs time proportional to
+ * that page, not to the whole history seen so far.
+ * <p>
+ * The result is settled once no commit painted by a single side is missing its
+ * parents: anything not discovered yet can then only be an ancestor of a merge
+ * base already found.
+ */
+public class MergeBaseWalk {
+
+    public static final int SIDE_A = 1;
+    public static final int SIDE_B = 2;
+
+    private static final int COMMON = SIDE_A | SIDE_B;
+    private static final int HAS_COMMON_CHILD = 4;
+
+    private final CommitGraph graph;
+    private byte[] flags = new byte[64];
+    private final BitSet pendingA = new BitSet();
+    private final BitSet pendingB = new BitSet();
+    private final BitSet mergeBases = new BitSet();
+    private int pendingCountA;
+    private int pendingCountB;
+    private int commonCount;
+    private int[] queue = new int[64];
+    private int queueSize;
+
+    public MergeBaseWalk(CommitGraph graph) {
+        this.graph = graph;
+    }
+
+    public void setHead(int side, Sha sha) {
+        mark(graph.idOf(sha), side);
+        drain();
+    }
+
+    /**
+     * Adds freshly fetched commits to the graph and continues painting from them.
+     */
+    public void addCommits(Collection<Commit> commits) {
+        expanded(graph.addAll(commits));
+    }
+
+    /**
+     * Continues painting from commits whose parents were just added to the graph,
+     * for walks that share the graph with whoever added them.
+     */
+    public void expanded(int[] ids) {
+        for (int id : ids) {
+            onExpanded(id);
+        }
+        drain();
+    }
+
+    /**
+     * @return true if more history of the given side is needed to settle the result
+     */
+    public boolean needsMore(int side) {
+        return side == SIDE_A ? pendingCountA > 0 : pendingCountB > 0;
+    }
+
+    /**
+     * @return the ids of the commits whose parents are needed to settle the result
+     */
+    public int[] getPending() {
+        BitSet pending = (BitSet) pendingA.clone();
+        pending.or(pendingB);
+        return pending.stream().toArray();
+    }
+
+    /**
+     * @return true once any commit reachable from both heads has been seen
+     */
+    public boolean hasCommonAncestor() {
+        return commonCount > 0;
+    }
+
+    public boolean isSettled() {
+        return pendingCountA == 0 && pendingCountB == 0;
+    }
+
+    public Collection<Sha> getMergeBases() {
+        List<Sha> result = new ArrayList<>();
+        for (int id = mergeBases.nextSetBit(0); id >= 0; id = mergeBases.nextSetBit(id + 1)) {
+            result.add(graph.shaOf(id));
+        }
+        return result;
+    }
+
+    private void onExpanded(int id) {
+        if (pendingA.get(id)) {
+            pendingA.clear(id);
+            pendingCountA--;
+        }
+        if (pendingB.get(id)) {
+            pendingB.clear(id);
+            pendingCountB--;
+        }
+        if (flagsOf(id) != 0) {
+            enqueue(id);
+        }
+    }
+
+    private void drain() {
+        while (queueSize > 0) {
+            int id = queue[--queueSize];
+            if (!graph.isExpanded(id)) {
+                continue;
+            }
+            int sides = flagsOf(id) & COMMON;
+            int inherited = sides == COMMON ? COMMON | HAS_COMMON_CHILD : sides;
+            for (int i = 0; i < graph.parentCount(id); i++) {
+                mark(graph.parent(id, i), inherited);
+            }
+        }
+    }
+
+    private void mark(int id, int bits) {
+        int old = flagsOf(id);
+        int updated = old | bits;
+        if (updated == old) {
+            return;
+        }
+        if (id >= flags.length) {
+            flags = Arrays.copyOf(flags, Math.max(id + 1, flags.length * 2));
+        }
+        flags[id] = (byte) updated;
+
+        mergeBases.set(id, (updated & (COMMON | HAS_COMMON_CHILD)) == COMMON);
+        if ((updated & COMMON) == COMMON && (old & COMMON) != COMMON) {
+            commonCount++;
+        }
+
+        boolean expanded = graph.isExpanded(id);
+        boolean isPendingA = !expanded && (updated & COMMON) == SIDE_A;
+        boolean isPendingB = !expanded && (updated & COMMON) == SIDE_B;
+        if (pendingA.get(id) != isPendingA) {
+            pendingA.set(id, isPendingA);
+            pendingCountA += isPendingA ? 1 : -1;
+        }
+        if (pendingB.get(id) != isPendingB) {
+            pendingB.set(id, isPendingB);
+            pendingCountB += isPendingB ? 1 : -1;
+        }
+
+        if ((updated & COMMON) != (old & COMMON)) {
+            enqueue(id);
+        }
+    }
+
+    private int flagsOf(int id) {
+        return id < flags.length ? flags[id] : 0;
+    }
+
+    private void enqueue(int id) {
+        if (queueSize == queue.length) {
+            queue = Arrays.copyOf(queue, queue.length * 2);
+        }
+        queue[queueSize++] = id;
+    }
+}
@@ -0,0 +1,142 @@
+package org.example.graph;
+
+import java.io.Serializable;
+
+/**
+ * A 20-byte SHA-1 packed into two longs and an int, instead of a 40-char hex String.
+ */
+public final class Sha implements Serializable {
+
+    public static final int BYTES = 20;
+    public static final int HEX_LENGTH = 40;
+
+    private final long high;
+    private final long middle;
+    private final int low;
+
+    public Sha(long high, long middle, int low) {
+        this.high = high;
+        this.middle = middle;
+        this.low = low;
+    }
+
+    public static Sha fromHex(CharSequence hex) {
+        if (hex.length() != HEX_LENGTH) {
+            throw new IllegalArgumentException("Not a SHA-1: " + hex);
+        }
+        return new Sha(parseHex(hex, 0, 16), parseHex(hex, 16, 32), (int) parseHex(hex, 32, 40));
+    }
+
+    /**
+     * Parses a SHA straight out of a character buffer, such as the text buffer of a
+     * streaming JSON parser, without creating a String first.
+     */
+    public static Sha fromHex(char[] chars, int offset, int length) {
+        if (length != HEX_LENGTH) {
+            throw new IllegalArgumentException("Not a SHA-1: " + new String(chars, offset, length));
+        }
+        long high = 0;
+        long middle = 0;
+        long low = 0;
+        for (int i = 0; i < HEX_LENGTH; i++) {
+            int digit = Character.digit(chars[offset + i], 16);
+            if (digit < 0) {
+                throw new IllegalArgumentException("Not a SHA-1: " + new String(chars, offset, length));
+            }
+            if (i < 16) {
+                high = (high << 4) | digit;
+            } else if (i < 32) {
+                middle = (middle << 4) | digit;
+            } else {
+                low = (low << 4) | digit;
+            }
+        }
+        return new Sha(high, middle, (int) low);
+    }
+
+    public static Sha fromBytes(byte[] bytes, int offset) {
+        return new Sha(readLong(bytes, offset), readLong(bytes, offset + 8), (int) readBits(bytes, offset + 16, 4));
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getMiddle() {
+        return middle;
+    }
+
+    public int getLow() {
+        return low;
+    }
+
+    public void writeTo(byte[] bytes, int offset) {
+        writeBits(bytes, offset, high, 8);
+        writeBits(bytes, offset + 8, middle, 8);
+        writeBits(bytes, offset + 16, low, 4);
+    }
+
+    public byte[] toBytes() {
+        byte[] bytes = new byte[BYTES];
+        writeTo(bytes, 0);
+        return bytes;
+    }
+
+    public String toHex() {
+        return String.format("%016x%016x%08x", high, middle, low);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Sha)) {
+            return false;
+        }
+        Sha other = (Sha) o;
+        return high == other.high && middle == other.middle && low == other.low;
+    }
+
+    @Override
+    public int hashCode() {
+        // SHA bits are already uniformly distributed.
+        return (int) high;
+    }
+
+    @Override
+    public String toString() {
+        return toHex();
+    }
+
+    private static long parseHex(CharSequence hex, int from, int to) {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = Character.digit(hex.charAt(i), 16);
+            if (digit < 0) {
+                throw new IllegalArgumentException("Not a SHA-1: " + hex);
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        return readBits(bytes, offset, 8);
+    }
+
+    private static long readBits(byte[] bytes, int offset, int length) {
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static void writeBits(byte[] bytes, int offset, long value, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+}
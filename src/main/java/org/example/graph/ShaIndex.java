@@ -0,0 +1,100 @@
+package org.example.graph;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash index that assigns dense int ids to SHAs.
+ * The SHAs themselves are stored packed in a long[] (three words per id), so the
+ * index holds no per-entry objects and doubles as a primitive SHA set.
+ */
+public class ShaIndex {
+
+    private static final int WORDS = 3;
+
+    private long[] words = new long[16 * WORDS];
+    private int[] slots = new int[32];
+    private int size;
+
+    /**
+     * @return the id of the SHA, or -1 if it is not in the index
+     */
+    public int indexOf(Sha sha) {
+        int mask = slots.length - 1;
+        for (int slot = hash(sha) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (matches(id, sha)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(Sha sha) {
+        return indexOf(sha) >= 0;
+    }
+
+    /**
+     * @return the id of the SHA, adding it to the index if needed
+     */
+    public int add(Sha sha) {
+        int mask = slots.length - 1;
+        int slot = hash(sha) & mask;
+        for (; slots[slot] != 0; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (matches(id, sha)) {
+                return id;
+            }
+        }
+
+        int id = size++;
+        if (id * WORDS == words.length) {
+            words = Arrays.copyOf(words, words.length * 2);
+        }
+        words[id * WORDS] = sha.getHigh();
+        words[id * WORDS + 1] = sha.getMiddle();
+        words[id * WORDS + 2] = sha.getLow();
+        slots[slot] = id + 1;
+
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    public Sha get(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("No SHA with id " + id);
+        }
+        return new Sha(words[id * WORDS], words[id * WORDS + 1], (int) words[id * WORDS + 2]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private boolean matches(int id, Sha sha) {
+        int base = id * WORDS;
+        return words[base] == sha.getHigh() && words[base + 1] == sha.getMiddle() && (int) words[base + 2] == sha.getLow();
+    }
+
+    private void rehash() {
+        int[] rehashed = new int[slots.length * 2];
+        int mask = rehashed.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hash(words[id * WORDS]) & mask;
+            while (rehashed[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            rehashed[slot] = id + 1;
+        }
+        slots = rehashed;
+    }
+
+    private static int hash(Sha sha) {
+        return hash(sha.getHigh());
+    }
+
+    private static int hash(long high) {
+        return (int) (high ^ (high >>> 32));
+    }
+}
@@ -0,0 +1,223 @@
+package org.example.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Publishes every metric as an MBean on the platform MBean server, named after the
+ * metric and its tags, e.g. {@code org.example.lastcommon:name=http.latency,endpoint=commits}.
+ * MBeans are registered the first time their metric is recorded.
+ */
+public class JmxMetricsRegistry implements MetricsRegistry, AutoCloseable {
+
+    public static final String DEFAULT_DOMAIN = "org.example.lastcommon";
+
+    private static final Pattern PLAIN_VALUE = Pattern.compile("[A-Za-z0-9._/@#+-]*");
+    private static JmxMetricsRegistry defaultRegistry;
+
+    private final String domain;
+    private final MBeanServer server;
+    private final Map<ObjectName, Object> metrics = new ConcurrentHashMap<>();
+
+    public JmxMetricsRegistry(String domain) {
+        this(domain, ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public JmxMetricsRegistry(String domain, MBeanServer server) {
+        this.domain = domain;
+        this.server = server;
+    }
+
+    /**
+     * @return the registry shared by contexts that were not given one, so the
+     * metrics of the whole JVM add up in one set of MBeans
+     */
+    public static synchronized JmxMetricsRegistry getDefault() {
+        if (defaultRegistry == null) {
+            defaultRegistry = new JmxMetricsRegistry(DEFAULT_DOMAIN);
+        }
+        return defaultRegistry;
+    }
+
+    @Override
+    public void count(String name, long amount, String... tags) {
+        metric(name, tags, Counter.class, CounterMBean.class).add(amount);
+    }
+
+    @Override
+    public void time(String name, long nanos, String... tags) {
+        metric(name, tags, Timer.class, TimerMBean.class).histogram.record(nanos);
+    }
+
+    @Override
+    public void gauge(String name, long value, String... tags) {
+        metric(name, tags, Gauge.class, GaugeMBean.class).set(value);
+    }
+
+    /**
+     * @return the histogram behind a timer, or null if nothing was recorded in it
+     */
+    public Histogram getHistogram(String name, String... tags) {
+        Object timer = metrics.get(objectName(name, tags));
+        return timer instanceof Timer ? ((Timer) timer).histogram : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T metric(String name, String[] tags, Class<T> type, Class<? super T> mbeanInterface) {
+        ObjectName objectName = objectName(name, tags);
+        Object metric = metrics.get(objectName);
+        if (metric == null) {
+            metric = metrics.computeIfAbsent(objectName, key -> {
+                T created = newMetric(type);
+                try {
+                    server.registerMBean(new StandardMBean(created, (Class<T>) mbeanInterface), key);
+                } catch (JMException e) {
+                    // Another registry on the same server owns the name; keep counting here anyway.
+                }
+                return created;
+            });
+        }
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException("Metric " + objectName + " is not a " + type.getSimpleName());
+        }
+        return type.cast(metric);
+    }
+
+    private static <T> T newMetric(Class<T> type) {
+        if (type == Counter.class) {
+            return type.cast(new Counter());
+        } else if (type == Timer.class) {
+            return type.cast(new Timer());
+        }
+        return type.cast(new Gauge());
+    }
+
+    private ObjectName objectName(String name, String[] tags) {
+        if (tags.length % 2 != 0) {
+            throw new IllegalArgumentException("Tags must come in key-value pairs");
+        }
+        StringBuilder objectName = new StringBuilder(domain).append(":name=").append(quoteIfNeeded(name));
+        for (int i = 0; i < tags.length; i += 2) {
+            objectName.append(',').append(tags[i]).append('=').append(quoteIfNeeded(tags[i + 1]));
+        }
+        try {
+            return new ObjectName(objectName.toString());
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Invalid metric name " + objectName, e);
+        }
+    }
+
+    private static String quoteIfNeeded(String value) {
+        return value != null && !value.isEmpty() && PLAIN_VALUE.matcher(value).matches() ? value : ObjectName.quote(String.valueOf(value));
+    }
+
+    /**
+     * Unregisters the MBeans of this registry.
+     */
+    @Override
+    public void close() {
+        for (ObjectName name : metrics.keySet()) {
+            try {
+                if (server.isRegistered(name)) {
+                    server.unregisterMBean(name);
+                }
+            } catch (JMException e) {
+                // Unregistered meanwhile, e.g. by another registry on the same server.
+            }
+        }
+        metrics.clear();
+    }
+
+    public interface CounterMBean {
+        long getCount();
+    }
+
+    public interface GaugeMBean {
+        long getValue();
+    }
+
+    public interface TimerMBean {
+        long getCount();
+
+        double getMeanMillis();
+
+        double getMaxMillis();
+
+        double getP50Millis();
+
+        double getP90Millis();
+
+        double getP99Millis();
+    }
+
+    private static class Counter implements CounterMBean {
+        private final LongAdder count = new LongAdder();
+
+        private void add(long amount) {
+            count.add(amount);
+        }
+
+        @Override
+        public long getCount() {
+            return count.sum();
+        }
+    }
+
+    private static class Gauge implements GaugeMBean {
+        private final AtomicLong value = new AtomicLong();
+
+        private void set(long newValue) {
+            value.set(newValue);
+        }
+
+        @Override
+        public long getValue() {
+            return value.get();
+        }
+    }
+
+    private static class Timer implements TimerMBean {
+        private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+        private final Histogram histogram = new Histogram();
+
+        @Override
+        public long getCount() {
+            return histogram.getCount();
+        }
+
+        @Override
+        public double getMeanMillis() {
+            return histogram.getMean() / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getMaxMillis() {
+            return histogram.getMax() / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getP50Millis() {
+            return histogram.getQuantile(0.5) / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getP90Millis() {
+            return histogram.getQuantile(0.9) / NANOS_PER_MILLI;
+        }
+
+        @Override
+        public double getP99Millis() {
+            return histogram.getQuantile(0.99) / NANOS_PER_MILLI;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package org.example.metrics;
+
+/**
+ * Where the finders report what they do. Implement it to forward the metrics to
+ * a monitoring system; {@link JmxMetricsRegistry} publishes them as MBeans.
+ * <p>
+ * Tags are given as alternating keys and values, e.g. {@code "endpoint", "commits"}.
+ * Implementations must be thread-safe and should not block.
+ */
+public interface MetricsRegistry {
+
+    /**
+     * Time from the start of a query to its answer, tagged with {@code answeredBy}:
+     * the strategy that answered it, {@code cache} or {@code history}.
+     */
+    String QUERY_LATENCY = "query.latency";
+
+    /**
+     * Pages of commits requested from GitHub, tagged with the {@code branch} and
+     * whether the page was {@code fetched} or {@code not_modified}.
+     */
+    String PAGES = "github.pages";
+
+    /**
+     * Requests sent to GitHub, tagged with the {@code endpoint} and the {@code status}.
+     */
+    String HTTP_REQUESTS = "http.requests";
+
+    /**
+     * Time until the response headers of a request arrived, tagged with the {@code endpoint}.
+     */
+    String HTTP_LATENCY = "http.latency";
+
+    /**
+     * Bytes of response bodies read, tagged with the {@code endpoint}.
+     */
+    String HTTP_BYTES = "http.bytes";
+
+    /**
+     * Requests left in the current rate-limit window, tagged with the {@code resource}.
+     */
+    String RATE_LIMIT_REMAINING = "github.rateLimit.remaining";
+
+    /**
+     * Time spent waiting for rate-limit budget before a request, tagged with its {@code priority}.
+     */
+    String RATE_LIMIT_WAIT = "github.rateLimit.wait";
+
+    /**
+     * Requests rejected by a rate limit despite the scheduling, and sent again, tagged with the {@code endpoint}.
+     */
+    String RATE_LIMITED = "github.rateLimited";
+
+    /**
+     * Requests refused to a token of the pool and sent again with the caller's own
+     * token, tagged with the {@code endpoint}.
+     */
+    String POOL_REFUSALS = "github.poolRefusals";
+
+    /**
+     * Cached history lookups, tagged with where they were answered from:
+     * {@code near}, {@code redis} or {@code miss}.
+     */
+    String CACHE_LOOKUPS = "cache.lookups";
+
+    /**
+     * Cached histories found but too old to answer from without asking GitHub.
+     */
+    String CACHE_STALE = "cache.stale";
+
+    /**
+     * Failures to use the caches, tagged with the {@code operation}: {@code get} or
+     * {@code put} for cached histories, {@code snapshot_open}, {@code snapshot_read},
+     * {@code snapshot_write} or {@code snapshot_close} for the commit snapshot, and
+     * {@code store_read} or {@code store_write} for the commit store.
+     */
+    String CACHE_ERRORS = "cache.errors";
+
+    /**
+     * Calls to the compare endpoint that failed, after which the pair was resolved
+     * another way.
+     */
+    String COMPARE_ERRORS = "compare.errors";
+
+    /**
+     * Background refreshes of popular pairs, tagged with the {@code result}:
+     * {@code refreshed}, {@code failed} or {@code over_budget}.
+     */
+    String CACHE_REFRESHES = "cache.refreshes";
+
+    /**
+     * Webhook deliveries received, tagged with the {@code event} and the
+     * {@code result}: {@code applied}, {@code ignored}, {@code rejected} or {@code failed}.
+     */
+    String WEBHOOK_DELIVERIES = "webhook.deliveries";
+
+    MetricsRegistry NONE = new MetricsRegistry() {
+        @Override
+        public void count(String name, long amount, String... tags) {
+        }
+
+        @Override
+        public void time(String name, long nanos, String... tags) {
+        }
+
+        @Override
+        public void gauge(String name, long value, String... tags) {
+        }
+    };
+
+    /**
+     * Adds to a counter.
+     */
+    void count(String name, long amount, String... tags);
+
+    /**
+     * Records a duration in a histogram.
+     */
+    void time(String name, long nanos, String... tags);
+
+    /**
+     * Sets a value that goes up and down.
+     */
+    void gauge(String name, long value, String... tags);
+}
@@ -1,41 +1,213 @@
 package org.example.utils;
 
-import org.redisson.Redisson;
-import org.redisson.api.RMapCache;
+import org.example.metrics.MetricsRegistry;
+import org.redisson.api.RBucket;
+import org.redisson.api.RLock;
+import org.redisson.api.RTopic;
 import org.redisson.api.RedissonClient;
-import org.redisson.config.Config;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.time.Duration;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Two-tier cache of branch histories: a {@link NearCache} in this JVM in front of
+ * Redis keys shared by every JVM. Writes are announced on a Redis topic so the
+ * other JVMs drop their near copy of the key; the near TTL bounds how long a copy
+ * can survive a lost message.
+ * <p>
+ * Each history is one Redis string in the packed format of
+ * {@link CachedHistoryCodec}, so {@link #getPrefix} can read just the first
+ * pages of a long history.
+ */
 public class CacheUtil {
 
-    private static final String CACHE_MAP_NAME = "githubCache";
+    private static final String HISTORY_PREFIX = "githubCache:history:";
+    private static final String INVALIDATION_TOPIC_NAME = "githubCache:invalidations";
+    private static final String LOCK_PREFIX = "githubCache:lock:";
+
+    /**
+     * How long a history is trusted without asking GitHub.
+     */
+    public static final long FRESH_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * How long a history is kept for revalidation with conditional requests,
+     * which do not count against the rate limit when nothing changed.
+     */
+    private static final long RETAIN_HOURS = 24;
+
+    /**
+     * How much of a value {@link #getPrefix} reads at first, which holds the first
+     * pages of most histories.
+     */
+    private static final int PREFIX_PROBE_BYTES = 8192;
+
+    private static final int NEAR_CACHE_SIZE = 1000;
+    private static final long NEAR_CACHE_TTL_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
     private final RedissonClient redissonClient;
-    private final RMapCache<String, List<String>> cacheMap;
+    private final NearCache<String, CachedHistory> nearCache = new NearCache<>(NEAR_CACHE_SIZE, NEAR_CACHE_TTL_MILLIS);
+    private final RTopic invalidations;
+    private final String instanceId = UUID.randomUUID().toString();
+    private final MetricsRegistry metrics;
+    private final int listenerId;
+
+    /**
+     * @param redissonClient a shared client, which stays open when this cache is closed
+     */
+    public CacheUtil(RedissonClient redissonClient) {
+        this(redissonClient, MetricsRegistry.NONE);
+    }
 
-    public CacheUtil() {
-        Config config = new Config();
-        config.useSingleServer().setAddress("redis://localhost:6379");
-        this.redissonClient = Redisson.create(config);
-        this.cacheMap = redissonClient.getMapCache(CACHE_MAP_NAME);
+    /**
+     * @param redissonClient a shared client, which stays open when this cache is closed
+     * @param metrics        where to count lookups
+     */
+    public CacheUtil(RedissonClient redissonClient, MetricsRegistry metrics) {
+        this.redissonClient = redissonClient;
+        this.metrics = metrics;
+        this.invalidations = redissonClient.getTopic(INVALIDATION_TOPIC_NAME);
+        this.listenerId = invalidations.addListener(String.class, (channel, message) -> onInvalidation(message));
     }
 
     private String getKey(String owner, String repo, String branch) {
         return owner + "_" + repo + "_" + branch;
     }
 
-    public void put(String owner, String repo, String branch, List<String> value) {
+    private RBucket<CachedHistory> bucket(String key) {
+        return redissonClient.getBucket(HISTORY_PREFIX + key, CachedHistoryCodec.INSTANCE);
+    }
+
+    public void put(String owner, String repo, String branch, CachedHistory value) {
+        String key = getKey(owner, repo, branch);
+        bucket(key).set(value, Duration.ofHours(RETAIN_HOURS));
+        nearCache.put(key, value);
+        invalidations.publish(instanceId + "|" + key);
+    }
+
+    public CachedHistory get(String owner, String repo, String branch) {
+        String key = getKey(owner, repo, branch);
+        CachedHistory near = nearCache.get(key);
+        if (near != null) {
+            metrics.count(MetricsRegistry.CACHE_LOOKUPS, 1, "result", "near");
+            return near;
+        }
+
+        // Null too for a value in a format this version does not know.
+        CachedHistory history = bucket(key).get();
+        if (history == null) {
+            metrics.count(MetricsRegistry.CACHE_LOOKUPS, 1, "result", "miss");
+            return CachedHistory.empty();
+        }
+        metrics.count(MetricsRegistry.CACHE_LOOKUPS, 1, "result", "redis");
+        nearCache.put(key, history);
+        return history;
+    }
+
+    /**
+     * Reads the first pages of a cached history, as many as hold at least the given
+     * number of commits, transferring only those bytes from Redis. The result may
+     * lack older pages and carried commits, so it must not be taken for the whole
+     * history; it is not kept in the near cache.
+     */
+    public CachedHistory getPrefix(String owner, String repo, String branch, int commits) {
+        String key = getKey(owner, repo, branch);
+        CachedHistory near = nearCache.get(key);
+        if (near != null) {
+            metrics.count(MetricsRegistry.CACHE_LOOKUPS, 1, "result", "near");
+            return near;
+        }
+
+        CachedHistory history = null;
+        try (SeekableByteChannel channel = redissonClient.getBinaryStream(HISTORY_PREFIX + key).getChannel()) {
+            ByteBuffer value = readRange(channel, ByteBuffer.allocate(PREFIX_PROBE_BYTES));
+            int length = CachedHistoryCodec.prefixLength(value, commits);
+            // A buffer left short holds the whole value already.
+            while (length == 0 && value.limit() == value.capacity()) {
+                value = readRange(channel, grow(value, value.capacity() * 2));
+                length = CachedHistoryCodec.prefixLength(value, commits);
+            }
+            if (length > 0) {
+                if (length > value.limit() && value.limit() == value.capacity()) {
+                    value = readRange(channel, grow(value, length));
+                }
+                history = CachedHistoryCodec.decodePrefix(value, commits);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the cached history of " + key, e);
+        }
+        if (history == null) {
+            metrics.count(MetricsRegistry.CACHE_LOOKUPS, 1, "result", "miss");
+            return CachedHistory.empty();
+        }
+        metrics.count(MetricsRegistry.CACHE_LOOKUPS, 1, "result", "redis");
+        return history;
+    }
+
+    /**
+     * @return a buffer of the given capacity holding what the value read so far holds, positioned after it
+     */
+    private static ByteBuffer grow(ByteBuffer value, int capacity) {
+        return ByteBuffer.allocate(capacity).put(value.duplicate().rewind());
+    }
+
+    /**
+     * Fills the buffer from the channel, starting at the buffer's position, and
+     * returns it flipped. Stops early at the end of the value.
+     */
+    private static ByteBuffer readRange(SeekableByteChannel channel, ByteBuffer buffer) throws IOException {
+        channel.position(buffer.position());
+        while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+            // Each read is one GETRANGE.
+        }
+        return buffer.flip();
+    }
+
+    /**
+     * Drops the cached history of a branch in every JVM, so the next query fetches it again.
+     */
+    public void invalidate(String owner, String repo, String branch) {
         String key = getKey(owner, repo, branch);
-        cacheMap.put(key, value, 10, TimeUnit.MINUTES);
+        bucket(key).delete();
+        nearCache.invalidate(key);
+        invalidations.publish(instanceId + "|" + key);
+    }
+
+    /**
+     * Marks the cached history of a branch as stale in every JVM but keeps its pages,
+     * so the next query revalidates them with conditional requests and only fetches
+     * the commits that are new.
+     */
+    public void markStale(String owner, String repo, String branch) {
+        CachedHistory history = bucket(getKey(owner, repo, branch)).get();
+        if (history == null) {
+            invalidate(owner, repo, branch);
+        } else if (history.getFetchedAt() != 0) {
+            put(owner, repo, branch, new CachedHistory(history.getPages(), history.getCarried(), 0));
+        }
+    }
+
+    /**
+     * @return a Redis lock shared by every JVM, used to run one computation per name at a time
+     */
+    public RLock getLock(String name) {
+        return redissonClient.getLock(LOCK_PREFIX + name);
     }
 
-    public List<String> get(String owner, String repo, String branch) {
-        return cacheMap.getOrDefault(getKey(owner, repo, branch), new ArrayList<>());
+    private void onInvalidation(String message) {
+        int separator = message.indexOf('|');
+        if (separator < 0 || message.substring(0, separator).equals(instanceId)) {
+            return;
+        }
+        nearCache.invalidate(message.substring(separator + 1));
     }
 
     public void close() {
-        redissonClient.shutdown();
+        invalidations.removeListener(listenerId);
     }
 }
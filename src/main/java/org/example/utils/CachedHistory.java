@@ -0,0 +1,83 @@
+package org.example.utils;
+
+import org.example.graph.Commit;
+import org.example.graph.Sha;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The cached history of a branch: its first pages in order, each with its own
+ * ETag / Last-Modified validators, and the time the history was last fetched.
+ * <p>
+ * When the branch moves forward, only the new pages are fetched and the commits
+ * known from before are carried over. Carried commits are still ancestors of the
+ * head, but their position in the listing is no longer known, so they have no page.
+ */
+public class CachedHistory implements Serializable {
+
+    private static final CachedHistory EMPTY = new CachedHistory(Collections.emptyList(), 0);
+
+    private final List<CommitPage> pages;
+    private final List<Commit> carried;
+    private final long fetchedAt;
+
+    public CachedHistory(List<CommitPage> pages, long fetchedAt) {
+        this(pages, Collections.emptyList(), fetchedAt);
+    }
+
+    public CachedHistory(List<CommitPage> pages, List<Commit> carried, long fetchedAt) {
+        this.pages = pages;
+        this.carried = carried;
+        this.fetchedAt = fetchedAt;
+    }
+
+    public static CachedHistory empty() {
+        return EMPTY;
+    }
+
+    public List<CommitPage> getPages() {
+        return pages;
+    }
+
+    /**
+     * @return the cached copy of the given 1-based page, or null if it is not cached
+     */
+    public CommitPage getPage(int page) {
+        return page >= 1 && page <= pages.size() ? pages.get(page - 1) : null;
+    }
+
+    public List<Commit> getCarried() {
+        return carried;
+    }
+
+    public List<Commit> getCommits() {
+        List<Commit> commits = new ArrayList<>();
+        for (CommitPage page : pages) {
+            commits.addAll(page.getCommits());
+        }
+        commits.addAll(carried);
+        return commits;
+    }
+
+    public Sha getHead() {
+        return isEmpty() ? null : pages.get(0).getCommits().get(0).getSha();
+    }
+
+    public boolean isEmpty() {
+        return pages.isEmpty() || pages.get(0).isEmpty();
+    }
+
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+
+    /**
+     * @return true if the history was fetched less than maxAgeMillis ago
+     */
+    public boolean isFresh(long maxAgeMillis) {
+        return System.currentTimeMillis() - fetchedAt < maxAgeMillis;
+    }
+}
@@ -0,0 +1,278 @@
+package org.example.utils;
+
+import io.netty.buffer.Unpooled;
+import org.example.graph.Commit;
+import org.example.graph.Sha;
+import org.redisson.client.codec.BaseCodec;
+import org.redisson.client.protocol.Decoder;
+import org.redisson.client.protocol.Encoder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Stores a {@link CachedHistory} in Redis as packed binary instead of serialized
+ * objects: about 22 bytes per commit of a linear history, against a few hundred.
+ * <p>
+ * After a header of magic, version, fetch time and page count, the pages follow
+ * in order, so a prefix of the value is a prefix of the history. Each page is:
+ * <ul>
+ *     <li>its number (0 for the carried commits), commit count, the length of
+ *     its records and its ETag / Last-Modified validators</li>
+ *     <li>per commit, newest first, a record: the commit's 20-byte SHA, its
+ *     parent count, and per parent either a flag saying it is the commit of the
+ *     next record, which is how almost every first parent is stored, or the
+ *     parent's 20 bytes</li>
+ * </ul>
+ * {@link #decodePrefix} reads the first pages only, and {@link #prefixLength}
+ * tells how many bytes of the value they take, so a reader can fetch just that
+ * range. Values of an unknown version decode to null and are treated as missing.
+ * <p>
+ * The SHAs, which are most of every value, are random bytes, so the value is not
+ * compressed.
+ */
+public class CachedHistoryCodec extends BaseCodec {
+
+    public static final CachedHistoryCodec INSTANCE = new CachedHistoryCodec();
+
+    private static final int MAGIC = 0x4c434348; // "LCCH"
+    private static final int VERSION = 1;
+    private static final int FIXED_HEADER_SIZE = 20;
+    private static final int CARRIED_PAGE = 0;
+    private static final byte NEXT_RECORD = 0;
+    private static final byte LITERAL = 1;
+
+    private final Encoder encoder = in -> Unpooled.wrappedBuffer(encode((CachedHistory) in));
+
+    private final Decoder<Object> decoder = (buf, state) -> {
+        byte[] bytes = new byte[buf.readableBytes()];
+        buf.readBytes(bytes);
+        return decode(ByteBuffer.wrap(bytes));
+    };
+
+    @Override
+    public Decoder<Object> getValueDecoder() {
+        return decoder;
+    }
+
+    @Override
+    public Encoder getValueEncoder() {
+        return encoder;
+    }
+
+    public static byte[] encode(CachedHistory history) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(FIXED_HEADER_SIZE + history.getPages().size() * 64 + history.getCommits().size() * 22);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(history.getFetchedAt());
+            boolean hasCarried = !history.getCarried().isEmpty();
+            out.writeInt(history.getPages().size() + (hasCarried ? 1 : 0));
+            for (CommitPage page : history.getPages()) {
+                writeSection(out, page.getPage(), page.getCommits(), page.getEtag(), page.getLastModified());
+            }
+            if (hasCarried) {
+                writeSection(out, CARRIED_PAGE, history.getCarried(), null, null);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // Only thrown by streams that write to memory.
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the history, or null if the value was written in an unknown format
+     */
+    public static CachedHistory decode(ByteBuffer value) {
+        return decodePrefix(value, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Decodes the first pages of a history, as many as it takes to hold at least
+     * {@code commits} commits, or the whole history if it is shorter. A history
+     * cut short lacks its carried commits, so it can serve lookups near the head
+     * but must not be taken for the complete history.
+     *
+     * @param value the value, or at least its first {@link #prefixLength} bytes
+     * @return the history, or null if the value was written in an unknown format
+     */
+    public static CachedHistory decodePrefix(ByteBuffer value, int commits) {
+        try {
+            value = value.slice();
+            if (value.remaining() < FIXED_HEADER_SIZE || value.getInt() != MAGIC || value.getInt() != VERSION) {
+                return null;
+            }
+            long fetchedAt = value.getLong();
+            int sectionCount = value.getInt();
+
+            List<CommitPage> pages = new ArrayList<>(Math.min(sectionCount, 1024));
+            List<Commit> carried = Collections.emptyList();
+            int decoded = 0;
+            for (int section = 0; section < sectionCount && decoded < commits; section++) {
+                int page = value.getInt();
+                int count = value.getInt();
+                value.getInt();
+                String etag = readString(value);
+                String lastModified = readString(value);
+
+                List<Commit> sectionCommits = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    sectionCommits.add(readRecord(value));
+                }
+                decoded += count;
+                if (page == CARRIED_PAGE) {
+                    carried = sectionCommits;
+                } else {
+                    pages.add(new CommitPage(page, sectionCommits, etag, lastModified));
+                }
+            }
+            return new CachedHistory(pages, carried, fetchedAt);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param start the first bytes of a value
+     * @return how many bytes at the start of the value {@link #decodePrefix} needs
+     * to decode the given number of commits; 0 if that cannot be told from the
+     * bytes given, because they end before the last page needed starts, or -1 for
+     * an unknown format
+     */
+    public static int prefixLength(ByteBuffer start, int commits) {
+        ByteBuffer value = start.slice();
+        if (value.remaining() < FIXED_HEADER_SIZE || value.getInt(0) != MAGIC || value.getInt(4) != VERSION) {
+            return -1;
+        }
+        try {
+            int sectionCount = value.position(FIXED_HEADER_SIZE - 4).getInt();
+            int decoded = 0;
+            for (int section = 0; section < sectionCount && decoded < commits; section++) {
+                value.getInt();
+                decoded += value.getInt();
+                int recordsLength = value.getInt();
+                readString(value);
+                readString(value);
+                if (section + 1 < sectionCount && decoded < commits) {
+                    // Skipping past the end of the bytes given fails, like reading would.
+                    value.position(value.position() + recordsLength);
+                } else {
+                    return value.position() + recordsLength;
+                }
+            }
+            return value.position();
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return 0;
+        }
+    }
+
+    private static void writeSection(DataOutputStream out, int page, List<Commit> commits, String etag, String lastModified) throws IOException {
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(commits.size() * 22);
+        DataOutputStream records = new DataOutputStream(recordBytes);
+        for (int i = 0; i < commits.size(); i++) {
+            // Records only refer to the next record within their page, so a page decodes on its own.
+            writeRecord(records, commits.get(i), i + 1 < commits.size() ? commits.get(i + 1) : null);
+        }
+        out.writeInt(page);
+        out.writeInt(commits.size());
+        out.writeInt(records.size());
+        writeString(out, etag);
+        writeString(out, lastModified);
+        recordBytes.writeTo(out);
+    }
+
+    private static void writeRecord(DataOutputStream out, Commit commit, Commit next) throws IOException {
+        writeSha(out, commit.getSha());
+        int parentCount = commit.getParentCount();
+        // Parent counts fit a byte in practice; larger ones take more, as in a varint.
+        while (parentCount >= 0x80) {
+            out.writeByte((parentCount & 0x7f) | 0x80);
+            parentCount >>>= 7;
+        }
+        out.writeByte(parentCount);
+        for (int i = 0; i < commit.getParentCount(); i++) {
+            Sha parent = commit.getParent(i);
+            if (next != null && parent.equals(next.getSha())) {
+                out.writeByte(NEXT_RECORD);
+            } else {
+                out.writeByte(LITERAL);
+                writeSha(out, parent);
+            }
+        }
+    }
+
+    private static Commit readRecord(ByteBuffer in) {
+        Sha sha = readSha(in);
+        int parentCount = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            parentCount |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        Sha[] parents = new Sha[parentCount];
+        for (int i = 0; i < parentCount; i++) {
+            byte kind = in.get();
+            if (kind == NEXT_RECORD) {
+                parents[i] = readSha(in.duplicate().position(recordEnd(in, parentCount - i - 1)));
+            } else if (kind == LITERAL) {
+                parents[i] = readSha(in);
+            } else {
+                throw new IllegalArgumentException("Unknown parent kind " + kind);
+            }
+        }
+        return new Commit(sha, parents);
+    }
+
+    /**
+     * @return the position just past the record whose remaining parents start at the buffer's position
+     */
+    private static int recordEnd(ByteBuffer in, int parentsLeft) {
+        int position = in.position();
+        for (int i = 0; i < parentsLeft; i++) {
+            position += in.get(position) == LITERAL ? 1 + Sha.BYTES : 1;
+        }
+        return position;
+    }
+
+    private static void writeSha(DataOutputStream out, Sha sha) throws IOException {
+        out.writeLong(sha.getHigh());
+        out.writeLong(sha.getMiddle());
+        out.writeInt(sha.getLow());
+    }
+
+    private static Sha readSha(ByteBuffer in) {
+        return new Sha(in.getLong(), in.getLong(), in.getInt());
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getShort();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
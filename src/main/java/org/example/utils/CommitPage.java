@@ -0,0 +1,64 @@
+package org.example.utils;
+
+import org.example.graph.Commit;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * One page of a branch's /commits listing together with the validators GitHub
+ * returned for it, so the page can later be revalidated with a conditional GET.
+ */
+public class CommitPage implements Serializable {
+
+    private final int page;
+    private final List<Commit> commits;
+    private final String etag;
+    private final String lastModified;
+
+    public CommitPage(int page, List<Commit> commits, String etag, String lastModified) {
+        this.page = page;
+        this.commits = commits;
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    public int getPage() {
+        return page;
+    }
+
+    public List<Commit> getCommits() {
+        return commits;
+    }
+
+    public boolean isEmpty() {
+        return commits.isEmpty();
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CommitPage)) {
+            return false;
+        }
+        CommitPage other = (CommitPage) o;
+        return page == other.page && commits.equals(other.commits)
+                && Objects.equals(etag, other.etag) && Objects.equals(lastModified, other.lastModified);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(page, commits, etag, lastModified);
+    }
+}
@@ -0,0 +1,381 @@
+package org.example.utils;
+
+import org.example.graph.Commit;
+import org.example.graph.CommitRecord;
+import org.example.graph.CommitSource;
+import org.example.graph.Sha;
+import org.example.graph.ShaIndex;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * The commit graph learned from GitHub for one repository, kept on disk so it
+ * survives restarts and Redis flushes. Parent links never change, so everything
+ * ever fetched stays valid; only branch heads go stale.
+ * <p>
+ * The snapshot is a directory of memory-mapped files, in the spirit of git's own
+ * commit-graph:
+ * <ul>
+ *     <li>{@code shas}: a fixed-width table of 20-byte SHAs; a commit's id is its row</li>
+ *     <li>{@code commits}: a header with the row and edge counts, then per row the
+ *     offset and count of its parents in {@code edges} (-1 while its parents are
+ *     unknown) and its generation number</li>
+ *     <li>{@code edges}: the parent ids of every row, one int each</li>
+ *     <li>{@code heads}: the last head seen for each branch and when it was seen</li>
+ * </ul>
+ * Rows are only appended, or filled in when a commit seen as a parent is fetched
+ * itself, and the counts in the header are written last, so a crash loses at most
+ * the last batch. A generation number is known once the whole ancestry of a commit
+ * has been fetched; it is 0 until then.
+ * <p>
+ * Only one process may have a snapshot open at a time.
+ */
+public class CommitSnapshot implements CommitSource, AutoCloseable {
+
+    private static final int MAGIC = 0x4c434353; // "LCCS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int ROW_SIZE = 12;
+    private static final int INITIAL_ROWS = 1 << 12;
+    private static final int UNEXPANDED = -1;
+    private static final long HEADS_WRITE_INTERVAL_MILLIS = 10_000;
+
+    private final Path dir;
+    private final FileChannel shaChannel;
+    private final FileChannel commitChannel;
+    private final FileChannel edgeChannel;
+    private final FileLock lock;
+    private MappedByteBuffer shas;
+    private MappedByteBuffer commits;
+    private MappedByteBuffer edges;
+    private final ShaIndex index = new ShaIndex();
+    private int rowCount;
+    private int edgeCount;
+    // Children are only needed to pass generation numbers on, so they live in memory:
+    // the edges pointing at each row, chained, and the row each edge belongs to.
+    private int[] firstChild = new int[0];
+    private int[] nextChild = new int[0];
+    private int[] edgeOwner = new int[0];
+    private final Map<String, Head> heads = new HashMap<>();
+    private long headsWrittenAt;
+
+    private CommitSnapshot(Path dir, FileChannel shaChannel, FileChannel commitChannel, FileChannel edgeChannel, FileLock lock) {
+        this.dir = dir;
+        this.shaChannel = shaChannel;
+        this.commitChannel = commitChannel;
+        this.edgeChannel = edgeChannel;
+        this.lock = lock;
+    }
+
+    /**
+     * Opens the snapshot in the given directory, creating it if needed.
+     */
+    public static CommitSnapshot open(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        FileChannel commitChannel = FileChannel.open(dir.resolve("commits"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileLock lock;
+        try {
+            lock = commitChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Held by this process already.
+            lock = null;
+        }
+        if (lock == null) {
+            commitChannel.close();
+            throw new IOException("Commit snapshot " + dir + " is already open");
+        }
+        FileChannel shaChannel = FileChannel.open(dir.resolve("shas"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileChannel edgeChannel = FileChannel.open(dir.resolve("edges"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        CommitSnapshot snapshot = new CommitSnapshot(dir, shaChannel, commitChannel, edgeChannel, lock);
+        try {
+            snapshot.load();
+        } catch (IOException | RuntimeException e) {
+            snapshot.close();
+            throw e;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Records fetched commits. Commits already known are skipped.
+     */
+    public synchronized void append(Collection<Commit> fetched) throws IOException {
+        for (Commit commit : fetched) {
+            int id = idOf(commit.getSha());
+            if (edgeStart(id) != UNEXPANDED) {
+                continue;
+            }
+            int start = edgeCount;
+            ensureEdgeCapacity(edgeCount + commit.getParentCount());
+            for (int i = 0; i < commit.getParentCount(); i++) {
+                int parent = idOf(commit.getParent(i));
+                edges.putInt((start + i) * 4, parent);
+                linkChild(parent, id, start + i);
+            }
+            edgeCount += commit.getParentCount();
+            commits.putInt(rowOffset(id) + 4, commit.getParentCount());
+            commits.putInt(rowOffset(id), start);
+            updateGenerations(id);
+        }
+        writeHeader();
+    }
+
+    /**
+     * @return the commit with its generation number, or null if its parents have not been fetched
+     */
+    @Override
+    public synchronized CommitRecord readCommit(Sha sha) {
+        int id = index.indexOf(sha);
+        if (id < 0 || edgeStart(id) == UNEXPANDED) {
+            return null;
+        }
+        Sha[] parents = new Sha[edgeCountOf(id)];
+        for (int i = 0; i < parents.length; i++) {
+            parents[i] = index.get(edges.getInt((edgeStart(id) + i) * 4));
+        }
+        int generation = generationOf(id);
+        return new CommitRecord(new Commit(sha, parents), generation == 0 ? CommitRecord.GENERATION_INFINITY : generation, 0);
+    }
+
+    /**
+     * @return the generation number of the commit, or 0 if part of its history has not been fetched
+     */
+    public synchronized int getGeneration(Sha sha) {
+        int id = index.indexOf(sha);
+        return id < 0 ? 0 : generationOf(id);
+    }
+
+    public synchronized int size() {
+        return rowCount;
+    }
+
+    /**
+     * Remembers where a branch pointed when it was last fetched.
+     */
+    public synchronized void setHead(String branch, Sha head, long fetchedAt) throws IOException {
+        Head old = heads.put(branch, new Head(head, fetchedAt));
+        // Rewriting the file for every query would cost more than the freshness it keeps.
+        if (old != null && old.sha.equals(head) && fetchedAt - headsWrittenAt < HEADS_WRITE_INTERVAL_MILLIS) {
+            return;
+        }
+        headsWrittenAt = fetchedAt;
+        writeHeads();
+    }
+
+    /**
+     * Forgets the head of a branch, e.g. after it was deleted. Its commits stay.
+     */
+    public synchronized void removeHead(String branch) throws IOException {
+        if (heads.remove(branch) != null) {
+            writeHeads();
+        }
+    }
+
+    private void writeHeads() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (Map.Entry<String, Head> entry : heads.entrySet()) {
+            content.append(entry.getValue().sha.toHex()).append(' ').append(entry.getValue().fetchedAt).append(' ').append(entry.getKey()).append('\n');
+        }
+        Path temp = dir.resolve("heads.tmp");
+        Files.writeString(temp, content, StandardCharsets.UTF_8);
+        Files.move(temp, dir.resolve("heads"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return the head of the branch if it was fetched less than maxAge milliseconds ago, null otherwise
+     */
+    public synchronized Sha getHead(String branch, long maxAge) {
+        Head head = heads.get(branch);
+        return head != null && System.currentTimeMillis() - head.fetchedAt < maxAge ? head.sha : null;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (commits != null) {
+                shas.force();
+                edges.force();
+                commits.force();
+            }
+            lock.release();
+        } finally {
+            shaChannel.close();
+            edgeChannel.close();
+            commitChannel.close();
+        }
+    }
+
+    private void load() throws IOException {
+        boolean created = commitChannel.size() == 0;
+        shas = map(shaChannel, Math.max(shaChannel.size(), (long) INITIAL_ROWS * Sha.BYTES));
+        commits = map(commitChannel, Math.max(commitChannel.size(), HEADER_SIZE + (long) INITIAL_ROWS * ROW_SIZE));
+        edges = map(edgeChannel, Math.max(edgeChannel.size(), (long) INITIAL_ROWS * 8));
+        if (created) {
+            writeHeader();
+        } else if (commits.getInt(0) != MAGIC || commits.getInt(4) != VERSION) {
+            throw new IOException("Not a commit snapshot: " + dir);
+        }
+
+        int rows = commits.getInt(8);
+        edgeCount = commits.getInt(12);
+        firstChild = new int[Math.max(INITIAL_ROWS, rows)];
+        Arrays.fill(firstChild, -1);
+        nextChild = new int[Math.max(INITIAL_ROWS, edgeCount)];
+        edgeOwner = new int[nextChild.length];
+        for (int id = 0; id < rows; id++) {
+            index.add(Sha.fromBytes(readSha(id), 0));
+        }
+        rowCount = rows;
+        for (int id = 0; id < rows; id++) {
+            int start = edgeStart(id);
+            if (start != UNEXPANDED && start + edgeCountOf(id) > edgeCount) {
+                // Filled in after the last header write of a crashed process.
+                commits.putInt(rowOffset(id), UNEXPANDED);
+            } else {
+                for (int i = 0; start != UNEXPANDED && i < edgeCountOf(id); i++) {
+                    linkChild(edges.getInt((start + i) * 4), id, start + i);
+                }
+            }
+        }
+
+        Path headsFile = dir.resolve("heads");
+        if (Files.exists(headsFile)) {
+            for (String line : Files.readAllLines(headsFile, StandardCharsets.UTF_8)) {
+                String[] parts = line.split(" ", 3);
+                if (parts.length == 3) {
+                    heads.put(parts[2], new Head(Sha.fromHex(parts[0]), Long.parseLong(parts[1])));
+                }
+            }
+        }
+    }
+
+    private int idOf(Sha sha) throws IOException {
+        int id = index.indexOf(sha);
+        if (id >= 0) {
+            return id;
+        }
+        id = index.add(sha);
+        ensureRowCapacity(id + 1);
+        byte[] bytes = sha.toBytes();
+        shas.put(id * Sha.BYTES, bytes, 0, Sha.BYTES);
+        commits.putInt(rowOffset(id), UNEXPANDED);
+        commits.putInt(rowOffset(id) + 4, 0);
+        commits.putInt(rowOffset(id) + 8, 0);
+        rowCount = id + 1;
+        return id;
+    }
+
+    /**
+     * Gives the commit its generation number if all of its parents have one, and
+     * passes numbers on to the children that were only waiting for it.
+     */
+    private void updateGenerations(int id) {
+        Deque<Integer> work = new ArrayDeque<>();
+        work.push(id);
+        while (!work.isEmpty()) {
+            int current = work.pop();
+            if (edgeStart(current) == UNEXPANDED || generationOf(current) != 0) {
+                continue;
+            }
+            int generation = 1;
+            for (int i = 0; i < edgeCountOf(current) && generation > 0; i++) {
+                int parentGeneration = generationOf(edges.getInt((edgeStart(current) + i) * 4));
+                generation = parentGeneration == 0 ? 0 : Math.max(generation, parentGeneration + 1);
+            }
+            if (generation == 0) {
+                continue;
+            }
+            commits.putInt(rowOffset(current) + 8, generation);
+            for (int edge = current < firstChild.length ? firstChild[current] : -1; edge >= 0; edge = nextChild[edge]) {
+                work.push(edgeOwner[edge]);
+            }
+        }
+    }
+
+    /**
+     * Records that the given edge of the child points at the parent.
+     */
+    private void linkChild(int parent, int child, int edge) {
+        if (parent >= firstChild.length) {
+            int old = firstChild.length;
+            firstChild = Arrays.copyOf(firstChild, Math.max(parent + 1, old * 2));
+            Arrays.fill(firstChild, old, firstChild.length, -1);
+        }
+        if (edge >= nextChild.length) {
+            nextChild = Arrays.copyOf(nextChild, Math.max(edge + 1, nextChild.length * 2));
+            edgeOwner = Arrays.copyOf(edgeOwner, nextChild.length);
+        }
+        nextChild[edge] = firstChild[parent];
+        edgeOwner[edge] = child;
+        firstChild[parent] = edge;
+    }
+
+    private void writeHeader() {
+        commits.putInt(0, MAGIC);
+        commits.putInt(4, VERSION);
+        commits.putInt(12, edgeCount);
+        commits.putInt(8, rowCount);
+    }
+
+    private int edgeStart(int id) {
+        return commits.getInt(rowOffset(id));
+    }
+
+    private int edgeCountOf(int id) {
+        return commits.getInt(rowOffset(id) + 4);
+    }
+
+    private int generationOf(int id) {
+        return commits.getInt(rowOffset(id) + 8);
+    }
+
+    private static int rowOffset(int id) {
+        return HEADER_SIZE + id * ROW_SIZE;
+    }
+
+    private byte[] readSha(int id) {
+        byte[] bytes = new byte[Sha.BYTES];
+        shas.get(id * Sha.BYTES, bytes, 0, Sha.BYTES);
+        return bytes;
+    }
+
+    private void ensureRowCapacity(int rows) throws IOException {
+        if ((long) rows * Sha.BYTES > shas.capacity()) {
+            shas = map(shaChannel, (long) shas.capacity() * 2);
+        }
+        if (HEADER_SIZE + (long) rows * ROW_SIZE > commits.capacity()) {
+            commits = map(commitChannel, HEADER_SIZE + ((long) commits.capacity() - HEADER_SIZE) * 2);
+        }
+    }
+
+    private void ensureEdgeCapacity(int count) throws IOException {
+        if ((long) count * 4 > edges.capacity()) {
+            edges = map(edgeChannel, Math.max((long) edges.capacity() * 2, (long) count * 4));
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long size) throws IOException {
+        // Mapping past the end of the file grows it.
+        return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private static class Head {
+        private final Sha sha;
+        private final long fetchedAt;
+
+        private Head(Sha sha, long fetchedAt) {
+            this.sha = sha;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+}
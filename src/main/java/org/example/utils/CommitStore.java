@@ -0,0 +1,166 @@
+package org.example.utils;
+
+import org.example.graph.Commit;
+import org.example.graph.Sha;
+import org.redisson.api.RMap;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.redisson.client.codec.StringCodec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * The commits of one repository learned from GitHub, shared in Redis by every
+ * branch and every JVM: a hash from each commit's SHA to its parents, and a small
+ * hash from each branch to its last head. Parent links never change, so a commit
+ * learned through one branch serves walks of all the others, and a branch only
+ * costs its head pointer on top of the commits it shares.
+ * <p>
+ * Commits are read the way a walk needs them: {@link #load} follows the parents
+ * of the given commits inside Redis, in one round trip per batch, instead of
+ * asking for one commit at a time.
+ * <p>
+ * Both hashes expire {@value #RETAIN_DAYS} days after the repository was last
+ * written to.
+ */
+public class CommitStore {
+
+    private static final String COMMITS_PREFIX = "githubCommits:";
+    private static final String HEADS_PREFIX = "githubHeads:";
+    private static final long RETAIN_DAYS = 7;
+
+    /**
+     * Walks the parents of the given SHAs breadth-first, returning each commit it
+     * knows as its SHA, a two-byte parent count and the parents' SHAs, until the
+     * limit is reached. Commits it does not know end their branch of the walk.
+     */
+    private static final String LOAD_SCRIPT = ""
+            + "local limit = tonumber(ARGV[1]) "
+            + "local starts = ARGV[2] "
+            + "local queue, seen, out = {}, {}, {} "
+            + "for i = 1, #starts, 20 do "
+            + "  local sha = string.sub(starts, i, i + 19) "
+            + "  if not seen[sha] then seen[sha] = true; queue[#queue + 1] = sha end "
+            + "end "
+            + "local cursor = 1 "
+            + "while cursor <= #queue and #out < limit do "
+            + "  local sha = queue[cursor] "
+            + "  cursor = cursor + 1 "
+            + "  local parents = redis.call('HGET', KEYS[1], sha) "
+            + "  if parents then "
+            + "    local count = math.floor(#parents / 20) "
+            + "    out[#out + 1] = sha .. string.char(math.floor(count / 256), count % 256) .. parents "
+            + "    for i = 1, #parents, 20 do "
+            + "      local parent = string.sub(parents, i, i + 19) "
+            + "      if not seen[parent] then seen[parent] = true; queue[#queue + 1] = parent end "
+            + "    end "
+            + "  end "
+            + "end "
+            + "return table.concat(out)";
+
+    private final RedissonClient redissonClient;
+    private final String commitsKey;
+    private final RMap<byte[], byte[]> commits;
+    private final RMap<String, String> heads;
+
+    public CommitStore(RedissonClient redissonClient, String owner, String repo) {
+        this.redissonClient = redissonClient;
+        this.commitsKey = COMMITS_PREFIX + owner + "/" + repo;
+        this.commits = redissonClient.getMap(commitsKey, ByteArrayCodec.INSTANCE);
+        this.heads = redissonClient.getMap(HEADS_PREFIX + owner + "/" + repo, StringCodec.INSTANCE);
+    }
+
+    /**
+     * Adds the commits to the store. Commits it already has are written again,
+     * which is harmless, since a SHA always has the same parents.
+     */
+    public void putAll(Collection<Commit> newCommits) {
+        if (newCommits.isEmpty()) {
+            return;
+        }
+        Map<byte[], byte[]> entries = new HashMap<>(newCommits.size() * 2);
+        for (Commit commit : newCommits) {
+            byte[] parents = new byte[commit.getParentCount() * Sha.BYTES];
+            for (int i = 0; i < commit.getParentCount(); i++) {
+                commit.getParent(i).writeTo(parents, i * Sha.BYTES);
+            }
+            entries.put(commit.getSha().toBytes(), parents);
+        }
+        commits.putAll(entries);
+        commits.expire(Duration.ofDays(RETAIN_DAYS));
+    }
+
+    /**
+     * Reads the given commits and their ancestors, nearest first, as far as the
+     * store knows them and up to {@code limit} commits.
+     */
+    public List<Commit> load(Collection<Sha> starts, int limit) {
+        if (starts.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        byte[] startBytes = new byte[starts.size() * Sha.BYTES];
+        int offset = 0;
+        for (Sha sha : starts) {
+            sha.writeTo(startBytes, offset);
+            offset += Sha.BYTES;
+        }
+        byte[] result = redissonClient.getScript(ByteArrayCodec.INSTANCE).eval(RScript.Mode.READ_ONLY, LOAD_SCRIPT, RScript.ReturnType.VALUE,
+                List.of(commitsKey), String.valueOf(limit).getBytes(StandardCharsets.US_ASCII), startBytes);
+        return result == null ? Collections.emptyList() : parse(result);
+    }
+
+    /**
+     * Records the head of a branch, as seen at the given time.
+     */
+    public void setHead(String branch, Sha head, long seenAt) {
+        heads.fastPut(branch, head.toHex() + "|" + seenAt);
+        heads.expire(Duration.ofDays(RETAIN_DAYS));
+    }
+
+    /**
+     * @return the last head recorded for the branch, or null if there is none or it
+     * was seen more than {@code maxAgeMillis} ago
+     */
+    public Sha getHead(String branch, long maxAgeMillis) {
+        String value = heads.get(branch);
+        if (value == null) {
+            return null;
+        }
+        int separator = value.indexOf('|');
+        try {
+            long seenAt = Long.parseLong(value.substring(separator + 1));
+            if (separator != Sha.HEX_LENGTH || System.currentTimeMillis() - seenAt >= maxAgeMillis) {
+                return null;
+            }
+            return Sha.fromHex(value.substring(0, separator));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Forgets the head of a branch, e.g. after it was deleted or force-pushed. Its
+     * commits stay, as other branches may share them.
+     */
+    public void removeHead(String branch) {
+        heads.fastRemove(branch);
+    }
+
+    private static List<Commit> parse(byte[] bytes) {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        List<Commit> result = new ArrayList<>(bytes.length / (2 * Sha.BYTES + 2));
+        while (in.remaining() >= Sha.BYTES + 2) {
+            Sha sha = new Sha(in.getLong(), in.getLong(), in.getInt());
+            Sha[] parents = new Sha[in.getShort() & 0xffff];
+            for (int i = 0; i < parents.length; i++) {
+                parents[i] = new Sha(in.getLong(), in.getLong(), in.getInt());
+            }
+            result.add(new Commit(sha, parents));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,68 @@
+package org.example.utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The priority of each call in flight in a {@link SingleFlight}: the highest
+ * priority of the callers waiting for it. A background call that an interactive
+ * caller joins then goes on as an interactive one, instead of holding the caller
+ * back behind the background reserve.
+ * <p>
+ * Every caller joins the key before running or joining the call, and leaves it
+ * once the call returned; the leader reads the priority while the call runs.
+ */
+public class FlightPriorities {
+
+    private final RateLimitScheduler scheduler;
+    private final Map<String, Flight> flights = new HashMap<>();
+
+    public FlightPriorities(RateLimitScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @return the priority of the flight, raised to the caller's if that is higher
+     */
+    public Supplier<RateLimitScheduler.Priority> join(String key, RateLimitScheduler.Priority priority) {
+        Flight flight;
+        boolean raised;
+        synchronized (flights) {
+            flight = flights.computeIfAbsent(key, k -> new Flight(priority));
+            flight.callers++;
+            // Priorities are declared from the highest down.
+            raised = priority.compareTo(flight.priority) < 0;
+            if (raised) {
+                flight.priority = priority;
+            }
+        }
+        if (raised) {
+            scheduler.priorityRaised();
+        }
+        return flight;
+    }
+
+    public void leave(String key) {
+        synchronized (flights) {
+            Flight flight = flights.get(key);
+            if (flight != null && --flight.callers == 0) {
+                flights.remove(key);
+            }
+        }
+    }
+
+    private static class Flight implements Supplier<RateLimitScheduler.Priority> {
+        private volatile RateLimitScheduler.Priority priority;
+        private int callers;
+
+        private Flight(RateLimitScheduler.Priority priority) {
+            this.priority = priority;
+        }
+
+        @Override
+        public RateLimitScheduler.Priority get() {
+            return priority;
+        }
+    }
+}
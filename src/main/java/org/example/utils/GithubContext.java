@@ -0,0 +1,273 @@
+package org.example.utils;
+
+import org.example.metrics.JmxMetricsRegistry;
+import org.example.metrics.MetricsRegistry;
+import org.redisson.Redisson;
+import org.redisson.api.RedissonClient;
+import org.redisson.config.Config;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived clients shared by every finder: one keep-alive HTTP/2 client for the
+ * GitHub API, one pooled Redis client behind the {@link CacheUtil}, and the executor
+ * used to prefetch pages, which runs at most {@value #PAGE_THREADS} fetches at once
+ * and queues the rest. Creating these once avoids a Redis connection setup and
+ * a TLS handshake per query. The Redis side is connected on first use.
+ * <p>
+ * The context also tracks the queries and page fetches in flight, so finders
+ * sharing it coalesce identical work.
+ * <p>
+ * Every request made through the context waits for rate-limit budget in its
+ * {@link RateLimitScheduler}, which may also spread requests over a pool of tokens.
+ * <p>
+ * Metrics of everything done through the context go to its {@link MetricsRegistry},
+ * by default the JVM-wide {@link JmxMetricsRegistry}.
+ * <p>
+ * With a snapshot directory set, the context also keeps one {@link CommitSnapshot}
+ * per repository, mapped on first use and shared by the finders of that repository.
+ * <p>
+ * With the commit store enabled, the commits and branch heads of each repository
+ * are also shared through Redis in a {@link CommitStore}.
+ */
+public class GithubContext implements AutoCloseable {
+
+    private static final String DEFAULT_REDIS_ADDRESS = "redis://localhost:6379";
+    private static final int DEFAULT_REDIS_POOL_SIZE = 32;
+    static final int PAGE_THREADS = 32;
+    public static final String DEFAULT_API_URL = "https://api.github.com";
+
+    private static GithubContext defaultContext;
+
+    private final String redisAddress;
+    private final int redisPoolSize;
+    private final HttpClient httpClient;
+    private final ExecutorService pageExecutor;
+    private final SingleFlight<String, Collection<String>> queryFlights = new SingleFlight<>();
+    private final SingleFlight<String, CommitPage> pageFlights = new SingleFlight<>();
+    private RedissonClient redissonClient;
+    private CacheUtil cacheUtil;
+    private volatile String apiUrl = DEFAULT_API_URL;
+    private volatile MetricsRegistry metrics = JmxMetricsRegistry.getDefault();
+    private volatile long cacheFreshMillis = CacheUtil.FRESH_MILLIS;
+    private final RateLimitScheduler scheduler = new RateLimitScheduler();
+    private final FlightPriorities queryPriorities = new FlightPriorities(scheduler);
+    private Path snapshotDirectory;
+    private final Map<String, CommitSnapshot> snapshots = new HashMap<>();
+    private boolean commitStoreEnabled;
+    private final Map<String, CommitStore> commitStores = new HashMap<>();
+    private boolean closed;
+
+    public GithubContext() {
+        this(DEFAULT_REDIS_ADDRESS, DEFAULT_REDIS_POOL_SIZE);
+    }
+
+    public GithubContext(String redisAddress, int redisPoolSize) {
+        this.redisAddress = redisAddress;
+        this.redisPoolSize = redisPoolSize;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        ThreadPoolExecutor pageExecutor = new ThreadPoolExecutor(PAGE_THREADS, PAGE_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "github-page-fetcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pageExecutor.allowCoreThreadTimeOut(true);
+        this.pageExecutor = pageExecutor;
+    }
+
+    /**
+     * @return the context shared by finders that were created without one
+     */
+    public static synchronized GithubContext getDefault() {
+        if (defaultContext == null || defaultContext.closed) {
+            defaultContext = new GithubContext();
+        }
+        return defaultContext;
+    }
+
+    public HttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * @return the base URL of the GitHub REST API, without a trailing slash
+     */
+    public String getApiUrl() {
+        return apiUrl;
+    }
+
+    /**
+     * Points the finders at another API endpoint, such as GitHub Enterprise
+     * ({@code https://host/api/v3}) or a local stub.
+     */
+    public void setApiUrl(String apiUrl) {
+        this.apiUrl = apiUrl.endsWith("/") ? apiUrl.substring(0, apiUrl.length() - 1) : apiUrl;
+    }
+
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sends the metrics to another registry, or nowhere with {@link MetricsRegistry#NONE}.
+     * Set it before the first query; the cache keeps the registry it was created with.
+     */
+    public void setMetrics(MetricsRegistry metrics) {
+        this.metrics = metrics;
+    }
+
+    public long getCacheFreshMillis() {
+        return cacheFreshMillis;
+    }
+
+    /**
+     * Sets how long cached histories and branch heads are trusted without asking
+     * GitHub, {@link CacheUtil#FRESH_MILLIS} by default. With a
+     * {@link org.example.GithubFinder.PushWebhookReceiver} keeping them current, it
+     * can be much longer.
+     */
+    public void setCacheFreshness(Duration freshness) {
+        this.cacheFreshMillis = freshness.toMillis();
+    }
+
+    /**
+     * @return the scheduler that keeps the requests made through this context within
+     * the rate limits; configure the token pool and the longest wait on it
+     */
+    public RateLimitScheduler getScheduler() {
+        return scheduler;
+    }
+
+    public ExecutorService getPageExecutor() {
+        return pageExecutor;
+    }
+
+    /**
+     * @return the in-flight merge-base queries, shared so identical queries run once
+     */
+    public SingleFlight<String, Collection<String>> getQueryFlights() {
+        return queryFlights;
+    }
+
+    /**
+     * @return the priorities of the in-flight merge-base queries, raised by the callers that join them
+     */
+    public FlightPriorities getQueryPriorities() {
+        return queryPriorities;
+    }
+
+    /**
+     * @return the in-flight page fetches, shared so identical pages are fetched once
+     */
+    public SingleFlight<String, CommitPage> getPageFlights() {
+        return pageFlights;
+    }
+
+    public synchronized RedissonClient getRedissonClient() {
+        if (closed) {
+            throw new IllegalStateException("The context is closed");
+        }
+        if (redissonClient == null) {
+            Config config = new Config();
+            config.useSingleServer()
+                    .setAddress(redisAddress)
+                    .setConnectionPoolSize(redisPoolSize)
+                    .setConnectionMinimumIdleSize(Math.min(redisPoolSize, 4));
+            redissonClient = Redisson.create(config);
+        }
+        return redissonClient;
+    }
+
+    public synchronized CacheUtil getCacheUtil() {
+        if (cacheUtil == null) {
+            cacheUtil = new CacheUtil(getRedissonClient(), metrics);
+        }
+        return cacheUtil;
+    }
+
+    /**
+     * Keeps the commits learned for each repository under the given directory, so
+     * they survive restarts. Null, the default, keeps nothing on disk.
+     */
+    public synchronized void setSnapshotDirectory(Path snapshotDirectory) {
+        this.snapshotDirectory = snapshotDirectory;
+    }
+
+    /**
+     * @return the snapshot of the repository, or null if snapshots are disabled or it cannot be opened
+     */
+    public synchronized CommitSnapshot getSnapshot(String owner, String repo) {
+        if (snapshotDirectory == null || closed) {
+            return null;
+        }
+        String key = owner + "/" + repo;
+        if (!snapshots.containsKey(key)) {
+            CommitSnapshot snapshot = null;
+            try {
+                snapshot = CommitSnapshot.open(snapshotDirectory.resolve(owner).resolve(repo));
+            } catch (IOException e) {
+                metrics.count(MetricsRegistry.CACHE_ERRORS, 1, "operation", "snapshot_open");
+            }
+            // A snapshot that failed to open is not retried on every query.
+            snapshots.put(key, snapshot);
+        }
+        return snapshots.get(key);
+    }
+
+    /**
+     * Shares the commits learned for each repository through Redis, across branches
+     * and JVMs, instead of only keeping a history per branch. Off by default.
+     */
+    public synchronized void setCommitStoreEnabled(boolean commitStoreEnabled) {
+        this.commitStoreEnabled = commitStoreEnabled;
+    }
+
+    /**
+     * @return the commit store of the repository, or null if the store is disabled
+     */
+    public synchronized CommitStore getCommitStore(String owner, String repo) {
+        if (!commitStoreEnabled || closed) {
+            return null;
+        }
+        return commitStores.computeIfAbsent(owner + "/" + repo, key -> new CommitStore(getRedissonClient(), owner, repo));
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (cacheUtil != null) {
+            cacheUtil.close();
+        }
+        if (redissonClient != null) {
+            redissonClient.shutdown();
+        }
+        pageExecutor.shutdownNow();
+        for (CommitSnapshot snapshot : snapshots.values()) {
+            try {
+                if (snapshot != null) {
+                    snapshot.close();
+                }
+            } catch (IOException e) {
+                metrics.count(MetricsRegistry.CACHE_ERRORS, 1, "operation", "snapshot_close");
+            }
+        }
+        snapshots.clear();
+        commitStores.clear();
+    }
+}
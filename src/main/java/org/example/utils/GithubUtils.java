@@ -2,42 +2,210 @@ package org.example.utils;
 
 import org.example.exceptions.GithubUnauthorizedToken;
 import org.example.exceptions.GithubConnectionException;
+import org.example.exceptions.GithubRateLimitExceededException;
 import org.example.exceptions.GithubRequestTimeoutException;
+import org.example.metrics.MetricsRegistry;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URI;
-import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.function.Supplier;
 
 public class GithubUtils {
 
-    public static HttpURLConnection createConnection(String urlString, String token) throws IOException {
-        try {
-            URI uri = new URI(urlString);
-            URL apiUrl = uri.toURL();
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+    private static final int MAX_RATE_LIMITED_ATTEMPTS = 5;
+    private static final int MAX_ERROR_BODY_BYTES = 64 * 1024;
 
-            HttpURLConnection connection = (HttpURLConnection) apiUrl.openConnection();
-            connection.setRequestMethod("GET");
-            connection.setRequestProperty("Accept", "application/vnd.github.v3+json");
-            connection.setConnectTimeout(10000);
-            connection.setReadTimeout(10000);
+    public static HttpRequest.Builder createRequest(String urlString, String token) throws IOException {
+        try {
+            HttpRequest.Builder request = HttpRequest.newBuilder(new URI(urlString))
+                    .GET()
+                    .header("Accept", "application/vnd.github.v3+json")
+                    .timeout(REQUEST_TIMEOUT);
 
             if (token != null && !token.isEmpty()) {
-                connection.setRequestProperty("Authorization", "token " + token);
+                request.header("Authorization", "token " + token);
             }
 
-            return connection;
+            return request;
         } catch (Exception e) {
-            throw new IOException("Failed to create connection", e);
+            throw new IOException("Failed to create request", e);
+        }
+    }
+
+    /**
+     * Sends the request on the shared client. The caller must close the body.
+     */
+    public static HttpResponse<InputStream> send(HttpClient client, HttpRequest request) throws IOException {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException interrupted = new InterruptedIOException("Interrupted while waiting for " + request.uri());
+            interrupted.initCause(e);
+            throw interrupted;
+        }
+    }
+
+    /**
+     * Sends an interactive request with the token it was built with.
+     *
+     * @see #send(GithubContext, String, HttpRequest, RateLimitScheduler.Priority, boolean)
+     */
+    public static HttpResponse<InputStream> send(GithubContext context, String endpoint, HttpRequest request) throws IOException {
+        return send(context, endpoint, request, RateLimitScheduler.Priority.INTERACTIVE, false);
+    }
+
+    /**
+     * Sends the request once the context's {@link RateLimitScheduler} has budget for
+     * it, and sends it again if it still hits a rate limit. Status, latency, body
+     * size and the budget left are reported to the context's metrics. The caller
+     * must close the body.
+     *
+     * @param endpoint the name the request is reported under, e.g. {@code commits}
+     * @param pooled   whether the request may be sent with a token of the pool
+     *                 instead of its own; not for requests that check the token itself.
+     *                 A pool token may not reach every repository the request's own
+     *                 token does, so a 401, 403 or 404 answered to a pool token is
+     *                 asked again with the request's own token
+     * @throws RateLimitExceededException if no token gets budget back within the scheduler's longest wait
+     */
+    public static HttpResponse<InputStream> send(GithubContext context, String endpoint, HttpRequest request, RateLimitScheduler.Priority priority, boolean pooled) throws IOException {
+        return send(context, endpoint, request, () -> priority, pooled);
+    }
+
+    /**
+     * Sends the request with a priority that may be raised while it waits for budget.
+     *
+     * @see #send(GithubContext, String, HttpRequest, RateLimitScheduler.Priority, boolean)
+     */
+    public static HttpResponse<InputStream> send(GithubContext context, String endpoint, HttpRequest request, Supplier<RateLimitScheduler.Priority> priority, boolean pooled) throws IOException {
+        RateLimitScheduler scheduler = context.getScheduler();
+        String resource = endpoint.equals("graphql") ? "graphql" : "core";
+        String token = tokenOf(request);
+        boolean mayPool = pooled;
+        for (int attempt = 1; ; attempt++) {
+            long waitStart = System.nanoTime();
+            RateLimitScheduler.Lease lease;
+            try {
+                lease = scheduler.acquire(token, resource, priority, mayPool);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                InterruptedIOException interrupted = new InterruptedIOException("Interrupted while waiting for rate-limit budget");
+                interrupted.initCause(e);
+                throw interrupted;
+            }
+            context.getMetrics().time(MetricsRegistry.RATE_LIMIT_WAIT, System.nanoTime() - waitStart, "priority", priority.get().name().toLowerCase(Locale.ROOT));
+
+            HttpResponse<InputStream> response;
+            String errorBody = null;
+            try {
+                response = sendMetered(context, endpoint, withToken(request, token, lease.getToken()));
+                if (response.statusCode() == 403) {
+                    // Secondary rate limits only say so in the body.
+                    byte[] body;
+                    try (InputStream in = response.body()) {
+                        body = in.readNBytes(MAX_ERROR_BODY_BYTES);
+                    }
+                    errorBody = new String(body, StandardCharsets.UTF_8);
+                    response = new MeteredResponse(response, new ByteArrayInputStream(body));
+                }
+            } catch (IOException | RuntimeException e) {
+                scheduler.release(lease);
+                throw e;
+            }
+
+            if (!scheduler.complete(lease, response.statusCode(), response.headers(), errorBody)) {
+                if (lease.getToken().equals(token) || !isRefusal(response.statusCode())) {
+                    return response;
+                }
+                context.getMetrics().count(MetricsRegistry.POOL_REFUSALS, 1, "endpoint", endpoint);
+                response.body().close();
+                mayPool = false;
+                continue;
+            }
+            context.getMetrics().count(MetricsRegistry.RATE_LIMITED, 1, "endpoint", endpoint);
+            response.body().close();
+            if (attempt == MAX_RATE_LIMITED_ATTEMPTS) {
+                throw new RateLimitExceededException("Still rate limited after " + attempt + " attempts at " + request.uri(), System.currentTimeMillis());
+            }
+        }
+    }
+
+    private static boolean isRefusal(int status) {
+        return status == HttpURLConnection.HTTP_UNAUTHORIZED || status == HttpURLConnection.HTTP_FORBIDDEN || status == HttpURLConnection.HTTP_NOT_FOUND;
+    }
+
+    private static HttpResponse<InputStream> sendMetered(GithubContext context, String endpoint, HttpRequest request) throws IOException {
+        MetricsRegistry metrics = context.getMetrics();
+        long start = System.nanoTime();
+        HttpResponse<InputStream> response;
+        try {
+            response = send(context.getHttpClient(), request);
+        } catch (IOException e) {
+            metrics.count(MetricsRegistry.HTTP_REQUESTS, 1, "endpoint", endpoint, "status", e instanceof HttpTimeoutException ? "timeout" : "error");
+            throw e;
+        }
+        metrics.time(MetricsRegistry.HTTP_LATENCY, System.nanoTime() - start, "endpoint", endpoint);
+        metrics.count(MetricsRegistry.HTTP_REQUESTS, 1, "endpoint", endpoint, "status", String.valueOf(response.statusCode()));
+        response.headers().firstValue("X-RateLimit-Remaining").ifPresent(remaining -> {
+            try {
+                String resource = response.headers().firstValue("X-RateLimit-Resource").orElse("core");
+                metrics.gauge(MetricsRegistry.RATE_LIMIT_REMAINING, Long.parseLong(remaining.trim()), "resource", resource);
+            } catch (NumberFormatException e) {
+                // Not worth failing the request over.
+            }
+        });
+        return new MeteredResponse(response, bytes -> metrics.count(MetricsRegistry.HTTP_BYTES, bytes, "endpoint", endpoint));
+    }
+
+    private static String tokenOf(HttpRequest request) {
+        String authorization = request.headers().firstValue("Authorization").orElse("");
+        int space = authorization.indexOf(' ');
+        return space < 0 ? authorization : authorization.substring(space + 1);
+    }
+
+    private static HttpRequest withToken(HttpRequest request, String token, String leased) {
+        if (leased.equals(token)) {
+            return request;
+        }
+        HttpRequest.Builder builder = HttpRequest.newBuilder(request, (name, value) -> !name.equalsIgnoreCase("Authorization"));
+        if (!leased.isEmpty()) {
+            builder.header("Authorization", "token " + leased);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Makes the request conditional, so GitHub answers 304 Not Modified if the
+     * resource still matches the validators of the cached copy.
+     */
+    public static void addValidators(HttpRequest.Builder request, String etag, String lastModified) {
+        if (etag != null) {
+            request.header("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            request.header("If-Modified-Since", lastModified);
         }
     }
 
-    public static boolean checkUserExistsByUsername(String username, String token) throws GithubUnauthorizedToken, GithubConnectionException, GithubRequestTimeoutException {
-        String url = "https://api.github.com/users/" + username;
+    public static boolean checkUserExistsByUsername(GithubContext context, String username, String token) throws GithubUnauthorizedToken, GithubConnectionException, GithubRequestTimeoutException {
+        String url = context.getApiUrl() + "/users/" + username;
 
         try {
-            HttpURLConnection connection = createConnection(url, token);
-            int responseCode = connection.getResponseCode();
+            int responseCode = getStatus(context, "users", url, token);
 
             if (responseCode == 200) {
                 return true;
@@ -46,19 +214,20 @@ public class GithubUtils {
             } else {
                 return false;
             }
-        } catch (java.net.SocketTimeoutException e) {
+        } catch (RateLimitExceededException e) {
+            throw new GithubRateLimitExceededException("Rate limit exhausted while checking user existence: " + username, e);
+        } catch (HttpTimeoutException e) {
             throw new GithubRequestTimeoutException("Request timed out while checking user existence: " + username, e);
         } catch (IOException e) {
             throw new GithubConnectionException("Connection failed while checking user existence: " + username, e);
         }
     }
 
-    public static boolean checkUserHasRepo(String username, String repo, String token) throws GithubUnauthorizedToken, GithubConnectionException, GithubRequestTimeoutException {
-        String url = String.format("https://api.github.com/repos/%s/%s", username, repo);
+    public static boolean checkUserHasRepo(GithubContext context, String username, String repo, String token) throws GithubUnauthorizedToken, GithubConnectionException, GithubRequestTimeoutException {
+        String url = String.format("%s/repos/%s/%s", context.getApiUrl(), username, repo);
 
         try {
-            HttpURLConnection connection = createConnection(url, token);
-            int responseCode = connection.getResponseCode();
+            int responseCode = getStatus(context, "repos", url, token);
 
             if (responseCode == 200) {
                 return true;
@@ -67,10 +236,21 @@ public class GithubUtils {
             } else {
                 return false;
             }
-        } catch (java.net.SocketTimeoutException e) {
+        } catch (RateLimitExceededException e) {
+            throw new GithubRateLimitExceededException("Rate limit exhausted while checking repository existence for user: " + username + " and repo: " + repo, e);
+        } catch (HttpTimeoutException e) {
             throw new GithubRequestTimeoutException("Request timed out while checking repository existence for user: " + username + " and repo: " + repo, e);
         } catch (IOException e) {
             throw new GithubConnectionException("Connection failed while checking repository existence for user: " + username + " and repo: " + repo, e);
         }
     }
+
+    private static int getStatus(GithubContext context, String endpoint, String url, String token) throws IOException {
+        HttpResponse<InputStream> response = send(context, endpoint, createRequest(url, token).build());
+        try (InputStream body = response.body()) {
+            // Draining the body lets the connection go back to the pool.
+            body.transferTo(OutputStream.nullOutputStream());
+            return response.statusCode();
+        }
+    }
 }
@@ -0,0 +1,121 @@
+package org.example.utils;
+
+import javax.net.ssl.SSLSession;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Optional;
+import java.util.function.LongConsumer;
+
+/**
+ * A response whose body reports how many bytes were read from it once it is closed,
+ * or whose body was already read and is replayed from memory.
+ */
+class MeteredResponse implements HttpResponse<InputStream> {
+
+    private final HttpResponse<InputStream> response;
+    private final InputStream body;
+
+    MeteredResponse(HttpResponse<InputStream> response, LongConsumer onClose) {
+        this.response = response;
+        this.body = response.body() == null ? null : new CountingInputStream(response.body(), onClose);
+    }
+
+    MeteredResponse(HttpResponse<InputStream> response, InputStream body) {
+        this.response = response;
+        this.body = body;
+    }
+
+    @Override
+    public int statusCode() {
+        return response.statusCode();
+    }
+
+    @Override
+    public HttpRequest request() {
+        return response.request();
+    }
+
+    @Override
+    public Optional<HttpResponse<InputStream>> previousResponse() {
+        return response.previousResponse();
+    }
+
+    @Override
+    public HttpHeaders headers() {
+        return response.headers();
+    }
+
+    @Override
+    public InputStream body() {
+        return body;
+    }
+
+    @Override
+    public Optional<SSLSession> sslSession() {
+        return response.sslSession();
+    }
+
+    @Override
+    public URI uri() {
+        return response.uri();
+    }
+
+    @Override
+    public HttpClient.Version version() {
+        return response.version();
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        private final LongConsumer onClose;
+        private long count;
+        private boolean closed;
+
+        private CountingInputStream(InputStream in, LongConsumer onClose) {
+            super(in);
+            this.onClose = onClose;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                if (!closed) {
+                    closed = true;
+                    onClose.accept(count);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package org.example.utils;
+
+import java.io.IOException;
+
+/**
+ * Raised by the {@link RateLimitScheduler} when no token will have budget again
+ * within the longest allowed wait.
+ */
+public class RateLimitExceededException extends IOException {
+
+    private final long resetAt;
+
+    public RateLimitExceededException(String message, long resetAt) {
+        super(message);
+        this.resetAt = resetAt;
+    }
+
+    /**
+     * @return when the first token gets budget again, in epoch milliseconds
+     */
+    public long getResetAt() {
+        return resetAt;
+    }
+}
@@ -0,0 +1,344 @@
+package org.example.utils;
+
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Hands out the right to send a request to GitHub, keeping every token within its
+ * rate limit instead of letting requests fail with 403 or 429.
+ * <p>
+ * The budget of each token and resource ({@code core}, {@code graphql}) is read
+ * from the {@code X-RateLimit-*} headers of its responses, and requests in flight
+ * are counted against it. When no token has budget left, callers wait until the
+ * earliest reset, or the {@code Retry-After} of a secondary limit, rather than
+ * fail. Requests that may use any token are spread over the configured pool,
+ * taking the token with the most budget left.
+ * <p>
+ * {@link Priority#BACKGROUND} requests leave the last tenth of a budget to
+ * {@link Priority#INTERACTIVE} ones, and do not start while interactive requests
+ * are waiting for budget. A waiting request whose priority is raised goes on as an
+ * interactive one.
+ */
+public class RateLimitScheduler {
+
+    public enum Priority {
+        INTERACTIVE,
+        BACKGROUND
+    }
+
+    private static final double BACKGROUND_RESERVE = 0.1;
+    private static final long SECONDARY_LIMIT_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long DEFAULT_MAX_WAIT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Map<String, Budget> budgets = new HashMap<>();
+    private List<String> pool = Collections.emptyList();
+    private long maxWaitMillis = DEFAULT_MAX_WAIT_MILLIS;
+    private int interactiveWaiting;
+
+    /**
+     * Sets tokens that may be used instead of the caller's own for requests that
+     * allow it. A request refused to a pool token is sent again with its own, so
+     * a pool token that cannot read a repository only costs an extra request.
+     */
+    public void setTokenPool(List<String> tokens) {
+        lock.lock();
+        try {
+            pool = List.copyOf(tokens);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return whether requests that allow it may be sent with a token other than their own
+     */
+    public boolean hasTokenPool() {
+        lock.lock();
+        try {
+            return !pool.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets how long a request may wait for budget before it fails with a
+     * {@link RateLimitExceededException}. Defaults to five minutes.
+     */
+    public void setMaxWait(Duration maxWait) {
+        lock.lock();
+        try {
+            maxWaitMillis = maxWait.toMillis();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until a token has budget for the request.
+     *
+     * @param token  the caller's own token, null or empty for anonymous requests
+     * @param pooled whether the request may use a token from the pool instead
+     * @return the lease to hand back to {@link #complete} once the response arrived
+     */
+    public Lease acquire(String token, String resource, Priority priority, boolean pooled) throws RateLimitExceededException, InterruptedException {
+        return acquire(token, resource, () -> priority, pooled);
+    }
+
+    /**
+     * Waits until a token has budget for the request, reading its priority again
+     * whenever it wakes up. Call {@link #priorityRaised()} after raising it.
+     *
+     * @see #acquire(String, String, Priority, boolean)
+     */
+    public Lease acquire(String token, String resource, Supplier<Priority> currentPriority, boolean pooled) throws RateLimitExceededException, InterruptedException {
+        lock.lock();
+        boolean counted = false;
+        try {
+            long deadline = System.currentTimeMillis() + maxWaitMillis;
+            while (true) {
+                Priority priority = currentPriority.get();
+                long now = System.currentTimeMillis();
+                List<String> candidates = candidates(token, pooled);
+                Budget best = null;
+                String bestToken = null;
+                long wakeAt = Long.MAX_VALUE;
+                for (String candidate : candidates) {
+                    Budget budget = budget(candidate, resource);
+                    budget.roll(now);
+                    if (budget.allows(priority, now, interactiveWaiting)) {
+                        if (best == null || budget.estimate() > best.estimate()) {
+                            best = budget;
+                            bestToken = candidate;
+                        }
+                    } else {
+                        wakeAt = Math.min(wakeAt, budget.wakeAt(priority, now));
+                    }
+                }
+                if (best != null) {
+                    best.inFlight++;
+                    return new Lease(bestToken, resource, best);
+                }
+                if (wakeAt > deadline) {
+                    throw new RateLimitExceededException("Rate limit of " + resource + " exhausted for every token until "
+                            + new Date(wakeAt == Long.MAX_VALUE ? deadline : wakeAt), wakeAt);
+                }
+                if (priority == Priority.INTERACTIVE && !counted) {
+                    interactiveWaiting++;
+                    counted = true;
+                }
+                changed.await(Math.max(1, wakeAt - now), TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            if (counted) {
+                interactiveWaiting--;
+                changed.signalAll();
+            }
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records the budget reported by a response.
+     *
+     * @param body the error message of a 403 response, or null
+     * @return true if the request was rejected by a rate limit and should be sent again
+     */
+    public boolean complete(Lease lease, int status, HttpHeaders headers, String body) {
+        lock.lock();
+        try {
+            Budget budget = lease.budget;
+            budget.inFlight--;
+            long now = System.currentTimeMillis();
+            OptionalLong limit = longHeader(headers, "X-RateLimit-Limit");
+            OptionalLong remaining = longHeader(headers, "X-RateLimit-Remaining");
+            OptionalLong reset = longHeader(headers, "X-RateLimit-Reset");
+            if (limit.isPresent()) {
+                budget.limit = limit.getAsLong();
+            }
+            // A count without the time it resets at could block the token for good.
+            if (remaining.isPresent() && reset.isPresent()) {
+                budget.remaining = remaining.getAsLong();
+                budget.resetAt = TimeUnit.SECONDS.toMillis(reset.getAsLong());
+            }
+
+            OptionalLong retryAfter = longHeader(headers, "Retry-After");
+            boolean exhausted = remaining.isPresent() && remaining.getAsLong() == 0;
+            boolean secondary = body != null && body.toLowerCase(Locale.ROOT).contains("rate limit");
+            boolean limited = status == 429 || (status == 403 && (exhausted || retryAfter.isPresent() || secondary));
+            if (limited) {
+                if (retryAfter.isPresent()) {
+                    budget.blockedUntil = now + TimeUnit.SECONDS.toMillis(retryAfter.getAsLong());
+                } else if (exhausted && budget.resetAt > now) {
+                    budget.blockedUntil = budget.resetAt;
+                } else {
+                    budget.blockedUntil = now + SECONDARY_LIMIT_BACKOFF_MILLIS;
+                }
+            }
+            changed.signalAll();
+            return limited;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wakes the waiting requests, so one whose priority was raised goes on with it.
+     */
+    public void priorityRaised() {
+        lock.lock();
+        try {
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gives the lease back without a response, e.g. when the request failed to send.
+     */
+    public void release(Lease lease) {
+        lock.lock();
+        try {
+            lease.budget.inFlight--;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the requests the token is known to have left for the resource, or -1 if unknown
+     */
+    public long getRemaining(String token, String resource) {
+        lock.lock();
+        try {
+            Budget budget = budgets.get(key(token, resource));
+            if (budget == null) {
+                return -1;
+            }
+            budget.roll(System.currentTimeMillis());
+            return budget.remaining;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<String> candidates(String token, boolean pooled) {
+        String own = token == null ? "" : token;
+        if (!pooled || pool.isEmpty()) {
+            return List.of(own);
+        }
+        List<String> candidates = new ArrayList<>(pool.size() + 1);
+        // An anonymous budget is tiny; with a pool it is not worth spending.
+        if (!own.isEmpty()) {
+            candidates.add(own);
+        }
+        for (String pooledToken : pool) {
+            if (!candidates.contains(pooledToken)) {
+                candidates.add(pooledToken);
+            }
+        }
+        return candidates;
+    }
+
+    private Budget budget(String token, String resource) {
+        return budgets.computeIfAbsent(key(token, resource), key -> new Budget());
+    }
+
+    private static String key(String token, String resource) {
+        return resource + "|" + (token == null ? "" : token);
+    }
+
+    private static OptionalLong longHeader(HttpHeaders headers, String name) {
+        Optional<String> value = headers.firstValue(name);
+        if (value.isEmpty()) {
+            return OptionalLong.empty();
+        }
+        try {
+            return OptionalLong.of(Long.parseLong(value.get().trim()));
+        } catch (NumberFormatException e) {
+            return OptionalLong.empty();
+        }
+    }
+
+    /**
+     * The right to send one request with a given token.
+     */
+    public static class Lease {
+        private final String token;
+        private final String resource;
+        private final Budget budget;
+
+        private Lease(String token, String resource, Budget budget) {
+            this.token = token;
+            this.resource = resource;
+            this.budget = budget;
+        }
+
+        /**
+         * @return the token to send the request with, empty for an anonymous request
+         */
+        public String getToken() {
+            return token;
+        }
+
+        public String getResource() {
+            return resource;
+        }
+    }
+
+    private static class Budget {
+        // -1 while no response has told us.
+        private long limit = -1;
+        private long remaining = -1;
+        private long resetAt;
+        private long blockedUntil;
+        private int inFlight;
+
+        private void roll(long now) {
+            if (resetAt > 0 && now >= resetAt) {
+                // A new window; the next response will tell the exact numbers.
+                remaining = limit;
+                resetAt = 0;
+            }
+        }
+
+        private long estimate() {
+            return remaining < 0 ? Long.MAX_VALUE - inFlight : remaining - inFlight;
+        }
+
+        private boolean allows(Priority priority, long now, int interactiveWaiting) {
+            if (now < blockedUntil) {
+                return false;
+            }
+            return priority == Priority.INTERACTIVE ? estimate() > 0 : interactiveWaiting == 0 && estimate() > reserve();
+        }
+
+        private long reserve() {
+            return limit < 0 ? 0 : (long) Math.ceil(limit * BACKGROUND_RESERVE);
+        }
+
+        /**
+         * @return when a request of the given priority may find budget again, if nothing else frees any
+         */
+        private long wakeAt(Priority priority, long now) {
+            if (now < blockedUntil) {
+                return blockedUntil;
+            }
+            if (estimate() > (priority == Priority.INTERACTIVE ? 0 : reserve())) {
+                // Only held back behind interactive requests, which signal when they get going.
+                return now + TimeUnit.SECONDS.toMillis(1);
+            }
+            return resetAt > now ? resetAt : now + TimeUnit.SECONDS.toMillis(1);
+        }
+    }
+}
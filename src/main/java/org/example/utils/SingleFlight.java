@@ -0,0 +1,48 @@
+package org.example.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Coalesces concurrent calls with the same key: the first caller runs the call,
+ * everybody who asks for the same key while it is running waits for its result
+ * instead of repeating the work.
+ */
+public class SingleFlight<K, V> {
+
+    public interface Call<V> {
+        V call() throws Throwable;
+    }
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Runs the call, or joins the call already running for the key.
+     *
+     * @throws ExecutionException wrapping whatever the call threw, for the leader and every follower alike
+     */
+    public V execute(K key, Call<V> call) throws ExecutionException, InterruptedException {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            return existing.get();
+        }
+
+        try {
+            V value = call.call();
+            flight.complete(value);
+            return value;
+        } catch (Throwable e) {
+            flight.completeExceptionally(e);
+            throw new ExecutionException(e);
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+}
@@ -0,0 +1,164 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.example.GithubFinder.CacheWarmer;
+import org.example.GithubFinder.GithubLastCommonCommitsFinder;
+import org.example.exceptions.*;
+import org.example.graph.Commit;
+import org.example.graph.Sha;
+import org.example.metrics.MetricsRegistry;
+import org.example.utils.CacheUtil;
+import org.example.utils.CachedHistory;
+import org.example.utils.CommitPage;
+import org.example.utils.GithubContext;
+import org.example.utils.GithubUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class CacheWarmerTest {
+
+    private static final String OWNER = "exampleOwner";
+    private static final String REPO = "exampleRepo";
+    private static final String TOKEN = "exampleToken";
+
+    private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+    private volatile long remaining = 4000;
+    private volatile long cachedAt;
+    private HttpServer github;
+    private GithubContext context;
+    private CacheUtil cacheUtil;
+    private GithubLastCommonCommitsFinder finder;
+    private CacheWarmer warmer;
+
+    @BeforeEach
+    public void setup() throws IOException, GithubUserDoesNotExistException, GithubUserDoesNotHaveAccessToRepo, GithubUnauthorizedToken, GithubRequestTimeoutException, GithubConnectionException {
+        github = HttpServer.create(new InetSocketAddress(0), 0);
+        github.createContext("/", this::serveCommits);
+        github.start();
+
+        context = new GithubContext();
+        context.setApiUrl("http://localhost:" + github.getAddress().getPort());
+        context.setMetrics(MetricsRegistry.NONE);
+        try (MockedStatic<GithubUtils> mockedUtils = Mockito.mockStatic(GithubUtils.class)) {
+            mockedUtils.when(() -> GithubUtils.checkUserHasRepo(any(), eq(OWNER), eq(REPO), eq(TOKEN))).thenReturn(true);
+            finder = new GithubLastCommonCommitsFinder(OWNER, REPO, TOKEN, context);
+        }
+        finder.setStrategies(Collections.emptyList());
+
+        // Every branch is cached, with the validators its first page is revalidated with.
+        cacheUtil = mock(CacheUtil.class);
+        when(cacheUtil.get(anyString(), anyString(), anyString())).thenAnswer(invocation -> cached(invocation.getArgument(2)));
+        when(cacheUtil.getPrefix(anyString(), anyString(), anyString(), anyInt())).thenAnswer(invocation -> cached(invocation.getArgument(2)));
+        finder.setCacheUtil(cacheUtil);
+
+        warmer = new CacheWarmer(1, 2);
+        finder.setCacheWarmer(warmer);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        warmer.close();
+        context.close();
+        github.stop(0);
+    }
+
+    @Test
+    public void testRefreshesTheMostPopularPairBeforeItExpires() throws GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException, InterruptedException {
+        // Fresh for a few seconds more out of ten minutes.
+        cachedAt = System.currentTimeMillis() - CacheUtil.FRESH_MILLIS + 5_000;
+        finder.findLastCommonCommits("main", "release");
+        finder.findLastCommonCommits("release", "main");
+        finder.findLastCommonCommits("main", "release");
+        finder.findLastCommonCommits("main", "feature");
+        requests.clear();
+
+        assertEquals(1, warmer.refreshDue());
+
+        awaitRequests(2);
+        // Conditional requests for the first pages, answered with 304 Not Modified.
+        assertEquals(Set.of("main@\"etag-main\"", "release@\"etag-release\""), new HashSet<>(requests));
+        verify(cacheUtil, timeout(5_000)).put(eq(OWNER), eq(REPO), eq("main"), any(CachedHistory.class));
+        verify(cacheUtil, timeout(5_000)).put(eq(OWNER), eq(REPO), eq("release"), any(CachedHistory.class));
+        assertEquals(List.of(OWNER + "/" + REPO + ":main...release", OWNER + "/" + REPO + ":feature...main"), warmer.getRanking());
+    }
+
+    @Test
+    public void testSkipsFreshPairsAndTokensLowOnBudget() throws GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        cachedAt = System.currentTimeMillis();
+        finder.findLastCommonCommits("main", "release");
+        assertEquals(0, warmer.refreshDue());
+
+        cachedAt = 0;
+        remaining = 10;
+        finder.findLastCommonCommits("main", "release");
+        requests.clear();
+        assertEquals(0, warmer.refreshDue());
+        assertTrue(requests.isEmpty());
+
+        warmer.setMinRemaining(0);
+        assertEquals(1, warmer.refreshDue());
+    }
+
+    @Test
+    public void testForgetsPairsNoLongerQueried() throws GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        cachedAt = System.currentTimeMillis();
+        finder.findLastCommonCommits("main", "release");
+
+        for (int round = 0; round < 10; round++) {
+            warmer.refreshDue();
+        }
+
+        assertTrue(warmer.getRanking().isEmpty());
+    }
+
+    private CachedHistory cached(String branch) {
+        List<Commit> commits = List.of(new Commit(sha(branch), sha("base")), new Commit(sha("base")));
+        return new CachedHistory(List.of(new CommitPage(1, commits, "\"etag-" + branch + "\"", null)), cachedAt);
+    }
+
+    private void serveCommits(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String query = exchange.getRequestURI().getQuery();
+            String branch = query.replaceAll(".*sha=([^&]*).*", "$1");
+            String etag = exchange.getRequestHeaders().getFirst("If-None-Match");
+            requests.add(branch + "@" + etag);
+            exchange.getResponseHeaders().add("X-RateLimit-Limit", "5000");
+            exchange.getResponseHeaders().add("X-RateLimit-Remaining", String.valueOf(remaining));
+            exchange.getResponseHeaders().add("X-RateLimit-Reset", String.valueOf(System.currentTimeMillis() / 1000 + 3600));
+            if (("\"etag-" + branch + "\"").equals(etag)) {
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+            byte[] body = ("[{\"sha\":\"" + sha(branch).toHex() + "\",\"parents\":[{\"sha\":\"" + sha("base").toHex() + "\"}]},"
+                    + "{\"sha\":\"" + sha("base").toHex() + "\",\"parents\":[]}]").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("ETag", "\"etag-" + branch + "\"");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    private void awaitRequests(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (requests.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static Sha sha(String name) {
+        byte[] bytes = Arrays.copyOf(name.getBytes(), Sha.BYTES);
+        return Sha.fromBytes(bytes, 0);
+    }
+}
@@ -0,0 +1,190 @@
+import org.example.graph.Commit;
+import org.example.graph.Sha;
+import org.example.utils.CacheUtil;
+import org.example.utils.CachedHistory;
+import org.example.utils.CachedHistoryCodec;
+import org.example.utils.CommitPage;
+import org.junit.jupiter.api.Test;
+import org.redisson.api.RBinaryStream;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class CachedHistoryCodecTest {
+
+    @Test
+    public void testRoundTrip() {
+        CachedHistory history = history();
+
+        CachedHistory decoded = CachedHistoryCodec.decode(ByteBuffer.wrap(CachedHistoryCodec.encode(history)));
+
+        assertEquals(history.getPages(), decoded.getPages());
+        assertEquals(history.getCarried(), decoded.getCarried());
+        assertEquals(history.getFetchedAt(), decoded.getFetchedAt());
+        assertEquals(history.getCommits(), decoded.getCommits());
+    }
+
+    @Test
+    public void testEmptyHistory() {
+        CachedHistory decoded = CachedHistoryCodec.decode(ByteBuffer.wrap(CachedHistoryCodec.encode(CachedHistory.empty())));
+
+        assertTrue(decoded.isEmpty());
+        assertTrue(decoded.getCarried().isEmpty());
+    }
+
+    @Test
+    public void testLinearHistoryTakesAboutTwentyTwoBytesPerCommit() {
+        List<Commit> commits = chain(0, 1000);
+        CachedHistory history = new CachedHistory(List.of(new CommitPage(1, commits, "\"etag\"", null)), 1L);
+
+        byte[] bytes = CachedHistoryCodec.encode(history);
+
+        assertTrue(bytes.length < 1000 * 23, "encoded to " + bytes.length + " bytes");
+        assertEquals(commits, CachedHistoryCodec.decode(ByteBuffer.wrap(bytes)).getCommits());
+    }
+
+    @Test
+    public void testDecodesPrefixFromTheBytesItAsksFor() {
+        CachedHistory history = history();
+        byte[] bytes = CachedHistoryCodec.encode(history);
+
+        int length = CachedHistoryCodec.prefixLength(ByteBuffer.wrap(bytes), 2);
+        assertTrue(length < bytes.length);
+        assertEquals(0, CachedHistoryCodec.prefixLength(ByteBuffer.wrap(bytes, 0, 30), 2));
+
+        CachedHistory prefix = CachedHistoryCodec.decodePrefix(ByteBuffer.wrap(bytes, 0, length), 2);
+
+        // Whole pages only, so the validators still match what they cover.
+        assertEquals(history.getPages().subList(0, 1), prefix.getPages());
+        assertTrue(prefix.getCarried().isEmpty());
+        assertEquals(history.getFetchedAt(), prefix.getFetchedAt());
+
+        CachedHistory twoPages = CachedHistoryCodec.decodePrefix(ByteBuffer.wrap(bytes), 3);
+        assertEquals(history.getPages(), twoPages.getPages());
+        assertTrue(twoPages.getCarried().isEmpty());
+    }
+
+    @Test
+    public void testUnknownFormatDecodesToNull() {
+        byte[] bytes = CachedHistoryCodec.encode(history());
+        bytes[7] = 99;
+
+        assertNull(CachedHistoryCodec.decode(ByteBuffer.wrap(bytes)));
+        assertEquals(-1, CachedHistoryCodec.prefixLength(ByteBuffer.wrap(bytes), 1));
+        assertNull(CachedHistoryCodec.decode(ByteBuffer.wrap(new byte[]{1, 2, 3})));
+    }
+
+    @Test
+    public void testGetPrefixReadsOnlyTheFirstPages() throws Exception {
+        List<CommitPage> pages = new ArrayList<>();
+        for (int page = 1; page <= 20; page++) {
+            pages.add(new CommitPage(page, chain(page * 1000, 100), "\"etag-" + page + "\"", null));
+        }
+        byte[] bytes = CachedHistoryCodec.encode(new CachedHistory(pages, 1L));
+        ByteArrayChannel channel = new ByteArrayChannel(bytes);
+
+        RedissonClient client = mock(RedissonClient.class);
+        RBinaryStream stream = mock(RBinaryStream.class);
+        when(client.getTopic(anyString())).thenReturn(mock(RTopic.class));
+        when(client.getBinaryStream(anyString())).thenReturn(stream);
+        when(stream.getChannel()).thenReturn(channel);
+
+        CachedHistory prefix = new CacheUtil(client).getPrefix("owner", "repo", "main", 150);
+
+        assertEquals(pages.subList(0, 2), prefix.getPages());
+        assertTrue(channel.bytesRead < bytes.length / 4, "read " + channel.bytesRead + " of " + bytes.length + " bytes");
+    }
+
+    private static CachedHistory history() {
+        Sha root = sha(1);
+        Sha side = sha(2);
+        Sha merge = sha(3);
+        Sha tip = sha(4);
+        Sha far = sha(99);
+        List<Commit> first = List.of(new Commit(tip, merge), new Commit(merge, sha(5), side));
+        List<Commit> second = List.of(new Commit(sha(5), root), new Commit(side, root));
+        List<Commit> carried = List.of(new Commit(root, far), new Commit(far));
+        return new CachedHistory(List.of(
+                new CommitPage(1, first, "W/\"abc\"", "Mon, 01 Jan 2024 00:00:00 GMT"),
+                new CommitPage(2, second, null, null)), carried, 123456789L);
+    }
+
+    /**
+     * @return commits with consecutive numbers from the given one, each the parent of the one before
+     */
+    private static List<Commit> chain(int from, int length) {
+        List<Commit> commits = new ArrayList<>();
+        for (int i = 0; i < length; i++) {
+            commits.add(new Commit(sha(from + i), sha(from + i + 1)));
+        }
+        return commits;
+    }
+
+    private static Sha sha(int n) {
+        return new Sha(n * 31L, n * 17L, n);
+    }
+
+    private static class ByteArrayChannel implements SeekableByteChannel {
+        private final byte[] bytes;
+        private long position;
+        private int bytesRead;
+
+        private ByteArrayChannel(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (position >= bytes.length) {
+                return -1;
+            }
+            int length = (int) Math.min(dst.remaining(), bytes.length - position);
+            dst.put(bytes, (int) position, length);
+            position += length;
+            bytesRead += length;
+            return length;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long position() {
+            return position;
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) {
+            position = newPosition;
+            return this;
+        }
+
+        @Override
+        public long size() {
+            return bytes.length;
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
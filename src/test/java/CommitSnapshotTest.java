@@ -0,0 +1,125 @@
+import org.example.graph.Commit;
+import org.example.graph.CommitRecord;
+import org.example.graph.GenerationWalk;
+import org.example.graph.Sha;
+import org.example.utils.CommitSnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CommitSnapshotTest {
+
+    private Path dir;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("snapshot");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testGenerationsAreKnownOnceTheRootIsFetched() throws IOException {
+        try (CommitSnapshot snapshot = CommitSnapshot.open(dir)) {
+            // Pages arrive newest first, so the root comes last.
+            snapshot.append(List.of(commit("a1", "base"), commit("b1", "base")));
+            assertEquals(0, snapshot.getGeneration(sha("a1")));
+            assertNull(snapshot.readCommit(sha("base")));
+
+            snapshot.append(List.of(commit("base", "root"), commit("root")));
+
+            assertEquals(1, snapshot.getGeneration(sha("root")));
+            assertEquals(2, snapshot.getGeneration(sha("base")));
+            assertEquals(3, snapshot.getGeneration(sha("a1")));
+            assertEquals(List.of(sha("base")), new GenerationWalk(snapshot).mergeBases(sha("a1"), sha("b1")));
+        }
+    }
+
+    @Test
+    public void testReopenKeepsCommitsAndGenerations() throws IOException {
+        try (CommitSnapshot snapshot = CommitSnapshot.open(dir)) {
+            snapshot.append(List.of(commit("merge", "a1", "b1"), commit("a1", "root"), commit("b1", "root"), commit("root")));
+        }
+
+        try (CommitSnapshot snapshot = CommitSnapshot.open(dir)) {
+            assertEquals(4, snapshot.size());
+            CommitRecord merge = snapshot.readCommit(sha("merge"));
+            assertEquals(List.of(sha("a1"), sha("b1")), merge.getCommit().getParents());
+            assertEquals(3, merge.getGeneration());
+
+            // Known commits are skipped, new ones are appended after the old rows.
+            snapshot.append(List.of(commit("merge", "a1", "b1"), commit("top", "merge")));
+            assertEquals(5, snapshot.size());
+            assertEquals(4, snapshot.getGeneration(sha("top")));
+        }
+    }
+
+    @Test
+    public void testGrowsPastTheInitialMapping() throws IOException {
+        List<Commit> chain = new ArrayList<>();
+        for (int i = 10_000; i > 0; i--) {
+            chain.add(commit("c" + i, "c" + (i - 1)));
+        }
+        chain.add(commit("c0"));
+
+        try (CommitSnapshot snapshot = CommitSnapshot.open(dir)) {
+            snapshot.append(chain.subList(0, 5_000));
+            snapshot.append(chain.subList(5_000, chain.size()));
+        }
+
+        try (CommitSnapshot snapshot = CommitSnapshot.open(dir)) {
+            assertEquals(10_001, snapshot.size());
+            assertEquals(10_001, snapshot.getGeneration(sha("c10000")));
+            assertEquals(List.of(sha("c4999")), snapshot.readCommit(sha("c5000")).getCommit().getParents());
+        }
+    }
+
+    @Test
+    public void testHeadsPersistAndExpire() throws IOException {
+        long now = System.currentTimeMillis();
+        try (CommitSnapshot snapshot = CommitSnapshot.open(dir)) {
+            snapshot.setHead("main", sha("a1"), now);
+            snapshot.setHead("old", sha("b1"), now - 60_000);
+        }
+
+        try (CommitSnapshot snapshot = CommitSnapshot.open(dir)) {
+            assertEquals(sha("a1"), snapshot.getHead("main", 10_000));
+            assertNull(snapshot.getHead("old", 10_000));
+            assertEquals(sha("b1"), snapshot.getHead("old", 120_000));
+            assertNull(snapshot.getHead("missing", 10_000));
+        }
+    }
+
+    @Test
+    public void testOnlyOneOwnerAtATime() throws IOException {
+        try (CommitSnapshot snapshot = CommitSnapshot.open(dir)) {
+            assertThrows(IOException.class, () -> CommitSnapshot.open(dir));
+        }
+    }
+
+    private static Commit commit(String name, String... parents) {
+        Sha[] parentShas = new Sha[parents.length];
+        for (int i = 0; i < parents.length; i++) {
+            parentShas[i] = sha(parents[i]);
+        }
+        return new Commit(sha(name), parentShas);
+    }
+
+    private static Sha sha(String name) {
+        byte[] bytes = Arrays.copyOf(name.getBytes(), Sha.BYTES);
+        return Sha.fromBytes(bytes, 0);
+    }
+}
@@ -0,0 +1,107 @@
+import org.example.graph.Commit;
+import org.example.graph.Sha;
+import org.example.utils.CommitStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.redisson.api.RMap;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class CommitStoreTest {
+
+    private RedissonClient client;
+    private RMap<byte[], byte[]> commits;
+    private RMap<String, String> heads;
+    private RScript script;
+    private CommitStore store;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        client = mock(RedissonClient.class);
+        commits = mock(RMap.class);
+        heads = mock(RMap.class);
+        script = mock(RScript.class);
+        when(client.<byte[], byte[]>getMap(eq("githubCommits:owner/repo"), any())).thenReturn(commits);
+        when(client.<String, String>getMap(eq("githubHeads:owner/repo"), any())).thenReturn(heads);
+        when(client.getScript(any())).thenReturn(script);
+        store = new CommitStore(client, "owner", "repo");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testPutAllWritesParentsBySha() {
+        Commit merge = new Commit(sha(3), sha(2), sha(1));
+        Commit root = new Commit(sha(1));
+
+        store.putAll(List.of(merge, root));
+
+        ArgumentCaptor<Map<byte[], byte[]>> entries = ArgumentCaptor.forClass(Map.class);
+        verify(commits).putAll(entries.capture());
+        assertEquals(2, entries.getValue().size());
+        for (Map.Entry<byte[], byte[]> entry : entries.getValue().entrySet()) {
+            Sha sha = Sha.fromBytes(entry.getKey(), 0);
+            if (sha.equals(merge.getSha())) {
+                assertEquals(2 * Sha.BYTES, entry.getValue().length);
+                assertEquals(sha(2), Sha.fromBytes(entry.getValue(), 0));
+                assertEquals(sha(1), Sha.fromBytes(entry.getValue(), Sha.BYTES));
+            } else {
+                assertEquals(root.getSha(), sha);
+                assertEquals(0, entry.getValue().length);
+            }
+        }
+        verify(commits).expire(any(Duration.class));
+    }
+
+    @Test
+    public void testLoadParsesWhatTheScriptReturns() {
+        ByteBuffer result = ByteBuffer.allocate(3 * Sha.BYTES + 2 + Sha.BYTES + 2);
+        writeSha(result, sha(3));
+        result.putShort((short) 2);
+        writeSha(result, sha(2));
+        writeSha(result, sha(1));
+        writeSha(result, sha(1));
+        result.putShort((short) 0);
+        when(script.eval(any(RScript.Mode.class), anyString(), any(RScript.ReturnType.class), anyList(), any(), any())).thenReturn(result.array());
+
+        List<Commit> loaded = store.load(List.of(sha(3)), 100);
+
+        assertEquals(List.of(new Commit(sha(3), sha(2), sha(1)), new Commit(sha(1))), loaded);
+        assertTrue(store.load(List.of(), 100).isEmpty());
+    }
+
+    @Test
+    public void testHeadsOlderThanAskedForAreNotReturned() {
+        long now = System.currentTimeMillis();
+        when(heads.get("main")).thenReturn(sha(7).toHex() + "|" + now);
+        when(heads.get("stale")).thenReturn(sha(7).toHex() + "|" + (now - 120_000));
+        when(heads.get("garbled")).thenReturn("not-a-sha|" + now);
+
+        assertEquals(sha(7), store.getHead("main", 60_000));
+        assertNull(store.getHead("stale", 60_000));
+        assertNull(store.getHead("garbled", 60_000));
+        assertNull(store.getHead("missing", 60_000));
+
+        store.setHead("main", sha(8), now);
+        verify(heads).fastPut("main", sha(8).toHex() + "|" + now);
+        store.removeHead("main");
+        verify(heads).fastRemove("main");
+    }
+
+    private static void writeSha(ByteBuffer out, Sha sha) {
+        out.putLong(sha.getHigh()).putLong(sha.getMiddle()).putInt(sha.getLow());
+    }
+
+    private static Sha sha(int n) {
+        return new Sha(n * 31L, n * 17L, n);
+    }
+}
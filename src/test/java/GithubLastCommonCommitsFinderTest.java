@@ -1,14 +1,29 @@
+import org.example.BranchPair;
+import org.example.GithubFinder.CompareMergeBaseStrategy;
 import org.example.GithubFinder.GithubLastCommonCommitsFinder;
 import org.example.exceptions.*;
+import org.example.graph.Commit;
+import org.example.graph.Sha;
 import org.example.utils.GithubUtils;
 import org.example.utils.CacheUtil;
+import org.example.utils.CachedHistory;
+import org.example.utils.CommitPage;
+import org.example.utils.GithubContext;
+import org.example.utils.RateLimitScheduler;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -29,49 +44,56 @@ public class GithubLastCommonCommitsFinderTest {
         MockitoAnnotations.openMocks(this);
 
         try (MockedStatic<GithubUtils> mockedUtils = Mockito.mockStatic(GithubUtils.class)) {
-            mockedUtils.when(() -> GithubUtils.checkUserExistsByUsername(OWNER, TOKEN)).thenReturn(true);
-            mockedUtils.when(() -> GithubUtils.checkUserHasRepo(OWNER, REPO, TOKEN)).thenReturn(true);
+            mockedUtils.when(() -> GithubUtils.checkUserExistsByUsername(any(), eq(OWNER), eq(TOKEN))).thenReturn(true);
+            mockedUtils.when(() -> GithubUtils.checkUserHasRepo(any(), eq(OWNER), eq(REPO), eq(TOKEN))).thenReturn(true);
 
             finder = spy(new GithubLastCommonCommitsFinder(OWNER, REPO, TOKEN));
             finder.setCacheUtil(cacheUtil);
+            // Most tests exercise the history walk; the compare tests enable the strategy themselves.
+            finder.setStrategies(Collections.emptyList());
         }
 
         reset(cacheUtil);
+        when(cacheUtil.get(anyString(), anyString(), anyString())).thenReturn(CachedHistory.empty());
     }
 
     @Test
     public void testFindLastCommonCommits_CommonExists() throws IOException, GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
-        List<String> commitsBranchA = Arrays.asList("commitA1", "commitA2", "commonCommit");
-        List<String> commitsBranchB = Arrays.asList("commitB1", "commonCommit", "commitB2");
+        List<Commit> commitsBranchA = Arrays.asList(commit("commitA1", "commitA2"), commit("commitA2", "commonCommit"), commit("commonCommit", "root"));
+        List<Commit> commitsBranchB = Arrays.asList(commit("commitB1", "commonCommit"), commit("commonCommit", "root"), commit("root"));
 
-        when(cacheUtil.get(OWNER, REPO, "branchA")).thenReturn(new ArrayList<>());
-        when(cacheUtil.get(OWNER, REPO, "branchB")).thenReturn(new ArrayList<>());
+        when(cacheUtil.get(OWNER, REPO, "branchA")).thenReturn(CachedHistory.empty());
+        when(cacheUtil.get(OWNER, REPO, "branchB")).thenReturn(CachedHistory.empty());
 
-        doReturn(commitsBranchA).when(finder).fetchCommits("branchA", 1);
-        doReturn(commitsBranchB).when(finder).fetchCommits("branchB", 1);
+        doReturn(page(1, commitsBranchA)).when(finder).fetchCommits("branchA", 1, null);
+        doReturn(page(1, commitsBranchB)).when(finder).fetchCommits("branchB", 1, null);
 
         Collection<String> result = finder.findLastCommonCommits("branchA", "branchB");
 
         assertEquals(1, result.size());
-        assertEquals("commonCommit", result.iterator().next());
-
-        verify(cacheUtil).put(OWNER, REPO, "branchA", commitsBranchA);
-        verify(cacheUtil).put(OWNER, REPO, "branchB", commitsBranchB);
+        assertEquals(sha("commonCommit").toHex(), result.iterator().next());
+
+        ArgumentCaptor<CachedHistory> savedA = ArgumentCaptor.forClass(CachedHistory.class);
+        ArgumentCaptor<CachedHistory> savedB = ArgumentCaptor.forClass(CachedHistory.class);
+        verify(cacheUtil).put(eq(OWNER), eq(REPO), eq("branchA"), savedA.capture());
+        verify(cacheUtil).put(eq(OWNER), eq(REPO), eq("branchB"), savedB.capture());
+        assertEquals(commitsBranchA, savedA.getValue().getCommits());
+        assertEquals(commitsBranchB, savedB.getValue().getCommits());
     }
 
     @Test
     public void testFindLastCommonCommits_NoCommonCommits() throws IOException, GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
-        List<String> commitsBranchA = Arrays.asList("commitA1", "commitA2", "commitA3");
-        List<String> commitsBranchB = Arrays.asList("commitB1", "commitB2", "commitB3");
+        List<Commit> commitsBranchA = Arrays.asList(commit("commitA1", "commitA2"), commit("commitA2", "commitA3"), commit("commitA3"));
+        List<Commit> commitsBranchB = Arrays.asList(commit("commitB1", "commitB2"), commit("commitB2", "commitB3"), commit("commitB3"));
 
-        when(cacheUtil.get(OWNER, REPO, "branch1")).thenReturn(new ArrayList<>());
-        when(cacheUtil.get(OWNER, REPO, "branch2")).thenReturn(new ArrayList<>());
+        when(cacheUtil.get(OWNER, REPO, "branch1")).thenReturn(CachedHistory.empty());
+        when(cacheUtil.get(OWNER, REPO, "branch2")).thenReturn(CachedHistory.empty());
 
-        doReturn(commitsBranchA).when(finder).fetchCommits("branch1", 1);
-        doReturn(commitsBranchB).when(finder).fetchCommits("branch2", 1);
+        doReturn(page(1, commitsBranchA)).when(finder).fetchCommits("branch1", 1, null);
+        doReturn(page(1, commitsBranchB)).when(finder).fetchCommits("branch2", 1, null);
 
-        doReturn(new ArrayList<>()).when(finder).fetchCommits("branch1", 2);
-        doReturn(new ArrayList<>()).when(finder).fetchCommits("branch2", 2);
+        doReturn(page(2, new ArrayList<>())).when(finder).fetchCommits("branch1", 2, null);
+        doReturn(page(2, new ArrayList<>())).when(finder).fetchCommits("branch2", 2, null);
 
         Collection<String> result = finder.findLastCommonCommits("branch1", "branch2");
 
@@ -80,17 +102,17 @@ public class GithubLastCommonCommitsFinderTest {
 
     @Test
     public void testFindLastCommonCommits_OneBranchEmpty() throws IOException, GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
-        List<String> commitsBranchA = Arrays.asList("commitA1", "commitA2", "commitA3");
-        List<String> commitsBranchB = Collections.emptyList();
+        List<Commit> commitsBranchA = Arrays.asList(commit("commitA1", "commitA2"), commit("commitA2", "commitA3"), commit("commitA3"));
+        List<Commit> commitsBranchB = Collections.emptyList();
 
-        when(cacheUtil.get(OWNER, REPO, "branchA")).thenReturn(new ArrayList<>());
-        when(cacheUtil.get(OWNER, REPO, "branchB")).thenReturn(new ArrayList<>());
+        when(cacheUtil.get(OWNER, REPO, "branchA")).thenReturn(CachedHistory.empty());
+        when(cacheUtil.get(OWNER, REPO, "branchB")).thenReturn(CachedHistory.empty());
 
-        doReturn(commitsBranchA).when(finder).fetchCommits("branchA", 1);
-        doReturn(commitsBranchB).when(finder).fetchCommits("branchB", 1);
+        doReturn(page(1, commitsBranchA)).when(finder).fetchCommits("branchA", 1, null);
+        doReturn(page(1, commitsBranchB)).when(finder).fetchCommits("branchB", 1, null);
 
-        doReturn(new ArrayList<>()).when(finder).fetchCommits("branchA", 2);
-        doReturn(new ArrayList<>()).when(finder).fetchCommits("branchB", 2);
+        doReturn(page(2, new ArrayList<>())).when(finder).fetchCommits("branchA", 2, null);
+        doReturn(page(2, new ArrayList<>())).when(finder).fetchCommits("branchB", 2, null);
 
         Collection<String> result = finder.findLastCommonCommits("branchA", "branchB");
 
@@ -99,24 +121,24 @@ public class GithubLastCommonCommitsFinderTest {
 
     @Test
     public void testFetchCommitsFromCache() throws IOException, GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
-        List<String> cachedCommitsBranchA = Arrays.asList("commitA1", "commitA2", "commonCommit");
-        List<String> cachedCommitsBranchB = Arrays.asList("commitB1", "commonCommit", "commitB2");
+        List<Commit> cachedCommitsBranchA = Arrays.asList(commit("commitA1", "commitA2"), commit("commitA2", "commonCommit"), commit("commonCommit", "root"), commit("root"));
+        List<Commit> cachedCommitsBranchB = Arrays.asList(commit("commitB1", "commonCommit"), commit("commonCommit", "root"), commit("root"));
 
-        when(cacheUtil.get(OWNER, REPO, "branchA")).thenReturn(cachedCommitsBranchA);
-        when(cacheUtil.get(OWNER, REPO, "branchB")).thenReturn(cachedCommitsBranchB);
+        when(cacheUtil.get(OWNER, REPO, "branchA")).thenReturn(history(cachedCommitsBranchA));
+        when(cacheUtil.get(OWNER, REPO, "branchB")).thenReturn(history(cachedCommitsBranchB));
 
         Collection<String> result = finder.findLastCommonCommits("branchA", "branchB");
 
         assertEquals(1, result.size());
-        assertTrue(result.contains("commonCommit"), "Expected 'commonCommit' to be found as the last common commit.");
-        verify(finder, never()).fetchCommits("branchA", 1);
-        verify(finder, never()).fetchCommits("branchB", 1);
+        assertTrue(result.contains(sha("commonCommit").toHex()), "Expected 'commonCommit' to be found as the last common commit.");
+        verify(finder, never()).fetchCommits("branchA", 1, null);
+        verify(finder, never()).fetchCommits("branchB", 1, null);
     }
 
     @Test
     public void testUnauthorizedToken() {
         try (MockedStatic<GithubUtils> mockedUtils = Mockito.mockStatic(GithubUtils.class)) {
-            mockedUtils.when(() -> GithubUtils.checkUserExistsByUsername(anyString(), anyString()))
+            mockedUtils.when(() -> GithubUtils.checkUserExistsByUsername(any(), anyString(), anyString()))
                     .thenThrow(new GithubUnauthorizedToken());
 
             assertThrows(GithubUnauthorizedToken.class, () -> {
@@ -128,7 +150,7 @@ public class GithubLastCommonCommitsFinderTest {
     @Test
     public void testUserDoesNotExist() {
         try (MockedStatic<GithubUtils> mockedUtils = Mockito.mockStatic(GithubUtils.class)) {
-            mockedUtils.when(() -> GithubUtils.checkUserExistsByUsername(anyString(), anyString()))
+            mockedUtils.when(() -> GithubUtils.checkUserExistsByUsername(any(), anyString(), anyString()))
                     .thenReturn(false);
 
             assertThrows(GithubUserDoesNotExistException.class, () -> {
@@ -140,8 +162,8 @@ public class GithubLastCommonCommitsFinderTest {
     @Test
     public void testUserDoesNotHaveAccessToRepo() {
         try (MockedStatic<GithubUtils> mockedUtils = Mockito.mockStatic(GithubUtils.class)) {
-            mockedUtils.when(() -> GithubUtils.checkUserExistsByUsername(anyString(), anyString())).thenReturn(true);
-            mockedUtils.when(() -> GithubUtils.checkUserHasRepo(anyString(), anyString(), anyString()))
+            mockedUtils.when(() -> GithubUtils.checkUserExistsByUsername(any(), anyString(), anyString())).thenReturn(true);
+            mockedUtils.when(() -> GithubUtils.checkUserHasRepo(any(), anyString(), anyString(), anyString()))
                     .thenReturn(false);
 
             assertThrows(GithubUserDoesNotHaveAccessToRepo.class, () -> {
@@ -152,7 +174,7 @@ public class GithubLastCommonCommitsFinderTest {
 
     @Test
     public void testGithubApiError() throws GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
-        doThrow(new GithubConnectionException("Error", new Throwable())).when(finder).fetchCommits("branchA", 1);
+        doThrow(new GithubConnectionException("Error", new Throwable())).when(finder).fetchCommits("branchA", 1, null);
 
         assertThrows(GithubConnectionException.class, () -> {
             finder.findLastCommonCommits("branchA", "branchB");
@@ -161,7 +183,7 @@ public class GithubLastCommonCommitsFinderTest {
 
     @Test
     public void testGithubApiErrorTimeout() throws GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
-        doThrow(new GithubRequestTimeoutException("Error", new Throwable())).when(finder).fetchCommits("branchA", 1);
+        doThrow(new GithubRequestTimeoutException("Error", new Throwable())).when(finder).fetchCommits("branchA", 1, null);
 
         assertThrows(GithubRequestTimeoutException.class, () -> {
             finder.findLastCommonCommits("branchA", "branchB");
@@ -171,18 +193,354 @@ public class GithubLastCommonCommitsFinderTest {
 
     @Test
     public void testFetchCommits_404NotFound() throws IOException {
-        try (MockedStatic<GithubUtils> mockedUtils = Mockito.mockStatic(GithubUtils.class)) {
-            mockedUtils.when(() -> GithubUtils.checkUserExistsByUsername(anyString(), anyString())).thenReturn(true);
-            mockedUtils.when(() -> GithubUtils.checkUserHasRepo(anyString(), anyString(), anyString())).thenReturn(true);
+        try (MockedStatic<GithubUtils> mockedUtils = Mockito.mockStatic(GithubUtils.class, Mockito.CALLS_REAL_METHODS)) {
+            HttpResponse<InputStream> mockResponse = mockResponse(HttpURLConnection.HTTP_NOT_FOUND);
 
-            HttpURLConnection mockConnection = mock(HttpURLConnection.class);
-            when(mockConnection.getResponseCode()).thenReturn(HttpURLConnection.HTTP_NOT_FOUND);
-
-            mockedUtils.when(() -> GithubUtils.createConnection(anyString(), anyString())).thenReturn(mockConnection);
+            mockedUtils.when(() -> GithubUtils.send(any(), any())).thenReturn(mockResponse);
 
             assertThrows(GithubUserDoesNotHaveAccessToRepo.class, () -> {
-                finder.fetchCommits("nonexistentBranch", 1);
+                finder.fetchCommits("nonexistentBranch", 1, null);
+            });
+        }
+    }
+
+    @Test
+    public void testFetchCommits_AsksWithOwnTokenWhenPoolTokenIsRefused() throws IOException, InterruptedException, GithubUserDoesNotExistException, GithubUserDoesNotHaveAccessToRepo, GithubUnauthorizedToken, GithubRequestTimeoutException, GithubConnectionException {
+        try (GithubContext context = new GithubContext();
+             MockedStatic<GithubUtils> mockedUtils = Mockito.mockStatic(GithubUtils.class, Mockito.CALLS_REAL_METHODS)) {
+            mockedUtils.when(() -> GithubUtils.checkUserExistsByUsername(any(), eq(OWNER), eq(TOKEN))).thenReturn(true);
+            mockedUtils.when(() -> GithubUtils.checkUserHasRepo(any(), eq(OWNER), eq(REPO), eq(TOKEN))).thenReturn(true);
+            // The pool token cannot see the repository.
+            mockedUtils.when(() -> GithubUtils.send(any(), any())).thenAnswer(invocation -> {
+                HttpRequest request = invocation.getArgument(1);
+                boolean pooled = request.headers().firstValue("Authorization").orElse("").equals("token poolToken");
+                return pooled ? mockResponse(HttpURLConnection.HTTP_NOT_FOUND) : mockResponse(HttpURLConnection.HTTP_OK, "[" + commitJson("commitA1") + "]");
             });
+
+            GithubLastCommonCommitsFinder pooledFinder = new GithubLastCommonCommitsFinder(OWNER, REPO, TOKEN, context);
+            RateLimitScheduler scheduler = context.getScheduler();
+            scheduler.setTokenPool(List.of("poolToken"));
+            // The finder's own token is running low, so the pool token is tried first.
+            RateLimitScheduler.Lease lease = scheduler.acquire(TOKEN, "core", RateLimitScheduler.Priority.INTERACTIVE, false);
+            scheduler.complete(lease, 200, HttpHeaders.of(Map.of("X-RateLimit-Limit", List.of("5000"), "X-RateLimit-Remaining", List.of("10"),
+                    "X-RateLimit-Reset", List.of(String.valueOf(System.currentTimeMillis() / 1000 + 3600))), (name, value) -> true), null);
+
+            CommitPage page = pooledFinder.fetchCommits("branchA", 1, null);
+
+            assertEquals(List.of(commit("commitA1")), page.getCommits());
+            mockedUtils.verify(() -> GithubUtils.send(any(), any()), times(2));
         }
     }
+
+    @Test
+    public void testFindLastCommonCommits_StopsOnceSettled() throws IOException, GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        when(cacheUtil.get(OWNER, REPO, "branchA")).thenReturn(CachedHistory.empty());
+        when(cacheUtil.get(OWNER, REPO, "branchB")).thenReturn(CachedHistory.empty());
+
+        // branchB is a deep branch, but its first commit already points at branchA's second one.
+        doReturn(page(1, Arrays.asList(commit("commitA1", "commitA2"), commit("commitA2", "commitA3")))).when(finder).fetchCommits("branchA", 1, null);
+        doReturn(page(1, Arrays.asList(commit("commitB1", "commitA2")))).when(finder).fetchCommits("branchB", 1, null);
+
+        Collection<String> result = finder.findLastCommonCommits("branchA", "branchB");
+
+        assertEquals(List.of(sha("commitA2").toHex()), new ArrayList<>(result));
+        verify(finder, never()).fetchCommits("branchA", 2, null);
+        verify(finder, never()).fetchCommits("branchB", 2, null);
+    }
+
+    @Test
+    public void testFindLastCommonCommits_GallopLimitZeroFetchesOnCallingThread() throws IOException, GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        finder.setGallopLimit(0);
+        Set<Thread> threads = Collections.synchronizedSet(new HashSet<>());
+        List<Commit> commitsBranchA1 = Arrays.asList(commit("commitA1", "commitA2"), commit("commitA2", "commitA3"));
+        List<Commit> commitsBranchA2 = Arrays.asList(commit("commitA3", "commonCommit"), commit("commonCommit"));
+        List<Commit> commitsBranchB = Arrays.asList(commit("commitB1", "commonCommit"), commit("commonCommit"));
+
+        doAnswer(invocation -> {
+            threads.add(Thread.currentThread());
+            return page(invocation.getArgument(1), Collections.emptyList());
+        }).when(finder).fetchCommits(anyString(), anyInt(), isNull());
+        doAnswer(invocation -> {
+            threads.add(Thread.currentThread());
+            return page(1, commitsBranchA1);
+        }).when(finder).fetchCommits("branchA", 1, null);
+        doAnswer(invocation -> {
+            threads.add(Thread.currentThread());
+            return page(2, commitsBranchA2);
+        }).when(finder).fetchCommits("branchA", 2, null);
+        doAnswer(invocation -> {
+            threads.add(Thread.currentThread());
+            return page(1, commitsBranchB);
+        }).when(finder).fetchCommits("branchB", 1, null);
+
+        Collection<String> result = finder.findLastCommonCommits("branchA", "branchB");
+
+        assertEquals(List.of(sha("commonCommit").toHex()), new ArrayList<>(result));
+        // Without a window or a gallop limit, no page is fetched ahead on the executor.
+        assertEquals(Set.of(Thread.currentThread()), threads);
+    }
+
+    @Test
+    public void testFindLastCommonCommits_CrissCrossMerge() throws IOException, GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        when(cacheUtil.get(OWNER, REPO, "branchA")).thenReturn(CachedHistory.empty());
+        when(cacheUtil.get(OWNER, REPO, "branchB")).thenReturn(CachedHistory.empty());
+
+        doReturn(page(1, Arrays.asList(commit("mergeA", "x", "y"), commit("x", "root")))).when(finder).fetchCommits("branchA", 1, null);
+        doReturn(page(2, Arrays.asList(commit("y", "root"), commit("root")))).when(finder).fetchCommits("branchA", 2, null);
+        doReturn(page(1, Arrays.asList(commit("mergeB", "y", "x")))).when(finder).fetchCommits("branchB", 1, null);
+        doReturn(page(2, new ArrayList<>())).when(finder).fetchCommits("branchB", 2, null);
+
+        Collection<String> result = finder.findLastCommonCommits("branchA", "branchB");
+
+        assertEquals(new HashSet<>(Arrays.asList(sha("x").toHex(), sha("y").toHex())), new HashSet<>(result));
+    }
+
+    @Test
+    public void testFindLastCommonCommits_RevalidatesStaleCache() throws IOException, GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        CommitPage cachedA1 = new CommitPage(1, Arrays.asList(commit("commitA1", "commitA2")), "\"etagA1\"", null);
+        CommitPage cachedA2 = new CommitPage(2, Arrays.asList(commit("commitA2", "commonCommit"), commit("commonCommit")), "\"etagA2\"", null);
+        CommitPage cachedB1 = new CommitPage(1, Arrays.asList(commit("commitB1", "commonCommit"), commit("commonCommit")), "\"etagB1\"", null);
+        CachedHistory staleA = new CachedHistory(Arrays.asList(cachedA1, cachedA2), 0);
+        CachedHistory staleB = new CachedHistory(Arrays.asList(cachedB1), 0);
+
+        when(cacheUtil.get(OWNER, REPO, "branchA")).thenReturn(staleA);
+        when(cacheUtil.get(OWNER, REPO, "branchB")).thenReturn(staleB);
+
+        // GitHub answers 304 for both first pages, so neither head moved.
+        doReturn(cachedA1).when(finder).fetchCommits("branchA", 1, cachedA1);
+        doReturn(cachedB1).when(finder).fetchCommits("branchB", 1, cachedB1);
+
+        Collection<String> result = finder.findLastCommonCommits("branchA", "branchB");
+
+        assertEquals(List.of(sha("commonCommit").toHex()), new ArrayList<>(result));
+        verify(finder, never()).fetchCommits("branchA", 2, cachedA2);
+    }
+
+    @Test
+    public void testFindLastCommonCommits_FetchesOnlyNewCommits() throws IOException, GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        CommitPage cachedA1 = new CommitPage(1, Arrays.asList(commit("commitA2", "commitA1"), commit("commitA1", "commonCommit")), "\"etagA1\"", null);
+        CommitPage cachedA2 = new CommitPage(2, Arrays.asList(commit("commonCommit", "root"), commit("root")), "\"etagA2\"", null);
+        CommitPage cachedB1 = new CommitPage(1, Arrays.asList(commit("commitB1", "commonCommit")), "\"etagB1\"", null);
+
+        when(cacheUtil.get(OWNER, REPO, "branchA")).thenReturn(new CachedHistory(Arrays.asList(cachedA1, cachedA2), 0));
+        when(cacheUtil.get(OWNER, REPO, "branchB")).thenReturn(new CachedHistory(Arrays.asList(cachedB1), 0));
+
+        // branchA moved forward by one commit, branchB did not move.
+        List<Commit> newPageA = Arrays.asList(commit("commitA3", "commitA2"), commit("commitA2", "commitA1"));
+        doReturn(new CommitPage(1, newPageA, "\"etagA1-new\"", null)).when(finder).fetchCommits("branchA", 1, cachedA1);
+        doReturn(cachedB1).when(finder).fetchCommits("branchB", 1, cachedB1);
+
+        Collection<String> result = finder.findLastCommonCommits("branchA", "branchB");
+
+        assertEquals(List.of(sha("commonCommit").toHex()), new ArrayList<>(result));
+        verify(finder, never()).fetchCommits("branchA", 2, cachedA2);
+
+        ArgumentCaptor<CachedHistory> savedA = ArgumentCaptor.forClass(CachedHistory.class);
+        verify(cacheUtil).put(eq(OWNER), eq(REPO), eq("branchA"), savedA.capture());
+        assertEquals(sha("commitA3"), savedA.getValue().getHead());
+        assertEquals(Arrays.asList(commit("commitA1", "commonCommit"), commit("commonCommit", "root"), commit("root")), savedA.getValue().getCarried());
+    }
+
+    @Test
+    public void testFindLastCommonCommits_BatchSharesBaseBranch() throws IOException, GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        doReturn(page(1, Arrays.asList(commit("main2", "main1"), commit("main1", "root"), commit("root")))).when(finder).fetchCommits("main", 1, null);
+        doReturn(page(1, Arrays.asList(commit("feature1", "main1")))).when(finder).fetchCommits("feature", 1, null);
+        doReturn(page(1, Arrays.asList(commit("fix1", "root")))).when(finder).fetchCommits("fix", 1, null);
+
+        Map<BranchPair, Collection<String>> result = finder.findLastCommonCommits(BranchPair.against("main", Arrays.asList("feature", "fix")));
+
+        assertEquals(List.of(sha("main1").toHex()), new ArrayList<>(result.get(new BranchPair("main", "feature"))));
+        assertEquals(List.of(sha("root").toHex()), new ArrayList<>(result.get(new BranchPair("main", "fix"))));
+        verify(finder, times(1)).fetchCommits("main", 1, null);
+        verify(cacheUtil, times(1)).put(eq(OWNER), eq(REPO), eq("main"), any());
+    }
+
+    @Test
+    public void testFetchCommits_304NotModified()throws IOException, GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        CommitPage cached = new CommitPage(1, Arrays.asList(commit("commitA1")), "\"etag\"", null);
+
+        try (MockedStatic<GithubUtils> mockedUtils = Mockito.mockStatic(GithubUtils.class, Mockito.CALLS_REAL_METHODS)) {
+            HttpResponse<InputStream> mockResponse = mockResponse(HttpURLConnection.HTTP_NOT_MODIFIED);
+
+            mockedUtils.when(() -> GithubUtils.send(any(), any())).thenReturn(mockResponse);
+
+            assertSame(cached, finder.fetchCommits("branchA", 1, cached));
+            mockedUtils.verify(() -> GithubUtils.addValidators(any(), eq("\"etag\""), isNull()));
+        }
+    }
+
+    @Test
+    public void testFetchCommits_ParsesOnlyShas() throws IOException, GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        String merge = "1111111111111111111111111111111111111111";
+        String first = "2222222222222222222222222222222222222222";
+        String second = "3333333333333333333333333333333333333333";
+        String body = "[{\"sha\":\"" + merge + "\",\"commit\":{\"author\":{\"name\":\"a\"},\"message\":\"sha: x\",\"tree\":{\"sha\":\"" + second + "\"}},"
+                + "\"files\":[{\"sha\":\"" + second + "\",\"additions\":1}],"
+                + "\"parents\":[{\"sha\":\"" + first + "\",\"url\":\"u\"},{\"url\":\"u\",\"sha\":\"" + second + "\"}]},"
+                + "{\"url\":\"u\",\"sha\":\"" + first + "\",\"parents\":[]}]";
+
+        try (MockedStatic<GithubUtils> mockedUtils = Mockito.mockStatic(GithubUtils.class, Mockito.CALLS_REAL_METHODS)) {
+            HttpResponse<InputStream> mockResponse = mockResponse(HttpURLConnection.HTTP_OK, body);
+
+            mockedUtils.when(() -> GithubUtils.send(any(), any())).thenReturn(mockResponse);
+
+            CommitPage page = finder.fetchCommits("branchA", 1, null);
+
+            assertEquals(Arrays.asList(new Commit(Sha.fromHex(merge), Sha.fromHex(first), Sha.fromHex(second)), new Commit(Sha.fromHex(first))), page.getCommits());
+            assertEquals("\"etag\"", page.getEtag());
+        }
+    }
+
+    @Test
+    public void testFetchCommits_GrowsPageSize() throws IOException, GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        String url = "https://api.github.com/repos/" + OWNER + "/" + REPO + "/commits?sha=branchA";
+
+        try (MockedStatic<GithubUtils> mockedUtils = Mockito.mockStatic(GithubUtils.class, Mockito.CALLS_REAL_METHODS)) {
+            for (int page = 1; page <= 5; page++) {
+                HttpResponse<InputStream> mockResponse = mockResponse(HttpURLConnection.HTTP_OK, "[]");
+
+                mockedUtils.when(() -> GithubUtils.send(any(), any())).thenReturn(mockResponse);
+
+                finder.fetchCommits("branchA", page, null);
+            }
+
+            // Every page starts where the previous one ended: 0, 25, 50, 100, 200.
+            mockedUtils.verify(() -> GithubUtils.createRequest(eq(url + "&per_page=25&page=1"), eq(TOKEN)));
+            mockedUtils.verify(() -> GithubUtils.createRequest(eq(url + "&per_page=25&page=2"), eq(TOKEN)));
+            mockedUtils.verify(() -> GithubUtils.createRequest(eq(url + "&per_page=50&page=2"), eq(TOKEN)));
+            mockedUtils.verify(() -> GithubUtils.createRequest(eq(url + "&per_page=100&page=2"), eq(TOKEN)));
+            mockedUtils.verify(() -> GithubUtils.createRequest(eq(url + "&per_page=100&page=3"), eq(TOKEN)));
+        }
+    }
+
+    @Test
+    public void testFindLastCommonCommits_CompareAnswers() throws IOException, GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        finder.setStrategies(List.of(new CompareMergeBaseStrategy(OWNER, REPO, TOKEN, GithubContext.getDefault())));
+        String body = "{\"status\":\"diverged\",\"ahead_by\":2,\"behind_by\":1,\"total_commits\":2,"
+                + "\"merge_base_commit\":" + commitJson("base") + ",\"commits\":[" + commitJson("b1", "base") + "," + commitJson("b2", "b1") + "],"
+                + "\"files\":[{\"sha\":\"" + sha("file").toHex() + "\",\"filename\":\"a\"}]}";
+
+        try (MockedStatic<GithubUtils> mockedUtils = Mockito.mockStatic(GithubUtils.class, Mockito.CALLS_REAL_METHODS)) {
+            HttpResponse<InputStream> mockResponse = mockResponse(HttpURLConnection.HTTP_OK, body);
+
+            mockedUtils.when(() -> GithubUtils.send(any(), any())).thenReturn(mockResponse);
+
+            Collection<String> result = finder.findLastCommonCommits("branchA", "branchB");
+
+            assertEquals(List.of(sha("base").toHex()), new ArrayList<>(result));
+            verify(finder, never()).fetchCommits(anyString(), anyInt(), any());
+            assertEquals(Map.of(CompareMergeBaseStrategy.NAME, 1L), finder.getAnsweredBy());
+        }
+    }
+
+    @Test
+    public void testFindLastCommonCommits_CompareAnswersWithoutTheLock() throws IOException, GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        finder.setStrategies(List.of(new CompareMergeBaseStrategy(OWNER, REPO, TOKEN, GithubContext.getDefault())));
+        finder.setDistributedCoalescing(true);
+        String body = "{\"status\":\"ahead\",\"total_commits\":1,"
+                + "\"merge_base_commit\":" + commitJson("base") + ",\"commits\":[" + commitJson("b1", "base") + "]}";
+
+        try (MockedStatic<GithubUtils> mockedUtils = Mockito.mockStatic(GithubUtils.class, Mockito.CALLS_REAL_METHODS)) {
+            HttpResponse<InputStream> mockResponse = mockResponse(HttpURLConnection.HTTP_OK, body);
+
+            mockedUtils.when(() -> GithubUtils.send(any(), any())).thenReturn(mockResponse);
+
+            Collection<String> result = finder.findLastCommonCommits("branchA", "branchB");
+
+            // Compare answers are not cached, so waiting on the lock would not spare other JVMs the request.
+            assertEquals(List.of(sha("base").toHex()), new ArrayList<>(result));
+            verify(cacheUtil, never()).getLock(anyString());
+        }
+    }
+
+    @Test
+    public void testFindLastCommonCommits_CompareKeepsTheFindersPriority() throws IOException, GithubUserDoesNotExistException, GithubUserDoesNotHaveAccessToRepo, GithubUnauthorizedToken, GithubRequestTimeoutException, GithubConnectionException {
+        String body = "{\"status\":\"ahead\",\"total_commits\":1,"
+                + "\"merge_base_commit\":" + commitJson("base") + ",\"commits\":[" + commitJson("b1", "base") + "]}";
+
+        try (MockedStatic<GithubUtils> mockedUtils = Mockito.mockStatic(GithubUtils.class, Mockito.CALLS_REAL_METHODS)) {
+            HttpResponse<InputStream> mockResponse = mockResponse(HttpURLConnection.HTTP_OK, body);
+
+            mockedUtils.when(() -> GithubUtils.checkUserExistsByUsername(any(), eq(OWNER), eq(TOKEN))).thenReturn(true);
+            mockedUtils.when(() -> GithubUtils.checkUserHasRepo(any(), eq(OWNER), eq(REPO), eq(TOKEN))).thenReturn(true);
+            mockedUtils.when(() -> GithubUtils.send(any(), any())).thenReturn(mockResponse);
+
+            // Not the spy: the request priority follows the finder it was created for.
+            GithubLastCommonCommitsFinder background = new GithubLastCommonCommitsFinder(OWNER, REPO, TOKEN);
+            background.setCacheUtil(cacheUtil);
+            background.setStrategies(List.of(new CompareMergeBaseStrategy(OWNER, REPO, TOKEN, GithubContext.getDefault())));
+            background.setPriority(RateLimitScheduler.Priority.BACKGROUND);
+            background.findLastCommonCommits("branchA", "branchB");
+
+            // A background finder's compare request must not draw on the interactive reserve.
+            mockedUtils.verify(() -> GithubUtils.send(any(), eq(CompareMergeBaseStrategy.NAME), any(),
+                    ArgumentMatchers.<Supplier<RateLimitScheduler.Priority>>argThat(priority -> priority.get() == RateLimitScheduler.Priority.BACKGROUND), eq(true)));
+        }
+    }
+
+    @Test
+    public void testFindLastCommonCommits_CompareFallsBackOnMerges() throws IOException, GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        finder.setStrategies(List.of(new CompareMergeBaseStrategy(OWNER, REPO, TOKEN, GithubContext.getDefault())));
+        // GitHub picks one of the two merge bases of a criss-cross merge; the merge on branchB gives it away.
+        String body = "{\"status\":\"diverged\",\"total_commits\":1,"
+                + "\"merge_base_commit\":" + commitJson("x", "root") + ",\"commits\":[" + commitJson("mergeB", "y", "x") + "]}";
+
+        doReturn(page(1, Arrays.asList(commit("mergeA", "x", "y"), commit("x", "root")))).when(finder).fetchCommits("branchA", 1, null);
+        doReturn(page(2, Arrays.asList(commit("y", "root"), commit("root")))).when(finder).fetchCommits("branchA", 2, null);
+        doReturn(page(1, Arrays.asList(commit("mergeB", "y", "x")))).when(finder).fetchCommits("branchB", 1, null);
+        doReturn(page(2, new ArrayList<>())).when(finder).fetchCommits("branchB", 2, null);
+
+        try (MockedStatic<GithubUtils> mockedUtils = Mockito.mockStatic(GithubUtils.class, Mockito.CALLS_REAL_METHODS)) {
+            HttpResponse<InputStream> mockResponse = mockResponse(HttpURLConnection.HTTP_OK, body);
+
+            mockedUtils.when(() -> GithubUtils.send(any(), any())).thenReturn(mockResponse);
+
+            Collection<String> result = finder.findLastCommonCommits("branchA", "branchB");
+
+            assertEquals(new HashSet<>(Arrays.asList(sha("x").toHex(), sha("y").toHex())), new HashSet<>(result));
+            assertEquals(Map.of("history", 1L), finder.getAnsweredBy());
+        }
+    }
+
+    private static HttpResponse<InputStream> mockResponse(int statusCode) {
+        return mockResponse(statusCode, "");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HttpResponse<InputStream> mockResponse(int statusCode, String body) {
+        HttpResponse<InputStream> response = mock(HttpResponse.class);
+        when(response.statusCode()).thenReturn(statusCode);
+        when(response.body()).thenReturn(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+        when(response.headers()).thenReturn(HttpHeaders.of(Map.of("ETag", List.of("\"etag\"")), (name, value) -> true));
+        return response;
+    }
+
+    private static CommitPage page(int page, List<Commit> commits) {
+        return new CommitPage(page, commits, null, null);
+    }
+
+    private static CachedHistory history(List<Commit> commits) {
+        return new CachedHistory(Arrays.asList(page(1, commits)), System.currentTimeMillis());
+    }
+
+    private static Commit commit(String name, String... parents) {
+        Sha[] parentShas = new Sha[parents.length];
+        for (int i = 0; i < parents.length; i++) {
+            parentShas[i] = sha(parents[i]);
+        }
+        return new Commit(sha(name), parentShas);
+    }
+
+    private static String commitJson(String name, String... parents) {
+        StringBuilder json = new StringBuilder("{\"sha\":\"" + sha(name).toHex() + "\",\"parents\":[");
+        for (int i = 0; i < parents.length; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"sha\":\"").append(sha(parents[i]).toHex()).append("\"}");
+        }
+        return json.append("]}").toString();
+    }
+
+    private static Sha sha(String name) {
+        byte[] bytes = Arrays.copyOf(name.getBytes(), Sha.BYTES);
+        return Sha.fromBytes(bytes, 0);
+    }
 }
@@ -0,0 +1,296 @@
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.example.BranchPair;
+import org.example.GithubFinder.GithubLastCommonCommitsFinder;
+import org.example.exceptions.*;
+import org.example.graph.Sha;
+import org.example.metrics.MetricsRegistry;
+import org.example.utils.CacheUtil;
+import org.example.utils.CachedHistory;
+import org.example.utils.GithubContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class GraphqlTransportTest {
+
+    private static final String OWNER = "exampleOwner";
+    private static final String REPO = "exampleRepo";
+    private static final String TOKEN = "exampleToken";
+    private static final Pattern ALIAS = Pattern.compile("(\\w+): (ref|object)\\(\\w+: \\$(\\w+)\\)");
+    private static final Pattern HISTORY = Pattern.compile("history\\(first: (\\d+)(?:, after: \\$(\\w+))?\\)");
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<JsonNode> requests = Collections.synchronizedList(new ArrayList<>());
+    private final Map<Sha, Sha[]> parents = new HashMap<>();
+    private final Map<String, Sha> heads = new HashMap<>();
+    private volatile long firstResponseDelay;
+    private volatile boolean opaqueCursors;
+    private final List<String> rejectedCursors = Collections.synchronizedList(new ArrayList<>());
+    private final Set<String> returnedCursors = Collections.synchronizedSet(new HashSet<>());
+    private final List<String> unreturnedCursors = Collections.synchronizedList(new ArrayList<>());
+    private HttpServer github;
+    private GithubContext context;
+    private GithubLastCommonCommitsFinder finder;
+
+    @BeforeEach
+    public void setup() throws IOException, GithubUserDoesNotExistException, GithubUserDoesNotHaveAccessToRepo, GithubUnauthorizedToken, GithubRequestTimeoutException, GithubConnectionException {
+        // main is 30 commits long; feature forks from its fourth commit, release from its tenth
+        // and deep, 120 commits long, from its first.
+        for (int i = 0; i < 30; i++) {
+            parents.put(sha("main", i), i == 0 ? new Sha[0] : new Sha[]{sha("main", i - 1)});
+        }
+        parents.put(sha("feature", 0), new Sha[]{sha("main", 3)});
+        parents.put(sha("release", 0), new Sha[]{sha("main", 9)});
+        for (int i = 0; i < 120; i++) {
+            parents.put(sha("deep", i), new Sha[]{i == 0 ? sha("main", 0) : sha("deep", i - 1)});
+        }
+        heads.put("main", sha("main", 29));
+        heads.put("feature", sha("feature", 0));
+        heads.put("release", sha("release", 0));
+        heads.put("deep", sha("deep", 119));
+
+        github = HttpServer.create(new InetSocketAddress(0), 0);
+        github.createContext("/", this::serve);
+        github.start();
+
+        context = new GithubContext();
+        context.setApiUrl("http://localhost:" + github.getAddress().getPort());
+        context.setMetrics(MetricsRegistry.NONE);
+        finder = new GithubLastCommonCommitsFinder(OWNER, REPO, TOKEN, context);
+        finder.setStrategies(Collections.emptyList());
+        finder.setTransport(GithubLastCommonCommitsFinder.Transport.GRAPHQL);
+
+        CacheUtil cacheUtil = mock(CacheUtil.class);
+        when(cacheUtil.get(anyString(), anyString(), anyString())).thenReturn(CachedHistory.empty());
+        finder.setCacheUtil(cacheUtil);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        context.close();
+        github.stop(0);
+    }
+
+    @Test
+    public void testWalksHistoriesAskingOnlyForOidsAndParents() throws GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        Collection<String> result = finder.findLastCommonCommits("main", "feature");
+
+        assertEquals(List.of(sha("main", 3).toHex()), new ArrayList<>(result));
+        // Even without a prefetch window the first pages of both branches share a query.
+        assertEquals(2, requests.size());
+        assertEquals(2, countAliases(requests.get(0).path("query").asText()));
+        for (JsonNode request : requests) {
+            String query = request.path("query").asText();
+            assertTrue(query.contains("nodes { oid parents(first: 100) { nodes { oid } } }"));
+            assertFalse(query.contains("message"));
+            assertFalse(query.contains("author"));
+        }
+        // The second page of main continues from the head its first page started at.
+        assertTrue(requests.stream().anyMatch(request -> request.path("variables").toString()
+                .contains("\"" + sha("main", 29).toHex() + " 24\"")));
+    }
+
+    @Test
+    public void testConcurrentPagesShareOneQuery() throws IOException, GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        finder.setPrefetchWindow(2);
+        // Holds the first query back, so the pages fetched meanwhile queue up behind it.
+        firstResponseDelay = 200;
+
+        Map<BranchPair, Collection<String>> results = finder.findLastCommonCommits(
+                List.of(new BranchPair("main", "feature"), new BranchPair("main", "release")));
+
+        assertEquals(List.of(sha("main", 3).toHex()), new ArrayList<>(results.get(new BranchPair("main", "feature"))));
+        assertEquals(List.of(sha("main", 9).toHex()), new ArrayList<>(results.get(new BranchPair("main", "release"))));
+        int aliases = 0;
+        for (JsonNode request : requests) {
+            aliases = Math.max(aliases, countAliases(request.path("query").asText()));
+        }
+        assertTrue(aliases > 1, "No query carried more than one page");
+        assertTrue(requests.size() < 5, "Expected the pages to be batched, got " + requests.size() + " queries");
+    }
+
+    @Test
+    public void testPagesQueuedTogetherFollowReturnedCursors() throws GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        finder.setPrefetchWindow(2);
+
+        Collection<String> result = finder.findLastCommonCommits("main", "deep");
+
+        assertEquals(List.of(sha("main", 0).toHex()), new ArrayList<>(result));
+        // The next pages of deep are fetched together, each after the cursor returned for the one before.
+        assertEquals(Collections.emptyList(), unreturnedCursors);
+    }
+
+    @Test
+    public void testFollowsReturnedCursorsOnceTheirFormatDiffers() throws IOException, GithubUserDoesNotHaveAccessToRepo, GithubRequestTimeoutException, GithubConnectionException {
+        opaqueCursors = true;
+        finder.setPrefetchWindow(2);
+
+        // Once the first page of deep is in, its next pages are fetched together, the third
+        // before the cursor of the second is known.
+        Map<BranchPair, Collection<String>> results = finder.findLastCommonCommits(
+                List.of(new BranchPair("main", "feature"), new BranchPair("main", "deep")));
+
+        assertEquals(List.of(sha("main", 3).toHex()), new ArrayList<>(results.get(new BranchPair("main", "feature"))));
+        assertEquals(List.of(sha("main", 0).toHex()), new ArrayList<>(results.get(new BranchPair("main", "deep"))));
+        assertEquals(Collections.emptyList(), rejectedCursors);
+    }
+
+    @Test
+    public void testMissingBranchIsReportedLikeRest() {
+        assertThrows(GithubUserDoesNotHaveAccessToRepo.class, () -> finder.findLastCommonCommits("main", "missing"));
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getPath();
+            if (!path.equals("/graphql")) {
+                // The user and repository checks.
+                respond(exchange, path.equals("/users/" + OWNER) || path.equals("/repos/" + OWNER + "/" + REPO) ? 200 : 404, "{}");
+                return;
+            }
+            JsonNode request;
+            try (InputStream body = exchange.getRequestBody()) {
+                request = mapper.readTree(body);
+            }
+            if (requests.isEmpty() && firstResponseDelay > 0) {
+                try {
+                    Thread.sleep(firstResponseDelay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            requests.add(request);
+            respond(exchange, 200, answer(request.path("query").asText(), request.path("variables")));
+        }
+    }
+
+    /**
+     * Answers the aliases of the query, for refs of branches and for objects that are their heads.
+     */
+    private String answer(String query, JsonNode variables) {
+        StringBuilder out = new StringBuilder("{\"data\":{\"repository\":{");
+        int rejected = rejectedCursors.size();
+        Matcher alias = ALIAS.matcher(query);
+        boolean found = alias.find();
+        boolean first = true;
+        while (found) {
+            String name = alias.group(1);
+            boolean ref = alias.group(2).equals("ref");
+            String argument = variables.path(alias.group(3)).asText();
+            int start = alias.end();
+            found = alias.find();
+            Matcher history = HISTORY.matcher(query.substring(start, found ? alias.start() : query.length()));
+
+            Sha head = ref ? heads.get(argument.substring("refs/heads/".length())) : Sha.fromHex(argument);
+            out.append(first ? "" : ",").append('"').append(name).append("\":");
+            first = false;
+            String historyJson = null;
+            boolean rejectedCursor = false;
+            if (head != null && history.find()) {
+                historyJson = history(head, Integer.parseInt(history.group(1)),
+                        history.group(2) == null ? null : variables.path(history.group(2)).asText());
+                rejectedCursor = historyJson == null;
+            }
+            if (head == null || rejectedCursor) {
+                out.append("null");
+                continue;
+            }
+            if (ref) {
+                out.append("{\"target\":{\"oid\":\"").append(head.toHex()).append('"')
+                        .append(historyJson == null ? "" : ",\"history\":" + historyJson).append("}}");
+            } else {
+                out.append("{\"history\":").append(historyJson).append('}');
+            }
+        }
+        out.append("}}");
+        if (rejectedCursors.size() > rejected) {
+            out.append(",\"errors\":[{\"message\":\"`after` does not appear to be a valid cursor.\"}]");
+        }
+        return out.append('}').toString();
+    }
+
+    private String history(Sha head, int first, String after) {
+        // Every commit here has at most one parent, so the history is the chain of first parents.
+        List<Sha> commits = new ArrayList<>();
+        for (Sha sha = head; sha != null; sha = parents.get(sha).length == 0 ? null : parents.get(sha)[0]) {
+            commits.add(sha);
+        }
+        int from = 0;
+        if (after != null) {
+            if (!returnedCursors.contains(after)) {
+                unreturnedCursors.add(after);
+            }
+            String cursor = opaqueCursors ? decode(after) : after;
+            if (cursor == null || !cursor.startsWith(head.toHex() + " ")) {
+                rejectedCursors.add(after);
+                return null;
+            }
+            from = Integer.parseInt(cursor.substring(cursor.indexOf(' ') + 1)) + 1;
+        }
+        int to = Math.min(commits.size(), from + first);
+        // GitHub's cursors are the head and the index of the last commit on the page; opaque ones hide that.
+        String endCursor = to > from ? head.toHex() + " " + (to - 1) : null;
+        if (endCursor != null && opaqueCursors) {
+            endCursor = Base64.getEncoder().encodeToString(endCursor.getBytes(StandardCharsets.UTF_8));
+        }
+        if (endCursor != null) {
+            returnedCursors.add(endCursor);
+        }
+        StringBuilder out = new StringBuilder("{\"pageInfo\":{\"hasNextPage\":").append(to < commits.size())
+                .append(",\"endCursor\":").append(endCursor == null ? "null" : "\"" + endCursor + "\"").append("},\"nodes\":[");
+        for (int i = from; i < to; i++) {
+            out.append(i > from ? "," : "").append("{\"oid\":\"").append(commits.get(i).toHex()).append("\",\"parents\":{\"nodes\":[");
+            Sha[] commitParents = parents.get(commits.get(i));
+            for (int j = 0; j < commitParents.length; j++) {
+                out.append(j > 0 ? "," : "").append("{\"oid\":\"").append(commitParents[j].toHex()).append("\"}");
+            }
+            out.append("]}}");
+        }
+        return out.append("]}").toString();
+    }
+
+    private static String decode(String cursor) {
+        try {
+            return new String(Base64.getDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static int countAliases(String query) {
+        int count = 0;
+        for (Matcher alias = ALIAS.matcher(query); alias.find(); ) {
+            count++;
+        }
+        return count;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Sha sha(String branch, int n) {
+        byte[] bytes = Arrays.copyOf((branch + n).getBytes(), Sha.BYTES);
+        return Sha.fromBytes(bytes, 0);
+    }
+}
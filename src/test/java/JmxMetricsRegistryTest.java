@@ -0,0 +1,94 @@
+import org.example.metrics.Histogram;
+import org.example.metrics.JmxMetricsRegistry;
+import org.example.metrics.MetricsRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JmxMetricsRegistryTest {
+
+    private static final String DOMAIN = "test.metrics";
+
+    private MBeanServer server;
+    private JmxMetricsRegistry registry;
+
+    @BeforeEach
+    public void setup() {
+        server = MBeanServerFactory.newMBeanServer();
+        registry = new JmxMetricsRegistry(DOMAIN, server);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        registry.close();
+    }
+
+    @Test
+    public void testCountersAndGaugesAreMBeans() throws Exception {
+        registry.count(MetricsRegistry.HTTP_REQUESTS, 1, "endpoint", "commits", "status", "200");
+        registry.count(MetricsRegistry.HTTP_REQUESTS, 2, "endpoint", "commits", "status", "200");
+        registry.count(MetricsRegistry.HTTP_REQUESTS, 1, "endpoint", "commits", "status", "304");
+        registry.gauge(MetricsRegistry.RATE_LIMIT_REMAINING, 4999, "resource", "core");
+        registry.gauge(MetricsRegistry.RATE_LIMIT_REMAINING, 4998, "resource", "core");
+
+        assertEquals(3L, server.getAttribute(new ObjectName(DOMAIN + ":name=http.requests,endpoint=commits,status=200"), "Count"));
+        assertEquals(1L, server.getAttribute(new ObjectName(DOMAIN + ":name=http.requests,endpoint=commits,status=304"), "Count"));
+        assertEquals(4998L, server.getAttribute(new ObjectName(DOMAIN + ":name=github.rateLimit.remaining,resource=core"), "Value"));
+    }
+
+    @Test
+    public void testTimersReportPercentilesInMillis() throws Exception {
+        for (int i = 1; i <= 100; i++) {
+            registry.time(MetricsRegistry.QUERY_LATENCY, TimeUnit.MILLISECONDS.toNanos(i), "answeredBy", "history");
+        }
+
+        ObjectName name = new ObjectName(DOMAIN + ":name=query.latency,answeredBy=history");
+        assertEquals(100L, server.getAttribute(name, "Count"));
+        assertEquals(50.5, (double) server.getAttribute(name, "MeanMillis"), 0.01);
+        assertEquals(100.0, (double) server.getAttribute(name, "MaxMillis"), 0.01);
+        assertEquals(50.0, (double) server.getAttribute(name, "P50Millis"), 50.0 * 0.25);
+        assertEquals(99.0, (double) server.getAttribute(name, "P99Millis"), 99.0 * 0.25);
+    }
+
+    @Test
+    public void testTagValuesAreQuotedWhenNeeded() throws Exception {
+        registry.count(MetricsRegistry.PAGES, 1, "branch", "release:1,2=x", "result", "fetched");
+
+        assertEquals(1L, server.getAttribute(new ObjectName(DOMAIN + ":name=github.pages,branch=" + ObjectName.quote("release:1,2=x") + ",result=fetched"), "Count"));
+    }
+
+    @Test
+    public void testCloseUnregisters() throws Exception {
+        registry.count(MetricsRegistry.CACHE_STALE, 1);
+        ObjectName name = new ObjectName(DOMAIN + ":name=cache.stale");
+        assertTrue(server.isRegistered(name));
+
+        registry.close();
+
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    public void testHistogramQuantiles() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getQuantile(0.5));
+
+        for (long value = 1; value <= 1_000_000; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(1_000_000, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMax());
+        assertEquals(500_000, histogram.getQuantile(0.5), 500_000 * 0.25);
+        assertEquals(990_000, histogram.getQuantile(0.99), 990_000 * 0.25);
+        assertEquals(1_000_000, histogram.getQuantile(1.0));
+        assertEquals(1, histogram.getQuantile(0.0000001));
+    }
+}
@@ -0,0 +1,215 @@
+import org.example.LastCommonCommitsFinder;
+import org.example.LocalFinder.LocalLastCommonCommitsFinderFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Builds small bare repositories by hand, as loose objects and commit-graph files,
+ * so the local finder is tested without a git installation.
+ */
+public class LocalLastCommonCommitsFinderTest {
+
+    private static final String EMPTY_TREE = "4b825dc642cb6eb9a060e54bf8d69288fbee4904";
+
+    private Path root;
+    private Path gitDir;
+    private LocalLastCommonCommitsFinderFactory factory;
+    private final Map<String, String> shas = new HashMap<>();
+    private final Map<String, List<String>> parents = new LinkedHashMap<>();
+    private long time = 1_700_000_000L;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("mirrors");
+        gitDir = root.resolve("owner").resolve("repo.git");
+        Files.createDirectories(gitDir.resolve("objects").resolve("info"));
+        Files.createDirectories(gitDir.resolve("refs").resolve("heads"));
+        factory = new LocalLastCommonCommitsFinderFactory(root);
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        factory.close();
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testLooseObjects() throws Throwable {
+        commit("root");
+        commit("base", "root");
+        commit("a1", "base");
+        commit("b1", "base");
+        commit("b2", "b1");
+        branch("main", "a1");
+        branch("feature", "b2");
+
+        LastCommonCommitsFinder finder = factory.create("owner", "repo", null);
+
+        assertEquals(List.of(shas.get("base")), new ArrayList<>(finder.findLastCommonCommits("main", "feature")));
+        assertEquals(List.of(shas.get("a1")), new ArrayList<>(finder.findLastCommonCommits("main", "main")));
+    }
+
+    @Test
+    public void testCommitGraphWithNewerLooseCommits() throws Throwable {
+        commit("root");
+        commit("x", "root");
+        commit("y", "root");
+        commit("z", "root");
+        commit("mergeA", "x", "y");
+        commit("mergeB", "y", "x", "z");
+        writeCommitGraph();
+        // Fetched after the graph was written, so only loose objects know about it.
+        commit("tipB", "mergeB");
+        branch("main", "mergeA");
+        Files.writeString(gitDir.resolve("packed-refs"), "# pack-refs with: peeled fully-peeled sorted\n" + shas.get("tipB") + " refs/heads/feature\n");
+
+        LastCommonCommitsFinder finder = factory.create("owner", "repo", null);
+
+        assertEquals(new HashSet<>(Arrays.asList(shas.get("x"), shas.get("y"))), new HashSet<>(finder.findLastCommonCommits("main", "feature")));
+    }
+
+    @Test
+    public void testAncestorAndUnrelatedHistories() throws Throwable {
+        commit("root");
+        commit("a1", "root");
+        commit("a2", "a1");
+        commit("other");
+        writeCommitGraph();
+        branch("main", "a2");
+        branch("old", "a1");
+        branch("orphan", "other");
+
+        LastCommonCommitsFinder finder = factory.create("owner", "repo", null);
+
+        assertEquals(List.of(shas.get("a1")), new ArrayList<>(finder.findLastCommonCommits("main", "old")));
+        assertTrue(finder.findLastCommonCommits("main", "orphan").isEmpty());
+        assertTrue(finder.findLastCommonCommits("main", "missing").isEmpty());
+    }
+
+    @Test
+    public void testMissingMirror() {
+        assertThrows(NoSuchFileException.class, () -> factory.create("owner", "unknown", null));
+        assertThrows(NoSuchFileException.class, () -> factory.create("owner", "../../etc", null));
+    }
+
+    private void commit(String name, String... parentNames) throws IOException, NoSuchAlgorithmException {
+        StringBuilder body = new StringBuilder("tree " + EMPTY_TREE + "\n");
+        for (String parent : parentNames) {
+            body.append("parent ").append(shas.get(parent)).append('\n');
+        }
+        time += 60;
+        body.append("author A <a@example.com> ").append(time).append(" +0000\n");
+        body.append("committer A <a@example.com> ").append(time).append(" +0000\n\n").append(name).append('\n');
+
+        byte[] content = body.toString().getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        raw.write(("commit " + content.length + "\0").getBytes(StandardCharsets.US_ASCII));
+        raw.write(content);
+        String sha = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(raw.toByteArray()));
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (DeflaterOutputStream out = new DeflaterOutputStream(compressed)) {
+            out.write(raw.toByteArray());
+        }
+        Path path = gitDir.resolve("objects").resolve(sha.substring(0, 2)).resolve(sha.substring(2));
+        Files.createDirectories(path.getParent());
+        Files.write(path, compressed.toByteArray());
+
+        shas.put(name, sha);
+        parents.put(name, Arrays.asList(parentNames));
+    }
+
+    private void branch(String branch, String commit) throws IOException {
+        Files.writeString(gitDir.resolve("refs").resolve("heads").resolve(branch), shas.get(commit) + "\n");
+    }
+
+    /**
+     * Writes objects/info/commit-graph for every commit made so far, in the layout
+     * git uses: OIDF, OIDL, CDAT and, for octopus merges, EDGE.
+     */
+    private void writeCommitGraph() throws IOException {
+        List<String> sorted = new ArrayList<>(shas.values());
+        Collections.sort(sorted);
+        Map<String, String> names = new HashMap<>();
+        shas.forEach((name, sha) -> names.put(sha, name));
+        Map<String, Integer> generations = new HashMap<>();
+        for (String name : parents.keySet()) {
+            int generation = 1;
+            for (String parent : parents.get(name)) {
+                generation = Math.max(generation, generations.get(parent) + 1);
+            }
+            generations.put(name, generation);
+        }
+
+        ByteArrayOutputStream fanout = new ByteArrayOutputStream();
+        ByteArrayOutputStream oids = new ByteArrayOutputStream();
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        ByteArrayOutputStream edges = new ByteArrayOutputStream();
+        DataOutputStream fanoutOut = new DataOutputStream(fanout);
+        DataOutputStream dataOut = new DataOutputStream(data);
+        DataOutputStream edgesOut = new DataOutputStream(edges);
+        for (int b = 0; b < 256; b++) {
+            int count = 0;
+            for (String sha : sorted) {
+                if (Integer.parseInt(sha.substring(0, 2), 16) <= b) {
+                    count++;
+                }
+            }
+            fanoutOut.writeInt(count);
+        }
+        for (String sha : sorted) {
+            oids.write(HexFormat.of().parseHex(sha));
+            String name = names.get(sha);
+            List<String> commitParents = parents.get(name);
+            dataOut.write(HexFormat.of().parseHex(EMPTY_TREE));
+            dataOut.writeInt(commitParents.isEmpty() ? 0x70000000 : sorted.indexOf(shas.get(commitParents.get(0))));
+            if (commitParents.size() <= 2) {
+                dataOut.writeInt(commitParents.size() < 2 ? 0x70000000 : sorted.indexOf(shas.get(commitParents.get(1))));
+            } else {
+                dataOut.writeInt(0x80000000 | (edges.size() / 4));
+                for (int i = 1; i < commitParents.size(); i++) {
+                    int position = sorted.indexOf(shas.get(commitParents.get(i)));
+                    edgesOut.writeInt(i == commitParents.size() - 1 ? 0x80000000 | position : position);
+                }
+            }
+            dataOut.writeLong(((long) generations.get(name) << 34) | 1_700_000_000L);
+        }
+
+        byte[][] chunks = {fanout.toByteArray(), oids.toByteArray(), data.toByteArray(), edges.toByteArray()};
+        String[] ids = {"OIDF", "OIDL", "CDAT", "EDGE"};
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(file);
+        out.writeBytes("CGPH");
+        out.write(new byte[]{1, 1, (byte) chunks.length, 0});
+        long offset = 8 + (chunks.length + 1) * 12L;
+        for (int i = 0; i < chunks.length; i++) {
+            out.writeBytes(ids[i]);
+            out.writeLong(offset);
+            offset += chunks[i].length;
+        }
+        out.writeInt(0);
+        out.writeLong(offset);
+        for (byte[] chunk : chunks) {
+            out.write(chunk);
+        }
+        Files.write(gitDir.resolve("objects").resolve("info").resolve("commit-graph"), file.toByteArray());
+    }
+}
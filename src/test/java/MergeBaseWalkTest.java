@@ -0,0 +1,106 @@
+import org.example.graph.Commit;
+import org.example.graph.CommitGraph;
+import org.example.graph.MergeBaseWalk;
+import org.example.graph.Sha;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MergeBaseWalkTest {
+
+    @Test
+    public void testLinearHistory() {
+        MergeBaseWalk walk = new MergeBaseWalk(new CommitGraph());
+        walk.setHead(MergeBaseWalk.SIDE_A, sha("a2"));
+        walk.setHead(MergeBaseWalk.SIDE_B, sha("b1"));
+        walk.addCommits(List.of(commit("a2", "a1"), commit("a1", "base"), commit("b1", "base"), commit("base", "root"), commit("root")));
+
+        assertTrue(walk.isSettled());
+        assertEquals(List.of(sha("base")), walk.getMergeBases());
+    }
+
+    @Test
+    public void testOneHeadIsAncestorOfTheOther() {
+        MergeBaseWalk walk = new MergeBaseWalk(new CommitGraph());
+        walk.setHead(MergeBaseWalk.SIDE_A, sha("a2"));
+        walk.setHead(MergeBaseWalk.SIDE_B, sha("a1"));
+        walk.addCommits(List.of(commit("a2", "a1"), commit("a1", "root"), commit("root")));
+
+        assertTrue(walk.isSettled());
+        assertEquals(List.of(sha("a1")), walk.getMergeBases());
+    }
+
+    @Test
+    public void testNeedsMoreHistoryOfTheUnsettledSideOnly() {
+        MergeBaseWalk walk = new MergeBaseWalk(new CommitGraph());
+        walk.setHead(MergeBaseWalk.SIDE_A, sha("a1"));
+        walk.setHead(MergeBaseWalk.SIDE_B, sha("b1"));
+        walk.addCommits(List.of(commit("a1", "base"), commit("base", "root"), commit("root")));
+        walk.addCommits(List.of(commit("b1", "b2")));
+
+        assertFalse(walk.isSettled());
+        assertFalse(walk.needsMore(MergeBaseWalk.SIDE_A));
+        assertTrue(walk.needsMore(MergeBaseWalk.SIDE_B));
+        assertTrue(walk.getMergeBases().isEmpty());
+        assertFalse(walk.hasCommonAncestor());
+
+        walk.addCommits(List.of(commit("b2", "base")));
+
+        assertTrue(walk.hasCommonAncestor());
+        assertTrue(walk.isSettled());
+        assertEquals(List.of(sha("base")), walk.getMergeBases());
+    }
+
+    @Test
+    public void testNewerCommonCommitReplacesOlderCandidate() {
+        MergeBaseWalk walk = new MergeBaseWalk(new CommitGraph());
+        walk.setHead(MergeBaseWalk.SIDE_A, sha("a1"));
+        walk.setHead(MergeBaseWalk.SIDE_B, sha("b1"));
+        // "old" becomes common first through a merge on branch B...
+        walk.addCommits(List.of(commit("a1", "mid"), commit("b1", "b2", "old"), commit("old")));
+        assertFalse(walk.isSettled());
+
+        // ...then "mid", a descendant of "old", turns out to be reachable from B as well.
+        walk.addCommits(List.of(commit("mid", "old"), commit("b2", "mid")));
+
+        assertTrue(walk.isSettled());
+        assertEquals(List.of(sha("mid")), walk.getMergeBases());
+    }
+
+    @Test
+    public void testCrissCrossMergeHasTwoMergeBases() {
+        MergeBaseWalk walk = new MergeBaseWalk(new CommitGraph());
+        walk.setHead(MergeBaseWalk.SIDE_A, sha("mergeA"));
+        walk.setHead(MergeBaseWalk.SIDE_B, sha("mergeB"));
+        walk.addCommits(List.of(commit("mergeA", "x", "y"), commit("mergeB", "y", "x"), commit("x", "root"), commit("y", "root"), commit("root")));
+
+        assertTrue(walk.isSettled());
+        assertEquals(new HashSet<>(List.of(sha("x"), sha("y"))), new HashSet<>(walk.getMergeBases()));
+    }
+
+    @Test
+    public void testUnrelatedHistories() {
+        MergeBaseWalk walk = new MergeBaseWalk(new CommitGraph());
+        walk.setHead(MergeBaseWalk.SIDE_A, sha("a1"));
+        walk.setHead(MergeBaseWalk.SIDE_B, sha("b1"));
+        walk.addCommits(List.of(commit("a1", "a0"), commit("a0"), commit("b1")));
+
+        assertTrue(walk.isSettled());
+        assertTrue(walk.getMergeBases().isEmpty());
+    }
+
+    private static Commit commit(String name, String... parents) {
+        Sha[] parentShas = new Sha[parents.length];
+        for (int i = 0; i < parents.length; i++) {
+            parentShas[i] = sha(parents[i]);
+        }
+        return new Commit(sha(name), parentShas);
+    }
+
+    private static Sha sha(String name) {
+        byte[] bytes = Arrays.copyOf(name.getBytes(), Sha.BYTES);
+        return Sha.fromBytes(bytes, 0);
+    }
+}
@@ -0,0 +1,40 @@
+import org.example.utils.NearCache;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NearCacheTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        NearCache<String, String> cache = new NearCache<>(2, 60_000);
+        cache.put("main", "a");
+        cache.put("dev", "b");
+        cache.get("main");
+        cache.put("release", "c");
+
+        assertEquals("a", cache.get("main"));
+        assertNull(cache.get("dev"));
+        assertEquals("c", cache.get("release"));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testExpiresEntries() throws InterruptedException {
+        NearCache<String, String> cache = new NearCache<>(10, 1);
+        cache.put("main", "a");
+        Thread.sleep(5);
+
+        assertNull(cache.get("main"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testInvalidate() {
+        NearCache<String, String> cache = new NearCache<>(10, 60_000);
+        cache.put("main", "a");
+        cache.invalidate("main");
+
+        assertNull(cache.get("main"));
+    }
+}
@@ -0,0 +1,141 @@
+import org.example.GithubFinder.PushWebhookReceiver;
+import org.example.graph.Sha;
+import org.example.metrics.MetricsRegistry;
+import org.example.utils.CacheUtil;
+import org.example.utils.CommitSnapshot;
+import org.example.utils.GithubContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class PushWebhookReceiverTest {
+
+    private static final String OWNER = "exampleOwner";
+    private static final String REPO = "exampleRepo";
+    private static final String SECRET = "webhookSecret";
+    private static final Sha BEFORE = Sha.fromHex("9049f1265b7d61be4a8904a9a27120d2064dab3b");
+    private static final Sha AFTER = Sha.fromHex("0d1a26e67d8f5eaf1f6ba5c57fc3c7d91ac0fd1c");
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private Path dir;
+    private GithubContext context;
+    private CacheUtil cacheUtil;
+    private PushWebhookReceiver receiver;
+    private URI uri;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("webhook");
+        context = new GithubContext();
+        context.setMetrics(MetricsRegistry.NONE);
+        context.setSnapshotDirectory(dir);
+        cacheUtil = mock(CacheUtil.class);
+        receiver = new PushWebhookReceiver(context, SECRET);
+        receiver.setCacheUtil(cacheUtil);
+        uri = URI.create("http://localhost:" + receiver.start(0) + "/webhooks/github");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        receiver.close();
+        context.close();
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testPushAdvancesTheHeadAndMarksTheHistoryStale() throws IOException, InterruptedException, GeneralSecurityException {
+        CommitSnapshot snapshot = context.getSnapshot(OWNER, REPO);
+        snapshot.setHead("main", BEFORE, System.currentTimeMillis() - 60_000);
+
+        assertEquals(204, post("push", payload("push.json")));
+
+        assertEquals(AFTER, snapshot.getHead("main", 10_000));
+        verify(cacheUtil).markStale(OWNER, REPO, "main");
+    }
+
+    @Test
+    public void testPushFromAnotherHeadClearsTheHead() throws IOException, InterruptedException, GeneralSecurityException {
+        CommitSnapshot snapshot = context.getSnapshot(OWNER, REPO);
+        // A later push was delivered first.
+        snapshot.setHead("main", Sha.fromHex("1111111111111111111111111111111111111111"), System.currentTimeMillis());
+
+        assertEquals(204, post("push", payload("push.json")));
+
+        assertNull(snapshot.getHead("main", Long.MAX_VALUE));
+        verify(cacheUtil).markStale(OWNER, REPO, "main");
+    }
+
+    @Test
+    public void testDeletedBranchIsForgotten() throws IOException, InterruptedException, GeneralSecurityException {
+        CommitSnapshot snapshot = context.getSnapshot(OWNER, REPO);
+        snapshot.setHead("feature", Sha.fromHex("6113728f27ae82c7b1a177c8d03f9e96e0adf246"), System.currentTimeMillis());
+
+        assertEquals(204, post("push", payload("push-deleted.json")));
+
+        assertNull(snapshot.getHead("feature", Long.MAX_VALUE));
+        verify(cacheUtil).invalidate(OWNER, REPO, "feature");
+        verify(cacheUtil, never()).markStale(anyString(), anyString(), anyString());
+    }
+
+    @Test
+    public void testTagsAndOtherEventsAreIgnored() throws IOException, InterruptedException, GeneralSecurityException {
+        assertEquals(204, post("push", payload("push-tag.json")));
+        assertEquals(204, post("ping", "{\"zen\":\"Keep it logically awesome.\"}".getBytes(StandardCharsets.UTF_8)));
+
+        verifyNoInteractions(cacheUtil);
+    }
+
+    @Test
+    public void testRejectsUnsignedAndMalformedDeliveries() throws IOException, InterruptedException, GeneralSecurityException {
+        byte[] payload = payload("push.json");
+        HttpRequest unsigned = HttpRequest.newBuilder(uri)
+                .header(PushWebhookReceiver.EVENT_HEADER, "push")
+                .header(PushWebhookReceiver.SIGNATURE_HEADER, "sha256=" + "00".repeat(32))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(payload))
+                .build();
+
+        assertEquals(401, httpClient.send(unsigned, HttpResponse.BodyHandlers.discarding()).statusCode());
+        assertEquals(400, post("push", "{\"ref\":\"refs/heads/main\"}".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(405, httpClient.send(HttpRequest.newBuilder(uri).GET().build(), HttpResponse.BodyHandlers.discarding()).statusCode());
+
+        verifyNoInteractions(cacheUtil);
+    }
+
+    private int post(String event, byte[] payload) throws IOException, InterruptedException, GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .header(PushWebhookReceiver.EVENT_HEADER, event)
+                .header(PushWebhookReceiver.SIGNATURE_HEADER, "sha256=" + HexFormat.of().formatHex(mac.doFinal(payload)))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(payload))
+                .build();
+        return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+
+    private static byte[] payload(String name) throws IOException {
+        try (InputStream in = PushWebhookReceiverTest.class.getResourceAsStream("/webhooks/" + name)) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+import org.example.utils.FlightPriorities;
+import org.example.utils.RateLimitExceededException;
+import org.example.utils.RateLimitScheduler;
+import org.example.utils.RateLimitScheduler.Priority;
+import org.junit.jupiter.api.Test;
+
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimitSchedulerTest {
+
+    private static final String CORE = "core";
+
+    @Test
+    public void testSpreadsPooledRequestsOverTheTokenWithMostBudget() throws Exception {
+        RateLimitScheduler scheduler = new RateLimitScheduler();
+        scheduler.setTokenPool(List.of("pool1", "pool2"));
+        report(scheduler, "own", 5000, 3, 3600);
+        report(scheduler, "pool1", 5000, 4000, 3600);
+        report(scheduler, "pool2", 5000, 10, 3600);
+
+        RateLimitScheduler.Lease lease = scheduler.acquire("own", CORE, Priority.INTERACTIVE, true);
+        assertEquals("pool1", lease.getToken());
+        scheduler.release(lease);
+
+        // Requests that check the token itself never leave it.
+        lease = scheduler.acquire("own", CORE, Priority.INTERACTIVE, false);
+        assertEquals("own", lease.getToken());
+        scheduler.release(lease);
+    }
+
+    @Test
+    public void testBackgroundRequestsLeaveAReserve() throws Exception {
+        RateLimitScheduler scheduler = new RateLimitScheduler();
+        scheduler.setMaxWait(Duration.ofMillis(100));
+        report(scheduler, "own", 100, 10, 3600);
+
+        assertThrows(RateLimitExceededException.class, () -> scheduler.acquire("own", CORE, Priority.BACKGROUND, false));
+
+        RateLimitScheduler.Lease lease = scheduler.acquire("own", CORE, Priority.INTERACTIVE, false);
+        assertEquals("own", lease.getToken());
+        scheduler.release(lease);
+    }
+
+    @Test
+    public void testRaisedRequestStopsWaitingBehindTheReserve() throws Exception {
+        RateLimitScheduler scheduler = new RateLimitScheduler();
+        report(scheduler, "own", 100, 10, 60);
+        FlightPriorities priorities = new FlightPriorities(scheduler);
+        Supplier<Priority> flight = priorities.join("pair", Priority.BACKGROUND);
+
+        CompletableFuture<RateLimitScheduler.Lease> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return scheduler.acquire("own", CORE, flight, false);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+        Thread.sleep(100);
+        assertFalse(waiting.isDone());
+
+        // An interactive caller joins the flight the background request waits for.
+        priorities.join("pair", Priority.INTERACTIVE);
+        RateLimitScheduler.Lease lease = waiting.get(5, TimeUnit.SECONDS);
+        assertEquals("own", lease.getToken());
+        scheduler.release(lease);
+        priorities.leave("pair");
+        priorities.leave("pair");
+    }
+
+    @Test
+    public void testCountsRequestsInFlightAgainstTheBudget() throws Exception {
+        RateLimitScheduler scheduler = new RateLimitScheduler();
+        scheduler.setMaxWait(Duration.ofMillis(100));
+        report(scheduler, "own", 5000, 2, 3600);
+
+        RateLimitScheduler.Lease first = scheduler.acquire("own", CORE, Priority.INTERACTIVE, false);
+        RateLimitScheduler.Lease second = scheduler.acquire("own", CORE, Priority.INTERACTIVE, false);
+        RateLimitExceededException e = assertThrows(RateLimitExceededException.class, () -> scheduler.acquire("own", CORE, Priority.INTERACTIVE, false));
+        assertTrue(e.getResetAt() > System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(30));
+
+        scheduler.release(first);
+        scheduler.release(second);
+    }
+
+    @Test
+    public void testWaitsOutRetryAfter() throws Exception {
+        RateLimitScheduler scheduler = new RateLimitScheduler();
+        RateLimitScheduler.Lease lease = scheduler.acquire("own", CORE, Priority.INTERACTIVE, false);
+        assertTrue(scheduler.complete(lease, 429, headers(Map.of("Retry-After", "1")), null));
+
+        long start = System.nanoTime();
+        lease = scheduler.acquire("own", CORE, Priority.INTERACTIVE, false);
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(waited >= 900, "waited " + waited + " ms");
+        assertTrue(waited < 3000, "waited " + waited + " ms");
+        scheduler.release(lease);
+    }
+
+    @Test
+    public void testTellsRateLimitsFromRefusals() throws Exception {
+        RateLimitScheduler scheduler = new RateLimitScheduler();
+        long reset = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 3600;
+
+        RateLimitScheduler.Lease lease = scheduler.acquire("own", CORE, Priority.INTERACTIVE, false);
+        assertFalse(scheduler.complete(lease, 403, headers(Map.of("X-RateLimit-Remaining", "4000", "X-RateLimit-Reset", String.valueOf(reset))),
+                "{\"message\":\"Resource not accessible by integration\"}"));
+
+        lease = scheduler.acquire("own", CORE, Priority.INTERACTIVE, false);
+        assertTrue(scheduler.complete(lease, 403, headers(Map.of("X-RateLimit-Remaining", "3999", "X-RateLimit-Reset", String.valueOf(reset))),
+                "{\"message\":\"You have exceeded a secondary rate limit. Please wait a few minutes before you try again.\"}"));
+
+        lease = scheduler.acquire("other", CORE, Priority.INTERACTIVE, false);
+        assertTrue(scheduler.complete(lease, 403, headers(Map.of("X-RateLimit-Remaining", "0", "X-RateLimit-Reset", String.valueOf(reset))), ""));
+        assertEquals(0, scheduler.getRemaining("other", CORE));
+    }
+
+    @Test
+    public void testBudgetComesBackAfterTheReset() throws Exception {
+        RateLimitScheduler scheduler = new RateLimitScheduler();
+        long reset = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 1;
+        RateLimitScheduler.Lease lease = scheduler.acquire("own", CORE, Priority.INTERACTIVE, false);
+        scheduler.complete(lease, 200, headers(Map.of("X-RateLimit-Limit", "60", "X-RateLimit-Remaining", "0", "X-RateLimit-Reset", String.valueOf(reset))), null);
+
+        lease = scheduler.acquire("own", CORE, Priority.INTERACTIVE, false);
+        assertTrue(System.currentTimeMillis() >= TimeUnit.SECONDS.toMillis(reset));
+        assertEquals(60, scheduler.getRemaining("own", CORE));
+        scheduler.release(lease);
+    }
+
+    private static void report(RateLimitScheduler scheduler, String token, long limit, long remaining, long resetInSeconds) throws Exception {
+        RateLimitScheduler.Lease lease = scheduler.acquire(token, CORE, Priority.INTERACTIVE, false);
+        long reset = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + resetInSeconds;
+        scheduler.complete(lease, 200, headers(Map.of("X-RateLimit-Limit", String.valueOf(limit),
+                "X-RateLimit-Remaining", String.valueOf(remaining), "X-RateLimit-Reset", String.valueOf(reset))), null);
+    }
+
+    private static HttpHeaders headers(Map<String, String> values) {
+        Map<String, List<String>> map = new HashMap<>();
+        values.forEach((name, value) -> map.put(name, List.of(value)));
+        return HttpHeaders.of(map, (name, value) -> true);
+    }
+}
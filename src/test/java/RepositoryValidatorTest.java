@@ -0,0 +1,103 @@
+import org.example.GithubFinder.RepositoryValidator;
+import org.example.exceptions.*;
+import org.example.utils.GithubContext;
+import org.example.utils.GithubUtils;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class RepositoryValidatorTest {
+
+    private static final String OWNER = "exampleOwner";
+    private static final String REPO = "exampleRepo";
+    private static final String TOKEN = "exampleToken";
+
+    private final GithubContext context = GithubContext.getDefault();
+
+    @Test
+    public void testRemembersSuccessfulChecks() throws GithubUserDoesNotExistException, GithubUserDoesNotHaveAccessToRepo, GithubUnauthorizedToken, GithubRequestTimeoutException, GithubConnectionException {
+        RepositoryValidator validator = new RepositoryValidator(context, Duration.ofMinutes(10), Duration.ofMinutes(1));
+        try (MockedStatic<GithubUtils> mockedUtils = Mockito.mockStatic(GithubUtils.class)) {
+            mockedUtils.when(() -> GithubUtils.checkUserHasRepo(any(), eq(OWNER), eq(REPO), anyString())).thenReturn(true);
+
+            validator.validate(OWNER, REPO, TOKEN);
+            validator.validate(OWNER, REPO, TOKEN);
+
+            // A readable repository proves its owner exists.
+            mockedUtils.verify(() -> GithubUtils.checkUserHasRepo(any(), eq(OWNER), eq(REPO), eq(TOKEN)), times(1));
+            mockedUtils.verify(() -> GithubUtils.checkUserExistsByUsername(any(), anyString(), anyString()), never());
+
+            validator.validate(OWNER, REPO, "otherToken");
+            mockedUtils.verify(() -> GithubUtils.checkUserHasRepo(any(), eq(OWNER), eq(REPO), eq("otherToken")), times(1));
+        }
+    }
+
+    @Test
+    public void testRemembersRefusals() throws GithubUserDoesNotExistException, GithubUserDoesNotHaveAccessToRepo, GithubUnauthorizedToken, GithubRequestTimeoutException, GithubConnectionException {
+        RepositoryValidator validator = new RepositoryValidator(context, Duration.ofMinutes(10), Duration.ofMinutes(1));
+        try (MockedStatic<GithubUtils> mockedUtils = Mockito.mockStatic(GithubUtils.class)) {
+            mockedUtils.when(() -> GithubUtils.checkUserHasRepo(any(), anyString(), anyString(), anyString())).thenReturn(false);
+            mockedUtils.when(() -> GithubUtils.checkUserExistsByUsername(any(), eq(OWNER), anyString())).thenReturn(true);
+            mockedUtils.when(() -> GithubUtils.checkUserExistsByUsername(any(), eq("nonexistentUser"), anyString())).thenReturn(false);
+
+            assertThrows(GithubUserDoesNotHaveAccessToRepo.class, () -> validator.validate(OWNER, "restrictedRepo", TOKEN));
+            assertThrows(GithubUserDoesNotHaveAccessToRepo.class, () -> validator.validate(OWNER, "restrictedRepo", TOKEN));
+            assertThrows(GithubUserDoesNotExistException.class, () -> validator.validate("nonexistentUser", REPO, TOKEN));
+            assertThrows(GithubUserDoesNotExistException.class, () -> validator.validate("nonexistentUser", REPO, TOKEN));
+
+            mockedUtils.verify(() -> GithubUtils.checkUserHasRepo(any(), anyString(), anyString(), anyString()), times(2));
+            mockedUtils.verify(() -> GithubUtils.checkUserExistsByUsername(any(), anyString(), anyString()), times(2));
+        }
+    }
+
+    @Test
+    public void testRemembersRejectedTokens() throws GithubUserDoesNotExistException, GithubUserDoesNotHaveAccessToRepo, GithubUnauthorizedToken, GithubRequestTimeoutException, GithubConnectionException {
+        RepositoryValidator validator = new RepositoryValidator(context, Duration.ofMinutes(10), Duration.ofMinutes(1));
+        try (MockedStatic<GithubUtils> mockedUtils = Mockito.mockStatic(GithubUtils.class)) {
+            mockedUtils.when(() -> GithubUtils.checkUserHasRepo(any(), anyString(), anyString(), anyString())).thenThrow(new GithubUnauthorizedToken());
+
+            assertThrows(GithubUnauthorizedToken.class, () -> validator.validate(OWNER, REPO, "invalidToken"));
+            assertThrows(GithubUnauthorizedToken.class, () -> validator.validate(OWNER, REPO, "invalidToken"));
+
+            mockedUtils.verify(() -> GithubUtils.checkUserHasRepo(any(), anyString(), anyString(), anyString()), times(1));
+        }
+    }
+
+    @Test
+    public void testDoesNotRememberConnectionFailures() throws GithubUserDoesNotExistException, GithubUserDoesNotHaveAccessToRepo, GithubUnauthorizedToken, GithubRequestTimeoutException, GithubConnectionException {
+        RepositoryValidator validator = new RepositoryValidator(context, Duration.ofMinutes(10), Duration.ofMinutes(1));
+        try (MockedStatic<GithubUtils> mockedUtils = Mockito.mockStatic(GithubUtils.class)) {
+            mockedUtils.when(() -> GithubUtils.checkUserHasRepo(any(), anyString(), anyString(), anyString()))
+                    .thenThrow(new GithubConnectionException("Error", new Throwable()))
+                    .thenReturn(true);
+
+            assertThrows(GithubConnectionException.class, () -> validator.validate(OWNER, REPO, TOKEN));
+            validator.validate(OWNER, REPO, TOKEN);
+
+            mockedUtils.verify(() -> GithubUtils.checkUserHasRepo(any(), anyString(), anyString(), anyString()), times(2));
+        }
+    }
+
+    @Test
+    public void testChecksAgainWithoutTtlOrAfterInvalidation() throws GithubUserDoesNotExistException, GithubUserDoesNotHaveAccessToRepo, GithubUnauthorizedToken, GithubRequestTimeoutException, GithubConnectionException {
+        RepositoryValidator uncached = new RepositoryValidator(context);
+        RepositoryValidator cached = new RepositoryValidator(context, Duration.ofMinutes(10), Duration.ofMinutes(1));
+        try (MockedStatic<GithubUtils> mockedUtils = Mockito.mockStatic(GithubUtils.class)) {
+            mockedUtils.when(() -> GithubUtils.checkUserHasRepo(any(), anyString(), anyString(), anyString())).thenReturn(true);
+
+            uncached.validate(OWNER, REPO, TOKEN);
+            uncached.validate(OWNER, REPO, TOKEN);
+            mockedUtils.verify(() -> GithubUtils.checkUserHasRepo(any(), anyString(), anyString(), anyString()), times(2));
+
+            cached.validate(OWNER, REPO, TOKEN);
+            cached.invalidate(OWNER, REPO);
+            cached.validate(OWNER, REPO, TOKEN);
+            mockedUtils.verify(() -> GithubUtils.checkUserHasRepo(any(), anyString(), anyString(), anyString()), times(4));
+        }
+    }
+}
@@ -0,0 +1,25 @@
+import org.example.graph.Sha;
+import org.example.graph.ShaIndex;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShaIndexTest {
+
+    @Test
+    public void testShaIndexAssignsDenseIds() {
+        ShaIndex index = new ShaIndex();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, index.add(sha(i)));
+        }
+
+        assertEquals(1000, index.size());
+        assertEquals(42, index.add(sha(42)));
+        assertEquals(sha(999), index.get(999));
+        assertEquals(-1, index.indexOf(sha(1000)));
+    }
+
+    private static Sha sha(int n) {
+        return new Sha(n * 31L, n * 17L, n);
+    }
+}
@@ -0,0 +1,17 @@
+import org.example.graph.Sha;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShaTest {
+
+    @Test
+    public void testShaRoundTrip() {
+        String hex = "0123456789abcdef0123456789abcdef01234567";
+        Sha sha = Sha.fromHex(hex);
+
+        assertEquals(hex, sha.toHex());
+        assertEquals(sha, Sha.fromBytes(sha.toBytes(), 0));
+        assertThrows(IllegalArgumentException.class, () -> Sha.fromHex("not-a-sha"));
+    }
+}
@@ -0,0 +1,68 @@
+import org.example.utils.SingleFlight;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SingleFlightTest {
+
+    @Test
+    public void testConcurrentCallsShareOneExecution() throws Exception {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<String> leaderResult = new AtomicReference<>();
+        AtomicReference<String> followerResult = new AtomicReference<>();
+
+        Thread leader = new Thread(() -> leaderResult.set(run(flights, () -> {
+            calls.incrementAndGet();
+            leaderStarted.countDown();
+            release.await();
+            return "base";
+        })));
+        leader.start();
+        leaderStarted.await();
+
+        Thread follower = new Thread(() -> followerResult.set(run(flights, () -> {
+            calls.incrementAndGet();
+            return "other";
+        })));
+        follower.start();
+        // The follower only blocks once it has joined the leader's flight.
+        while (follower.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        leader.join(5000);
+        follower.join(5000);
+
+        assertEquals("base", leaderResult.get());
+        assertEquals("base", followerResult.get());
+        assertEquals(1, calls.get());
+        assertEquals(0, flights.inFlight());
+    }
+
+    @Test
+    public void testFailureIsWrappedAndKeyIsReleased() throws Exception {
+        SingleFlight<String, String> flights = new SingleFlight<>();
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> flights.execute("key", () -> {
+            throw new IllegalStateException("boom");
+        }));
+
+        assertTrue(failure.getCause() instanceof IllegalStateException);
+        assertEquals("again", flights.execute("key", () -> "again"));
+    }
+
+    private static String run(SingleFlight<String, String> flights, SingleFlight.Call<String> call) {
+        try {
+            return flights.execute("main...dev", call);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}